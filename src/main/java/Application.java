@@ -6,15 +6,18 @@ import communication_adapter.server.ServerCommunicationAdapter;
 import config.EnvironmentVariable;
 import config.EnvironmentVariableType;
 import domain.Client;
+import domain.EarlyStopping;
 import domain.Server;
 import exceptions.BadConfigurationException;
 import exceptions.BadInputParametersException;
 import exceptions.FailureEndSignal;
 import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import platform_adapter.PlatformAdapter;
+import utils.SpillingPayload;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -38,7 +41,9 @@ public class Application {
                 new EnvironmentVariable("COMMUNICATION_ADAPTER", EnvironmentVariableType.STRING, "KAFKA"),
                 new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER", EnvironmentVariableType.STRING, "ASYNC_REST_API"),
                 new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER", EnvironmentVariableType.STRING, "DEFAULT"),
-                new EnvironmentVariable("PLATFORM_ADAPTER", EnvironmentVariableType.STRING, "INCISIVE")
+                new EnvironmentVariable("PLATFORM_ADAPTER", EnvironmentVariableType.STRING, "INCISIVE"),
+                new EnvironmentVariable("PAYLOAD_SPILL_THRESHOLD", EnvironmentVariableType.INTEGER, 512),  // MB, bigger models are kept in a temporary file
+                new EnvironmentVariable("PAYLOAD_SPILL_DIRECTORY", EnvironmentVariableType.STRING, System.getProperty("java.io.tmpdir"))
         );
     }
 
@@ -54,6 +59,10 @@ public class Application {
 
             // load main environmental variables
             Map<String, Object> initialConfig = loadEnvironmentVariables(Application.getInitialEnvironmentVariables());
+            SpillingPayload.configure(
+                    (int) initialConfig.get("PAYLOAD_SPILL_THRESHOLD") * 1000L * 1000L,
+                    Paths.get((String) initialConfig.get("PAYLOAD_SPILL_DIRECTORY"))
+            );
 
             if (parsedArgs.get("behaviour").equals(Behaviour.CLIENT)) {
                 // load chosen adapter implementations
@@ -64,7 +73,7 @@ public class Application {
 
                 // run main application
                 Client client = new Client(clientCommunicationAdapter, aiEngineLinkageAdapter, aiEngineClientModelManagementAdapter, platformAdapter);
-                client.run(parsedArgs.get("numberOfIterations"), parsedArgs.get("useCase"), parsedArgs.get("failure_endpoint"));
+                client.run(parsedArgs.get("numberOfIterations"), parsedArgs.get("useCase"), parsedArgs.get("failure_endpoint"), parsedArgs.getBoolean("rejoin"));
             } else {
                 // load chosen adapter implementations
                 ServerCommunicationAdapter serverCommunicationAdapter = Factory.selectServerCommunicationAdapter(initialConfig, parsedArgs);
@@ -73,7 +82,16 @@ public class Application {
                 PlatformAdapter platformAdapter = Factory.selectPlatformAdapter(initialConfig, parsedArgs);
 
                 // run main application
-                Server server = new Server(serverCommunicationAdapter, aiEngineLinkageAdapter, aiEngineServerModelManagementAdapter, platformAdapter);
+                EarlyStopping earlyStopping = null;
+                if (parsedArgs.get("early_stopping_metric") != null) {
+                    earlyStopping = new EarlyStopping(
+                            parsedArgs.get("early_stopping_metric"),
+                            parsedArgs.get("early_stopping_mode").equals("max"),
+                            parsedArgs.get("early_stopping_min_delta"),
+                            parsedArgs.get("early_stopping_patience")
+                    );
+                }
+                Server server = new Server(serverCommunicationAdapter, aiEngineLinkageAdapter, aiEngineServerModelManagementAdapter, platformAdapter, earlyStopping);
                 server.run(parsedArgs.get("numberOfIterations"), parsedArgs.get("useCase"), parsedArgs.get("failure_endpoint"));
 
             }
@@ -120,6 +138,9 @@ public class Application {
         clientParser.addArgument("--failure-endpoint").type(String.class).help(
                 "the endpoint to hit when an error occurs"
         );
+        clientParser.addArgument("--rejoin").action(Arguments.storeTrue()).help(
+                "Join the ongoing execution again after a restart of the client, also needed by a client left out while running. The manager must allow it"
+        );
 
         Subparser serverParser = subparsers.addParser("server").setDefault("behaviour", Behaviour.SERVER);
         serverParser.addArgument("executionId").type(String.class).help(
@@ -137,6 +158,18 @@ public class Application {
         serverParser.addArgument("--failure-endpoint").type(String.class).help(
                 "the endpoint to hit when an error occurs"
         );
+        serverParser.addArgument("--early-stopping-metric").type(String.class).help(
+                "the metric reported by the AI Engine while merging that stops the training when it does not improve"
+        );
+        serverParser.addArgument("--early-stopping-mode").choices("min", "max").setDefault("min").help(
+                "whether the metric improves when it decreases or when it increases"
+        );
+        serverParser.addArgument("--early-stopping-min-delta").type(Double.class).setDefault(0.0).help(
+                "the minimum change of the metric that counts as an improvement"
+        );
+        serverParser.addArgument("--early-stopping-patience").type(Integer.class).setDefault(3).help(
+                "the number of iterations without improvement before stopping the training"
+        );
 
         try {
             Namespace parsedArgs = parser.parseArgs(args);
@@ -1,6 +1,8 @@
 import ai_engine_adapter.linkage.AIEngineLinkageAdapter;
 import ai_engine_adapter.linkage.types.async_rest_api.AsyncRestAPI;
 import ai_engine_adapter.linkage.types.dummy.Dummy;
+import ai_engine_adapter.linkage.types.subprocess.Subprocess;
+import ai_engine_adapter.linkage.types.unix_socket.UnixSocket;
 import ai_engine_adapter.model_management.client.AIEngineClientModelManagementAdapter;
 import ai_engine_adapter.model_management.server.AIEngineServerModelManagementAdapter;
 import communication_adapter.client.ClientCommunicationAdapter;
@@ -51,10 +53,16 @@ public class Factory {
             case "ASYNC_REST_API":
                 config = loadEnvironmentVariables(AsyncRestAPI.getEnvironmentVariables());
                 return new AsyncRestAPI(config);
+            case "UNIX_SOCKET":
+                config = loadEnvironmentVariables(UnixSocket.getEnvironmentVariables());
+                return new UnixSocket(config);
+            case "SUBPROCESS":
+                config = loadEnvironmentVariables(Subprocess.getEnvironmentVariables());
+                return new Subprocess(config);
             case "DUMMY":
                 return new Dummy();
             default:
-                throw new BadConfigurationException("AI engine linkage adapter implementation unknown: " + aiEngineAdapterImplementation + ". Available: KUBERNETES_API and ASYNC_REST_API");
+                throw new BadConfigurationException("AI engine linkage adapter implementation unknown: " + aiEngineAdapterImplementation + ". Available: KUBERNETES_API, ASYNC_REST_API, UNIX_SOCKET and SUBPROCESS");
         }
     }
 
@@ -65,10 +73,12 @@ public class Factory {
             case "DEFAULT":
                 config = loadEnvironmentVariables(ai_engine_adapter.model_management.client.types.Default.getEnvironmentVariables());
                 return new ai_engine_adapter.model_management.client.types.Default(config);
+            case "IN_MEMORY":
+                return new ai_engine_adapter.model_management.client.types.InMemory();
             case "DUMMY":
                 return new ai_engine_adapter.model_management.client.types.Dummy();
             default:
-                throw new BadConfigurationException("AI engine client model management adapter implementation unknown: " + aiEngineAdapterImplementation + ". Available: DEFAULT");
+                throw new BadConfigurationException("AI engine client model management adapter implementation unknown: " + aiEngineAdapterImplementation + ". Available: DEFAULT and IN_MEMORY");
         }
     }
 
@@ -79,10 +89,13 @@ public class Factory {
             case "DEFAULT":
                 config = loadEnvironmentVariables(ai_engine_adapter.model_management.server.types.Default.getEnvironmentVariables());
                 return new ai_engine_adapter.model_management.server.types.Default(config);
+            case "IN_MEMORY":
+                config = loadEnvironmentVariables(ai_engine_adapter.model_management.server.types.InMemory.getEnvironmentVariables());
+                return new ai_engine_adapter.model_management.server.types.InMemory(config);
             case "DUMMY":
                 return new ai_engine_adapter.model_management.server.types.Dummy();
             default:
-                throw new BadConfigurationException("AI engine server model management adapter implementation unknown: " + aiEngineAdapterImplementation + ". Available: DEFAULT");
+                throw new BadConfigurationException("AI engine server model management adapter implementation unknown: " + aiEngineAdapterImplementation + ". Available: DEFAULT and IN_MEMORY");
         }
     }
 
@@ -2,13 +2,33 @@ package ai_engine_adapter.linkage;
 
 import exceptions.AIEngineException;
 
+import java.util.Map;
+
 public interface AIEngineLinkageAdapter {
 
     void initialize() throws AIEngineException;
 
     void waitAIEngineToBeReady() throws AIEngineException;
 
-    void run(String useCase) throws AIEngineException;
+    default void run(String useCase) throws AIEngineException {
+        run(useCase, Map.of());
+    }
+
+    // the parameters are forwarded to the AI Engine together with the use case
+    void run(String useCase, Map<String, String> parameters) throws AIEngineException;
+
+    // progress events are ignored by the adapters that cannot receive them
+    default void setProgressListener(ProgressListener progressListener) {
+    }
+
+    // the models are transferred in the run requests instead of through the shared filesystem
+    default void setModelExchange(ModelExchange modelExchange) throws AIEngineException {
+        throw new AIEngineException("The AI Engine linkage adapter cannot transfer the models in the run requests", null);
+    }
+
+    // called from another thread when the execution is aborted: the run in progress and the following ones fail
+    default void abortRuns() {
+    }
 
     void end() throws AIEngineException;
 
@@ -0,0 +1,17 @@
+package ai_engine_adapter.linkage;
+
+import utils.Payload;
+
+import java.util.Map;
+
+// Models handed to the AI Engine with the run request and received back with its result, instead of through a shared
+// filesystem. Implemented by the model management adapters that keep the models in memory
+public interface ModelExchange {
+
+    // input models of the next run by name, empty if the use case has no input model. The payloads remain owned by the exchange
+    Map<String, Payload> getInputModels();
+
+    // output model of the last run, owned by the exchange from now on
+    void setOutputModel(Payload model);
+
+}
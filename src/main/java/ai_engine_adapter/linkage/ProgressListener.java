@@ -0,0 +1,10 @@
+package ai_engine_adapter.linkage;
+
+import org.json.JSONObject;
+
+// Receives the progress events sent by the AI Engine while it runs a use case (epoch, step, total_steps, eta...)
+public interface ProgressListener {
+
+    void onProgress(JSONObject progress);
+
+}
@@ -0,0 +1,29 @@
+package ai_engine_adapter.linkage.types.async_rest_api;
+
+import java.util.concurrent.TimeUnit;
+
+// Last status pushed by the AI Engine to the status URL of the own server, shared by RunAIEngine and EndAIEngine
+public class AIEngineStatus {
+
+    public static final String READY = "ready";
+    public static final String STOPPED = "stopped";
+
+    private String status = null;
+
+    public synchronized void update(String status) {
+        this.status = status;
+        notifyAll();
+    }
+
+    // waits until the status is the expected one or the timeout expires
+    public synchronized boolean await(String expectedStatus, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!expectedStatus.equals(this.status)) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) return false;
+            wait(remaining);
+        }
+        return true;
+    }
+
+}
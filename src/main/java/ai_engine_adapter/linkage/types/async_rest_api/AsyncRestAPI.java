@@ -1,14 +1,18 @@
 package ai_engine_adapter.linkage.types.async_rest_api;
 
 import ai_engine_adapter.linkage.AIEngineLinkageAdapter;
+import ai_engine_adapter.linkage.ModelExchange;
+import ai_engine_adapter.linkage.ProgressListener;
 import config.EnvironmentVariable;
 import config.EnvironmentVariableType;
 import exceptions.AIEngineException;
 import exceptions.InternalException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 
 public class AsyncRestAPI implements AIEngineLinkageAdapter {
@@ -19,12 +23,16 @@ public class AsyncRestAPI implements AIEngineLinkageAdapter {
         abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_MAX_INITIALIZATION_TIME", EnvironmentVariableType.LONG));  // seconds
         abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_MAX_FINALIZATION_TIME", EnvironmentVariableType.LONG));  // seconds
         abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_MAX_FINALIZATION_RETRIES", EnvironmentVariableType.INTEGER));  // seconds
-        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_CLIENT_HOST", EnvironmentVariableType.STRING, "127.0.0.1:8080"));  // ipv4
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_CLIENT_HOST", EnvironmentVariableType.STRING, "127.0.0.1:8080"));  // ipv4, comma-separated list to run several AI Engine replicas
         abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_SERVER_HOST", EnvironmentVariableType.STRING, "127.0.0.1:8081"));  // ipv4
         abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_PING_URL", EnvironmentVariableType.STRING, "/api/ping"));
         abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_RUN_URL", EnvironmentVariableType.STRING, "/api/run"));
         abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_END_URL", EnvironmentVariableType.STRING, "/api/end"));
         abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_CALLBACK_URL", EnvironmentVariableType.STRING, "/api/callback"));
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_PROGRESS_URL", EnvironmentVariableType.STRING, "/api/progress"));  // the AI Engine sends its progress here while running
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_RESULT_URL", EnvironmentVariableType.STRING, "/api/result"));  // output model of a run, with the IN_MEMORY model management
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_LOCAL_MERGE_USE_CASE", EnvironmentVariableType.STRING, "local_merge"));  // merges the outputs of the replicas
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_STATUS_URL", EnvironmentVariableType.STRING, "/api/status"));  // the AI Engine notifies here when it is ready or stopped
         return abstractClassVariables;
     }
 
@@ -36,29 +44,43 @@ public class AsyncRestAPI implements AIEngineLinkageAdapter {
         long maxInitializationTime = (long) config.get("AI_ENGINE_LINKAGE_ADAPTER_MAX_INITIALIZATION_TIME");
         long maxFinalizationTime = (long) config.get("AI_ENGINE_LINKAGE_ADAPTER_MAX_FINALIZATION_TIME");
         int maxFinalizationRetries = (int) config.get("AI_ENGINE_LINKAGE_ADAPTER_MAX_FINALIZATION_RETRIES");
-        String clientHost = (String) config.get("AI_ENGINE_LINKAGE_ADAPTER_CLIENT_HOST");
+        List<String> clientHosts = Arrays.stream(((String) config.get("AI_ENGINE_LINKAGE_ADAPTER_CLIENT_HOST")).split(","))
+                .map(String::trim)
+                .filter(clientHost -> !clientHost.isEmpty())
+                .collect(Collectors.toList());
         String serverHost = (String) config.get("AI_ENGINE_LINKAGE_ADAPTER_SERVER_HOST");
         String pingUrl = (String) config.get("AI_ENGINE_LINKAGE_ADAPTER_PING_URL");
         String runUrl = (String) config.get("AI_ENGINE_LINKAGE_ADAPTER_RUN_URL");
         String endUrl = (String) config.get("AI_ENGINE_LINKAGE_ADAPTER_END_URL");
         String callbackUrl = (String) config.get("AI_ENGINE_LINKAGE_ADAPTER_CALLBACK_URL");
+        String statusUrl = (String) config.getOrDefault("AI_ENGINE_LINKAGE_ADAPTER_STATUS_URL", "/api/status");
+        String progressUrl = (String) config.getOrDefault("AI_ENGINE_LINKAGE_ADAPTER_PROGRESS_URL", "/api/progress");
+        String resultUrl = (String) config.getOrDefault("AI_ENGINE_LINKAGE_ADAPTER_RESULT_URL", "/api/result");
+        String localMergeUseCase = (String) config.getOrDefault("AI_ENGINE_LINKAGE_ADAPTER_LOCAL_MERGE_USE_CASE", "local_merge");
+        AIEngineStatus aiEngineStatus = new AIEngineStatus();
 
         this.runAIEngine = new RunAIEngine(
                 maxIterationTime,
                 maxInitializationTime,
-                clientHost,
+                clientHosts,
                 serverHost,
                 pingUrl,
                 runUrl,
-                callbackUrl
+                callbackUrl,
+                statusUrl,
+                progressUrl,
+                resultUrl,
+                localMergeUseCase,
+                aiEngineStatus
         );
 
         this.endAIEngine = new EndAIEngine(
                 maxFinalizationTime,
                 maxFinalizationRetries,
-                clientHost,
+                clientHosts,
                 pingUrl,
-                endUrl
+                endUrl,
+                aiEngineStatus
         );
     }
 
@@ -81,14 +103,29 @@ public class AsyncRestAPI implements AIEngineLinkageAdapter {
     }
 
     @Override
-    public void run(String useCase) throws AIEngineException {
+    public void run(String useCase, Map<String, String> parameters) throws AIEngineException {
         try {
-            this.runAIEngine.run(useCase);
+            this.runAIEngine.run(useCase, parameters);
         } catch (InternalException e) {
             throw new AIEngineException(e.getMessage(), e.getException());
         }
     }
 
+    @Override
+    public void setProgressListener(ProgressListener progressListener) {
+        this.runAIEngine.setProgressListener(progressListener);
+    }
+
+    @Override
+    public void setModelExchange(ModelExchange modelExchange) {
+        this.runAIEngine.setModelExchange(modelExchange);
+    }
+
+    @Override
+    public void abortRuns() {
+        this.runAIEngine.abortRuns();
+    }
+
     @Override
     public void end() throws AIEngineException {
         try {
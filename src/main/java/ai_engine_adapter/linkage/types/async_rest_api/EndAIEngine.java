@@ -7,63 +7,107 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import utils.ExponentialBackoff;
+import utils.HttpMethods;
 
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
 
 
 public class EndAIEngine {
 
     private static final int PING_TIMEOUT = 3;  // seconds
     private static final int END_TIMEOUT = 3;  // seconds
+    private static final long INITIAL_PING_DELAY = 50;  // ms
+    private static final long MAX_PING_DELAY = 3000;  // ms
     private static final Logger logger = LogManager.getLogger(EndAIEngine.class);
 
     private final long maxFinalizationTime;
     private final int maxFinalizationRetries;
-    private final String clientHost;
+    private final List<String> clientHosts;  // AI Engine replicas
     private final String pingUrl;
     private final String endUrl;
+    private final AIEngineStatus aiEngineStatus;
 
     public EndAIEngine(
             long maxFinalizationTime,
             int maxFinalizationRetries,
-            String clientHost,
+            List<String> clientHosts,
             String pingUrl,
-            String endUrl
+            String endUrl,
+            AIEngineStatus aiEngineStatus
     ) {
         this.maxFinalizationTime = maxFinalizationTime;
         this.maxFinalizationRetries = maxFinalizationRetries;
-        this.clientHost = clientHost;
+        this.clientHosts = clientHosts;
         this.pingUrl = pingUrl;
         this.endUrl = endUrl;
+        this.aiEngineStatus = aiEngineStatus;
     }
 
     public void end() throws InternalException {
+        if (this.clientHosts.size() == 1) {
+            end(this.clientHosts.get(0));
+            return;
+        }
+
+        // the replicas are ended in parallel
+        ExecutorService executor = Executors.newFixedThreadPool(this.clientHosts.size());
+        try {
+            List<Future<Void>> replicaEnds = new ArrayList<>();
+            for (String clientHost : this.clientHosts) {
+                replicaEnds.add(executor.submit(() -> {
+                    end(clientHost);
+                    return null;
+                }));
+            }
+            InternalException replicaException = null;
+            for (Future<Void> replicaEnd : replicaEnds) {
+                try {
+                    replicaEnd.get();
+                } catch (ExecutionException e) {
+                    if (replicaException != null) continue;
+                    if (e.getCause() instanceof InternalException) replicaException = (InternalException) e.getCause();
+                    else replicaException = new InternalException("Error while ending an AI Engine replica", e);
+                } catch (InterruptedException e) {
+                    throw new InternalException("Error while waiting for the AI Engine replicas to finish", e);
+                }
+            }
+            if (replicaException != null) throw replicaException;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void end(String clientHost) throws InternalException {
         boolean AIEngineFinished = false;
         int finalizationRetries = 0;
 
         while (!AIEngineFinished && finalizationRetries < this.maxFinalizationRetries) {
-            logger.debug(String.format("Finishing the AI Engine. Retries: %d", finalizationRetries));
+            logger.debug(String.format("Finishing the AI Engine %s. Retries: %d", clientHost, finalizationRetries));
 
             // send finish signal
-            RequestConfig config = RequestConfig.custom().setConnectTimeout(END_TIMEOUT * 1000).build();
-            try (CloseableHttpClient client = HttpClientBuilder.create().setDefaultRequestConfig(config).build()) {
+            RequestConfig config = HttpMethods.getRequestConfig(END_TIMEOUT, END_TIMEOUT);
+            try {
 
                 // create post
-                HttpPost httpPost = new HttpPost(String.format("http://%s%s", this.clientHost, this.endUrl));
+                HttpPost httpPost = new HttpPost(String.format("http://%s%s", clientHost, this.endUrl));
                 StringEntity entity = new StringEntity("{}");
                 httpPost.setEntity(entity);
                 httpPost.setHeader("Accept", "application/json");
                 httpPost.setHeader("Content-type", "application/json");
 
                 // send post
-                try (CloseableHttpResponse response = client.execute(httpPost)) {
+                try (CloseableHttpResponse response = HttpMethods.execute(httpPost, config)) {
                     int statusCode = response.getStatusLine().getStatusCode();
+                    EntityUtils.consume(response.getEntity());  // an unread body makes the pool close the connection instead of reusing it
                     if (statusCode != HttpStatus.SC_OK && finalizationRetries == 0) throw new InternalException("Error while ending AI Engine. Status code equal to " + statusCode + ". " + response.getStatusLine().getReasonPhrase(), null);
                 } catch (IOException e) {
                     // do nothing
@@ -76,33 +120,30 @@ public class EndAIEngine {
             // assure AI Engine is down
             Timestamp startTime = Timestamp.from(Instant.now());
             Timestamp currentTime = startTime;
-            config = RequestConfig.custom().setConnectTimeout(PING_TIMEOUT * 1000).build();
-            try (CloseableHttpClient client = HttpClientBuilder.create().setDefaultRequestConfig(config).build()) {
+            config = HttpMethods.getRequestConfig(PING_TIMEOUT, PING_TIMEOUT);
+            ExponentialBackoff backoff = new ExponentialBackoff(INITIAL_PING_DELAY, MAX_PING_DELAY);
 
-                // iterate until AIEngine finishes
-                while (!AIEngineFinished && (currentTime.getTime() < (startTime.getTime() + this.maxFinalizationTime * 1000))) {
+            // iterate until AIEngine finishes
+            while (!AIEngineFinished && (currentTime.getTime() < (startTime.getTime() + this.maxFinalizationTime * 1000))) {
 
-                    // query AI Engine
-                    try (CloseableHttpResponse response = client.execute(new HttpGet(String.format("http://%s%s", this.clientHost, this.pingUrl)))) {
-                        // empty
-                    } catch (IOException e) {
-                        AIEngineFinished = true;
-                    }
+                // query AI Engine
+                try (CloseableHttpResponse response = HttpMethods.execute(new HttpGet(String.format("http://%s%s", clientHost, this.pingUrl)), config)) {
+                    EntityUtils.consume(response.getEntity());
+                } catch (IOException e) {
+                    AIEngineFinished = true;
+                }
 
-                    // sleep 3 seconds
-                    if (!AIEngineFinished) {
-                        try {
-                            Thread.sleep(3000);
-                        } catch (InterruptedException e) {
-                            throw new InternalException("Error while waiting for the AI Engine to finish (during the thread sleep in the ping)", e);
-                        }
+                // wait until the next ping, unless the AI Engine notifies it stopped before (the notification does not identify the replica)
+                if (!AIEngineFinished) {
+                    try {
+                        if (this.clientHosts.size() == 1) AIEngineFinished = this.aiEngineStatus.await(AIEngineStatus.STOPPED, backoff.nextDelay(), TimeUnit.MILLISECONDS);
+                        else Thread.sleep(backoff.nextDelay());
+                    } catch (InterruptedException e) {
+                        throw new InternalException("Error while waiting for the AI Engine to finish (during the thread sleep in the ping)", e);
                     }
-
-                    currentTime = Timestamp.from(Instant.now());
                 }
 
-            } catch (IOException e) {
-                throw new InternalException("Error while waiting for the AI Engine to finish (during the ping client instantiation)", e);
+                currentTime = Timestamp.from(Instant.now());
             }
 
             finalizationRetries += 1;
@@ -3,6 +3,8 @@ package ai_engine_adapter.linkage.types.async_rest_api;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import ai_engine_adapter.linkage.ModelExchange;
+import ai_engine_adapter.linkage.ProgressListener;
 import exceptions.InternalException;
 import org.apache.http.HttpStatus;
 import org.apache.http.NoHttpResponseException;
@@ -11,61 +13,94 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+import org.apache.http.entity.mime.content.ContentBody;
+import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.json.JSONException;
 import org.json.JSONObject;
+import utils.ExponentialBackoff;
 import utils.FileMethods;
+import utils.HttpMethods;
+import utils.Payload;
+import utils.SpillingPayload;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.Instant;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
+import java.util.*;
+import java.util.concurrent.*;
 
 
 public class RunAIEngine {
 
     private static final int PING_HTTP_CALLS_TIMEOUT = 3;  // seconds
     private static final int RUN_HTTP_CALLS_TIMEOUT = 3;  // seconds
-    private static final int ITERATION_SLEEP = 3;  // seconds
-    private static CountDownLatch countDownLatch = null;
-    private static ServerHandlingOutput serverHandlingOutput = null;
+    private static final int RUN_RESPONSE_TIMEOUT = 30;  // seconds, the AI Engine answers before running the use case
+    private static final long INITIAL_PING_DELAY = 50;  // ms
+    private static final long MAX_PING_DELAY = 3000;  // ms
+    private static final int SERVER_WORKERS = 4;
     private static final Logger logger = LogManager.getLogger(RunAIEngine.class);
 
     private final long maxIterationTime;
     private final long maxInitializationTime;
-    private final String clientHost;
+    private final List<String> clientHosts;  // AI Engine replicas
     private final String serverHost;
     private final String pingUrl;
     private final String runUrl;
     private final String callbackUrl;
+    private final String statusUrl;
+    private final String progressUrl;
+    private final String resultUrl;
+    private final String localMergeUseCase;
+    private final AIEngineStatus aiEngineStatus;
+
+    private final Map<String, CompletableFuture<ServerHandlingOutput>> pendingRuns = new ConcurrentHashMap<>();  // run id -> callback
 
     private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ExecutorService replicaExecutor;
+    private volatile ProgressListener progressListener = null;
+    private volatile ModelExchange modelExchange = null;  // null -> models exchanged through the shared filesystem
+    private volatile boolean aborted = false;
 
     public RunAIEngine(
             long maxIterationTime,
             long maxInitializationTime,
-            String clientHost,
+            List<String> clientHosts,
             String serverHost,
             String pingUrl,
             String runUrl,
-            String callbackUrl
+            String callbackUrl,
+            String statusUrl,
+            String progressUrl,
+            String resultUrl,
+            String localMergeUseCase,
+            AIEngineStatus aiEngineStatus
     ) {
         this.maxIterationTime =maxIterationTime;
         this.maxInitializationTime = maxInitializationTime;
-        this.clientHost = clientHost;
+        this.clientHosts = clientHosts;
         this.serverHost = serverHost;
         this.pingUrl = pingUrl;
         this.runUrl = runUrl;
         this.callbackUrl = callbackUrl;
+        this.statusUrl = statusUrl;
+        this.progressUrl = progressUrl;
+        this.resultUrl = resultUrl;
+        this.localMergeUseCase = localMergeUseCase;
+        this.aiEngineStatus = aiEngineStatus;
     }
 
     private final class ServerHandlingOutput {
@@ -97,95 +132,186 @@ public class RunAIEngine {
             throw new InternalException("Error while initializing server", e);
         }
         this.server.createContext(this.callbackUrl, new ServerHandler());
-        this.server.setExecutor(null); // creates a default executor
+        this.server.createContext(this.statusUrl, new StatusHandler());
+        this.server.createContext(this.progressUrl, new ProgressHandler());
+        this.serverExecutor = Executors.newFixedThreadPool(SERVER_WORKERS, daemonThreadFactory("ai-engine-callback-server"));
+        this.server.setExecutor(this.serverExecutor);
         this.server.start();
+        if (this.clientHosts.size() > 1) this.replicaExecutor = Executors.newFixedThreadPool(this.clientHosts.size(), daemonThreadFactory("ai-engine-replica"));
     }
 
-    public void waitAIEngineToBeReady() throws InternalException {
-        logger.debug("Waiting for AI Engine to be ready");
+    private static ThreadFactory daemonThreadFactory(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 
+    public void waitAIEngineToBeReady() throws InternalException {
         Timestamp startTime = Timestamp.from(Instant.now());
-        Timestamp currentTime = startTime;
+        for (String clientHost : this.clientHosts) waitAIEngineToBeReady(clientHost, startTime);
+    }
+
+    private void waitAIEngineToBeReady(String clientHost, Timestamp startTime) throws InternalException {
+        logger.debug(String.format("Waiting for AI Engine %s to be ready", clientHost));
+
+        Timestamp currentTime = Timestamp.from(Instant.now());
         boolean AIEngineStarted = false;
 
         // set config
-        RequestConfig config = RequestConfig.custom().setConnectTimeout(PING_HTTP_CALLS_TIMEOUT * 1000).build();
+        RequestConfig config = HttpMethods.getRequestConfig(PING_HTTP_CALLS_TIMEOUT, PING_HTTP_CALLS_TIMEOUT);
+        ExponentialBackoff backoff = new ExponentialBackoff(INITIAL_PING_DELAY, MAX_PING_DELAY);
 
-        // create client
-        try (CloseableHttpClient client = HttpClientBuilder.create().setDefaultRequestConfig(config).build()) {
+        // iterate until AIEngine is ready
+        while (!AIEngineStarted && (currentTime.getTime() < (startTime.getTime() + this.maxInitializationTime * 1000))) {
 
-            // iterate until AIEngine is ready
-            while (!AIEngineStarted && (currentTime.getTime() < (startTime.getTime() + this.maxInitializationTime * 1000))) {
+            // query AI Engine
+            try(CloseableHttpResponse response = HttpMethods.execute(new HttpGet(String.format("http://%s%s", clientHost, this.pingUrl)), config)) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                EntityUtils.consume(response.getEntity());  // an unread body makes the pool close the connection instead of reusing it
+                if (statusCode == HttpStatus.SC_OK) AIEngineStarted = true;
+                else throw new InternalException(String.format("Error while waiting for the AI Engine to be ready (during the query). Incorrect initialization with status code %d", statusCode), null);
+            } catch (ConnectException | NoHttpResponseException | ConnectTimeoutException | SocketTimeoutException e) {
+                // do nothing
+            } catch (IOException e) {
+                throw new InternalException("Error while waiting for the AI Engine to be ready (during the query)", e);
+            }
 
-                // query AI Engine
-                try(CloseableHttpResponse response = client.execute(new HttpGet(String.format("http://%s%s", this.clientHost, this.pingUrl)))) {
-                    int statusCode = response.getStatusLine().getStatusCode();
-                    if (statusCode == HttpStatus.SC_OK) AIEngineStarted = true;
-                    else throw new InternalException(String.format("Error while waiting for the AI Engine to be ready (during the query). Incorrect initialization with status code %d", statusCode), null);
-                } catch (ConnectException | NoHttpResponseException | ConnectTimeoutException e) {
-                    // do nothing
-                } catch (IOException e) {
-                    throw new InternalException("Error while waiting for the AI Engine to be ready (during the query)", e);
+            // wait until the next ping, unless the AI Engine notifies it is ready before (the notification does not identify the replica)
+            if (!AIEngineStarted) {
+                try {
+                    if (this.clientHosts.size() == 1) AIEngineStarted = this.aiEngineStatus.await(AIEngineStatus.READY, backoff.nextDelay(), TimeUnit.MILLISECONDS);
+                    else Thread.sleep(backoff.nextDelay());
+                } catch (InterruptedException e) {
+                    throw new InternalException("Error while waiting for the AI Engine to be ready (during the thread sleep)", e);
                 }
+            }
 
-                // sleep 3 seconds
-                if (!AIEngineStarted) {
-                    try {
-                        Thread.sleep(ITERATION_SLEEP * 1000);
-                    } catch (InterruptedException e) {
-                        throw new InternalException("Error while waiting for the AI Engine to be ready (during the thread sleep)", e);
-                    }
+            currentTime = Timestamp.from(Instant.now());
+        }
+
+        if (!AIEngineStarted) throw new InternalException("Error while waiting for the AI Engine to be ready. It did not start before the timeout", null);
+    }
+
+    public void run(String useCase, Map<String, String> parameters) throws InternalException {
+        if (this.clientHosts.size() == 1) {
+            run(this.clientHosts.get(0), useCase, parameters, true, true);
+            return;
+        }
+
+        // every replica runs the use case on its own shard of the local data and writes its output in the .replica_<k> subdirectory
+        int replicas = this.clientHosts.size();
+        List<CompletableFuture<Void>> replicaRuns = new ArrayList<>();
+        for (int replica = 0; replica < replicas; ++replica) {
+            String clientHost = this.clientHosts.get(replica);
+            Map<String, String> replicaParameters = new HashMap<>(parameters);
+            replicaParameters.put("replica", String.valueOf(replica));
+            replicaParameters.put("replicas", String.valueOf(replicas));
+            replicaParameters.put("output_subdirectory", ".replica_" + replica);
+            replicaRuns.add(CompletableFuture.runAsync(() -> {
+                try {
+                    run(clientHost, useCase, replicaParameters, true, false);
+                } catch (InternalException e) {
+                    throw new CompletionException(e);
                 }
+            }, this.replicaExecutor));
+        }
 
-                currentTime = Timestamp.from(Instant.now());
+        // all the replicas end before reporting an error, so that no run is left pending
+        InternalException replicaException = null;
+        for (CompletableFuture<Void> replicaRun : replicaRuns) {
+            try {
+                replicaRun.join();
+            } catch (CompletionException e) {
+                if (replicaException != null) continue;
+                if (e.getCause() instanceof InternalException) replicaException = (InternalException) e.getCause();
+                else replicaException = new InternalException("Error while running use case in an AI Engine replica", e);
             }
-
-        } catch (IOException e) {
-            throw new InternalException("Error while waiting for the AI Engine to be ready (during the client instantiation)", e);
         }
+        if (replicaException != null) throw replicaException;
 
-        if (!AIEngineStarted) throw new InternalException("Error while waiting for the AI Engine to be ready. It did not start before the timeout", null);
+        // the first replica merges the outputs of all of them, weighted by the number of samples of each shard
+        Map<String, String> mergeParameters = new HashMap<>(parameters);
+        mergeParameters.put("replicas", String.valueOf(replicas));
+        mergeParameters.put("merged_use_case", useCase);
+        run(this.clientHosts.get(0), this.localMergeUseCase, mergeParameters, false, true);
     }
 
-    public void run(String useCase) throws InternalException {
-        logger.debug(String.format("Running the AI Engine. Use case: %s", useCase));
+    // with a model exchange, the input models are sent in the request body and the output model is downloaded once the run ends
+    private void run(String clientHost, String useCase, Map<String, String> parameters, boolean sendInputModels, boolean receiveOutputModel) throws InternalException {
+        logger.debug(String.format("Running the AI Engine %s. Use case: %s. Parameters: %s", clientHost, useCase, parameters));
+        ModelExchange modelExchange = this.modelExchange;
+        if (modelExchange != null) {
+            parameters = new HashMap<>(parameters);
+            parameters.put("model_transfer", "request_body");
+        }
 
-        RequestConfig config = RequestConfig.custom().setConnectTimeout(RUN_HTTP_CALLS_TIMEOUT * 1000).build();
-        try(CloseableHttpClient client = HttpClientBuilder.create().setDefaultRequestConfig(config).build()) {
+        RequestConfig config = HttpMethods.getRequestConfig(RUN_HTTP_CALLS_TIMEOUT, RUN_RESPONSE_TIMEOUT);
+        try {
 
             // create post
+            StringBuilder extraParameters = new StringBuilder();
+            for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+                extraParameters.append(String.format(
+                        "&%s=%s",
+                        URLEncoder.encode(parameter.getKey(), StandardCharsets.UTF_8),
+                        URLEncoder.encode(parameter.getValue(), StandardCharsets.UTF_8)
+                ));
+            }
+            // the callback of this run is received in <callback url>/<run id>
+            String runId = UUID.randomUUID().toString();
             HttpPost httpPost = new HttpPost(String.format(
-                    "http://%s%s?use_case=%s&callback_url=%s",
-                    this.clientHost,
+                    "http://%s%s?use_case=%s&callback_url=%s%s",
+                    clientHost,
                     this.runUrl,
                     useCase,
-                    String.format("http://%s%s", this.serverHost, this.callbackUrl)
+                    String.format("http://%s%s/%s", this.serverHost, this.callbackUrl, runId),
+                    extraParameters
             ));
-            StringEntity entity = new StringEntity("{}");
-            httpPost.setEntity(entity);
             httpPost.setHeader("Accept", "application/json");
-            httpPost.setHeader("Content-type", "application/json");
-
-            // send post
-            countDownLatch = new CountDownLatch(1);
-            serverHandlingOutput = null;
-            try(CloseableHttpResponse response = client.execute(httpPost)) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                if (statusCode != HttpStatus.SC_OK) throw new InternalException("Error while running use case. Status code equal to " + statusCode + ". " + response.getStatusLine().getReasonPhrase(), null);
-            } catch (IOException e) {
-                throw new InternalException("Error while running use case (during the query)", e);
+            Map<String, Payload> inputModels = modelExchange != null && sendInputModels ? modelExchange.getInputModels() : Map.of();
+            if (inputModels.isEmpty()) {
+                StringEntity entity = new StringEntity("{}");
+                httpPost.setEntity(entity);
+                httpPost.setHeader("Content-type", "application/json");
+            } else {
+                // one part per model, streamed from the payloads while the request is sent
+                MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+                for (Map.Entry<String, Payload> inputModel : inputModels.entrySet()) {
+                    builder.addPart(inputModel.getKey(), new PayloadBody(inputModel.getKey(), inputModel.getValue()));
+                }
+                httpPost.setEntity(builder.build());
             }
 
-            // wait for ack
-            boolean received;
+            // send post
+            CompletableFuture<ServerHandlingOutput> callback = new CompletableFuture<>();
+            this.pendingRuns.put(runId, callback);
+            ServerHandlingOutput serverHandlingOutput;
             try {
-                received = countDownLatch.await(this.maxIterationTime, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                throw new InternalException("Error while running use case. While waiting the ack", e);
+                if (this.aborted) throw new InternalException("Error while running use case. The execution was aborted", null);
+                try(CloseableHttpResponse response = HttpMethods.execute(httpPost, config)) {
+                    int statusCode = response.getStatusLine().getStatusCode();
+                    EntityUtils.consume(response.getEntity());
+                    if (statusCode != HttpStatus.SC_OK) throw new InternalException("Error while running use case. Status code equal to " + statusCode + ". " + response.getStatusLine().getReasonPhrase(), null);
+                } catch (IOException e) {
+                    throw new InternalException("Error while running use case (during the query)", e);
+                }
+
+                // wait for ack
+                try {
+                    serverHandlingOutput = callback.get(this.maxIterationTime, TimeUnit.SECONDS);
+                } catch (TimeoutException e) {
+                    throw new InternalException("Error while running use case. The end of the iteration was not notified on time", null);
+                } catch (InterruptedException | ExecutionException e) {
+                    if (this.aborted) throw new InternalException("Error while running use case. The execution was aborted", null);
+                    throw new InternalException("Error while running use case. While waiting the ack", e);
+                }
+            } finally {
+                this.pendingRuns.remove(runId);
             }
 
             // check ack
-            if (!received) throw new InternalException("Error while running use case. The end of the iteration was not notified on time", null);
             if (serverHandlingOutput == null) throw new InternalException("Error while running use case. The server did not save the response information", null);
             if (!serverHandlingOutput.isGoodAck()) {
                 JSONObject errorMessageJson;
@@ -199,20 +325,166 @@ public class RunAIEngine {
                 throw new InternalException(String.format("Error while running use case. AI Engine error -> %s", errorMessage), null);
             }
 
+            if (modelExchange != null && receiveOutputModel) modelExchange.setOutputModel(downloadOutputModel(clientHost, runId));
+
         } catch (IOException e) {
             throw new InternalException("Error while running use case (during the query creation)", e);
         }
     }
 
+    private Payload downloadOutputModel(String clientHost, String runId) throws InternalException {
+        HttpGet httpGet = new HttpGet(String.format("http://%s%s?run_id=%s", clientHost, this.resultUrl, runId));
+        RequestConfig config = HttpMethods.getRequestConfig(RUN_HTTP_CALLS_TIMEOUT, RUN_RESPONSE_TIMEOUT);
+        SpillingPayload outputModel = new SpillingPayload();
+        try(CloseableHttpResponse response = HttpMethods.execute(httpGet, config)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode != HttpStatus.SC_OK) {
+                EntityUtils.consume(response.getEntity());
+                throw new InternalException("Error while downloading the output model. Status code equal to " + statusCode + ". " + response.getStatusLine().getReasonPhrase(), null);
+            }
+            if (response.getEntity() != null) response.getEntity().writeTo(outputModel.getOutputStream());
+            return outputModel;
+        } catch (IOException e) {
+            outputModel.close();
+            throw new InternalException("Error while downloading the output model (during the query)", e);
+        } catch (InternalException e) {
+            outputModel.close();
+            throw e;
+        }
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public void setModelExchange(ModelExchange modelExchange) {
+        this.modelExchange = modelExchange;
+    }
+
+    // the callback is registered before the flag is checked, so a run is never left waiting
+    public void abortRuns() {
+        this.aborted = true;
+        for (CompletableFuture<ServerHandlingOutput> callback : this.pendingRuns.values()) callback.completeExceptionally(new IOException("Execution aborted"));
+    }
+
     public void clean() throws InternalException {
         // stop own server
         try {
             if (this.server != null) this.server.stop(0);
+            if (this.serverExecutor != null) this.serverExecutor.shutdownNow();
+            if (this.replicaExecutor != null) this.replicaExecutor.shutdownNow();
         } catch (Exception e) {
             throw new InternalException("Error while shutting down own server", e);
         }
     }
 
+    private class ProgressHandler implements HttpHandler {
+
+        // AI Engine progress event: {"epoch": ..., "step": ..., "total_steps": ..., "eta": seconds}
+        @Override
+        public void handle(HttpExchange httpExchange) {
+            int responseStatus = 200;
+            String message = null;
+
+            if (!"POST".equals(httpExchange.getRequestMethod())) {
+                responseStatus = 405;
+                message = "Bad request. Only POST method allowed";
+            } else {
+                try (InputStream inputStream = httpExchange.getRequestBody()) {
+                    JSONObject progress = FileMethods.readJson(inputStream);
+                    ProgressListener listener = progressListener;
+                    if (listener != null) listener.onProgress(progress);
+                } catch (IOException e) {
+                    responseStatus = 400;
+                    message = String.format("Bad request: incorrect JSON format. %s", e.getMessage());
+                } catch (RuntimeException e) {
+                    // the progress is informative, the run goes on
+                    logger.debug(String.format("Error while handling the AI Engine progress. %s", e.getMessage()));
+                }
+            }
+
+            sendResponse(httpExchange, responseStatus, message);
+        }
+
+    }
+
+    private class StatusHandler implements HttpHandler {
+
+        // AI Engine status notification: {"status": "ready" | "stopped"}
+        @Override
+        public void handle(HttpExchange httpExchange) {
+            int responseStatus = 200;
+            String message = null;
+
+            if (!"POST".equals(httpExchange.getRequestMethod())) {
+                responseStatus = 405;
+                message = "Bad request. Only POST method allowed";
+            } else {
+                try (InputStream inputStream = httpExchange.getRequestBody()) {
+                    String status = FileMethods.readJson(inputStream).getString("status");
+                    logger.debug(String.format("AI Engine status notified: %s", status));
+                    aiEngineStatus.update(status);
+                } catch (IOException | JSONException e) {
+                    responseStatus = 400;
+                    message = String.format("Bad request: incorrect JSON format. %s", e.getMessage());
+                }
+            }
+
+            sendResponse(httpExchange, responseStatus, message);
+        }
+
+    }
+
+    // request body part read from the payload as it is sent, so the model is not copied
+    private static class PayloadBody extends AbstractContentBody {
+
+        private final String name;
+        private final Payload payload;
+
+        private PayloadBody(String name, Payload payload) {
+            super(ContentType.APPLICATION_OCTET_STREAM);
+            this.name = name;
+            this.payload = payload;
+        }
+
+        @Override
+        public String getFilename() {
+            return this.name;
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            try (InputStream inputStream = this.payload.getInputStream()) {
+                inputStream.transferTo(outputStream);
+            }
+        }
+
+        @Override
+        public String getTransferEncoding() {
+            return "binary";
+        }
+
+        @Override
+        public long getContentLength() {
+            return this.payload.size();
+        }
+
+    }
+
+    private static void sendResponse(HttpExchange httpExchange, int responseStatus, String message) {
+        try(OutputStream outputStream = httpExchange.getResponseBody()) {
+            JSONObject response = new JSONObject();
+            if (message != null) {
+                response.put("message", message);
+            }
+            byte[] responseBytes = response.toString().getBytes(StandardCharsets.UTF_8);
+            httpExchange.sendResponseHeaders(responseStatus, responseBytes.length);
+            outputStream.write(responseBytes);
+        } catch (IOException e) {
+            logger.debug(String.format("Error while answering the AI Engine. %s", e.getMessage()));
+        }
+    }
+
     private class ServerHandler implements HttpHandler {
 
         // ACK response handler
@@ -223,7 +495,11 @@ public class RunAIEngine {
             int responseStatus = 200;
             String message = null;
 
-            if (!"POST".equals(httpExchange.getRequestMethod())) {
+            CompletableFuture<ServerHandlingOutput> callback = getPendingRun(httpExchange.getRequestURI().getPath());
+            if (callback == null) {
+                responseStatus = 404;
+                message = "Not found. No run pending with this id";
+            } else if (!"POST".equals(httpExchange.getRequestMethod())) {
                 goodAck = false;
                 responseStatus = 405;
                 message = "Bad request. Only POST method allowed";
@@ -264,11 +540,24 @@ public class RunAIEngine {
                 message = String.format("Server error: while writing response. %s", e.getMessage());
             }
 
-            serverHandlingOutput = new ServerHandlingOutput(goodAck, message);
-            countDownLatch.countDown();
+            if (callback != null) callback.complete(new ServerHandlingOutput(goodAck, message));
             logger.debug(goodAck + " " + responseStatus + " " + message);
         }
 
+        private CompletableFuture<ServerHandlingOutput> getPendingRun(String path) {
+            String runId = path.substring(callbackUrl.length());
+            if (runId.startsWith("/")) runId = runId.substring(1);
+            if (!runId.isEmpty()) return pendingRuns.get(runId);
+
+            // callback url without run id, only unambiguous when there is a single run pending
+            if (pendingRuns.size() != 1) return null;
+            try {
+                return pendingRuns.values().iterator().next();
+            } catch (NoSuchElementException e) {
+                return null;
+            }
+        }
+
     }
 
 
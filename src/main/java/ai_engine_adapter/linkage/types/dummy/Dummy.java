@@ -5,6 +5,8 @@ import exceptions.AIEngineException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Map;
+
 public class Dummy implements AIEngineLinkageAdapter {
 
     private static final Logger logger = LogManager.getLogger(Dummy.class);
@@ -20,7 +22,7 @@ public class Dummy implements AIEngineLinkageAdapter {
     }
 
     @Override
-    public void run(String useCase) {
+    public void run(String useCase, Map<String, String> parameters) {
         logger.debug("run method called");
     }
 
@@ -0,0 +1,207 @@
+package ai_engine_adapter.linkage.types.framed;
+
+import ai_engine_adapter.linkage.AIEngineLinkageAdapter;
+import ai_engine_adapter.linkage.ProgressListener;
+import exceptions.AIEngineException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+// Linkage with an AI Engine through a single, persistent connection in which every message is a JSON frame (see Frames):
+//   manager -> AI Engine: {"type": "ping" | "run" | "end", "id": ...}, run also has "run_id", "use_case" and "parameters"
+//   AI Engine -> manager: {"type": "response", "id": ..., "status": "ok" | "error", "message": ...} for every request
+//                         {"type": "callback", "run_id": ..., "SUCCESS": true | false, "message": ...} when a run ends
+//                         {"type": "progress", ...} while a run is in progress
+// The subclasses open the connection and call connect once the AI Engine is reachable
+public abstract class FramedAIEngine implements AIEngineLinkageAdapter {
+
+    private static final Logger logger = LogManager.getLogger(FramedAIEngine.class);
+    protected static final long RESPONSE_TIMEOUT = 30;  // seconds
+
+    protected final long maxIterationTime;
+    protected final long maxInitializationTime;
+    protected final long maxFinalizationTime;
+
+    private final Map<String, CompletableFuture<JSONObject>> pendingRequests = new ConcurrentHashMap<>();  // request id -> response
+    private final Map<String, CompletableFuture<JSONObject>> pendingRuns = new ConcurrentHashMap<>();  // run id -> callback
+    private final CompletableFuture<Void> disconnected = new CompletableFuture<>();
+    private volatile ProgressListener progressListener = null;
+    private volatile boolean aborted = false;
+
+    private WritableByteChannel output;
+    private Thread readerThread;
+
+    protected FramedAIEngine(Map<String, Object> config) {
+        this.maxIterationTime = (long) config.get("AI_ENGINE_LINKAGE_ADAPTER_MAX_ITERATION_TIME");
+        this.maxInitializationTime = (long) config.get("AI_ENGINE_LINKAGE_ADAPTER_MAX_INITIALIZATION_TIME");
+        this.maxFinalizationTime = (long) config.get("AI_ENGINE_LINKAGE_ADAPTER_MAX_FINALIZATION_TIME");
+    }
+
+    // starts dispatching the messages of the AI Engine and pings it
+    protected void connect(ReadableByteChannel input, WritableByteChannel output, long pingTimeout) throws AIEngineException {
+        this.output = output;
+        this.readerThread = new Thread(() -> readMessages(input), "ai-engine-reader");
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+
+        JSONObject response = request(new JSONObject().put("type", "ping"), pingTimeout, "Error while waiting for the AI Engine to be ready");
+        if (!"ok".equals(response.optString("status"))) {
+            throw new AIEngineException("Error while waiting for the AI Engine to be ready. Incorrect initialization: " + response.optString("message"), null);
+        }
+    }
+
+    protected boolean isConnected() {
+        return this.output != null;
+    }
+
+    protected boolean isDisconnected() {
+        return this.disconnected.isDone();
+    }
+
+    @Override
+    public void run(String useCase, Map<String, String> parameters) throws AIEngineException {
+        logger.debug(String.format("Running the AI Engine. Use case: %s. Parameters: %s", useCase, parameters));
+        String runId = UUID.randomUUID().toString();
+        JSONObject message = new JSONObject()
+                .put("type", "run")
+                .put("run_id", runId)
+                .put("use_case", useCase)
+                .put("parameters", new JSONObject(parameters));
+
+        CompletableFuture<JSONObject> callback = new CompletableFuture<>();
+        this.pendingRuns.put(runId, callback);
+        JSONObject result;
+        try {
+            if (this.aborted) throw new AIEngineException("Error while running use case. The execution was aborted", null);
+            JSONObject response = request(message, RESPONSE_TIMEOUT, "Error while running use case");
+            if (!"ok".equals(response.optString("status"))) {
+                throw new AIEngineException("Error while running use case. AI Engine error -> " + response.optString("message"), null);
+            }
+            result = await(callback, this.maxIterationTime, "Error while running use case. The end of the iteration was not notified on time");
+        } catch (AIEngineException e) {
+            if (this.aborted) throw new AIEngineException("Error while running use case. The execution was aborted", null);
+            throw e;
+        } finally {
+            this.pendingRuns.remove(runId);
+        }
+
+        if (!result.optBoolean("SUCCESS", false)) {
+            throw new AIEngineException("Error while running use case. AI Engine error -> " + result.optString("message"), null);
+        }
+    }
+
+    @Override
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    // the callback is registered before the flag is checked, so a run is never left waiting
+    @Override
+    public void abortRuns() {
+        this.aborted = true;
+        for (CompletableFuture<JSONObject> future : this.pendingRuns.values()) future.completeExceptionally(new IOException("Execution aborted"));
+    }
+
+    @Override
+    public void end() throws AIEngineException {
+        if (!isConnected()) return;  // never connected
+        logger.debug("Finishing the AI Engine");
+        try {
+            request(new JSONObject().put("type", "end"), RESPONSE_TIMEOUT, "Error while ending AI Engine");
+        } catch (AIEngineException e) {
+            if (!isDisconnected()) throw e;  // the AI Engine may close the connection without answering
+        }
+
+        // the AI Engine closes the connection when it ends
+        await(this.disconnected, this.maxFinalizationTime, "Error while waiting for the AI Engine to finish. It did not end before the timeout");
+    }
+
+    // to be called once the connection is closed
+    protected void joinReader() throws InterruptedException {
+        if (this.readerThread != null) this.readerThread.join(1000);
+    }
+
+    private JSONObject request(JSONObject message, long timeout, String errorMessage) throws AIEngineException {
+        String id = UUID.randomUUID().toString();
+        message.put("id", id);
+        CompletableFuture<JSONObject> response = new CompletableFuture<>();
+        this.pendingRequests.put(id, response);
+        try {
+            synchronized (this) {
+                Frames.write(this.output, message);
+            }
+            return await(response, timeout, errorMessage + ". The AI Engine did not answer on time");
+        } catch (IOException e) {
+            throw new AIEngineException(errorMessage + " (during the query)", e);
+        } finally {
+            this.pendingRequests.remove(id);
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> future, long timeout, String timeoutMessage) throws AIEngineException {
+        try {
+            return future.get(timeout, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new AIEngineException(timeoutMessage, null);
+        } catch (ExecutionException e) {
+            throw new AIEngineException("Connection with the AI Engine lost", e);
+        } catch (InterruptedException e) {
+            throw new AIEngineException("Interrupted while waiting for the AI Engine", e);
+        }
+    }
+
+    // dispatches the messages of the AI Engine until the connection is closed
+    private void readMessages(ReadableByteChannel input) {
+        IOException closingException = null;
+        try {
+            JSONObject message;
+            while ((message = Frames.read(input)) != null) {
+                dispatch(message);
+            }
+        } catch (IOException e) {
+            closingException = e;
+        }
+
+        logger.debug("Connection with the AI Engine closed");
+        this.disconnected.complete(null);
+        IOException cause = closingException != null ? closingException : new IOException("Connection closed by the AI Engine");
+        for (CompletableFuture<JSONObject> future : this.pendingRequests.values()) future.completeExceptionally(cause);
+        for (CompletableFuture<JSONObject> future : this.pendingRuns.values()) future.completeExceptionally(cause);
+    }
+
+    private void dispatch(JSONObject message) {
+        try {
+            switch (message.getString("type")) {
+                case "response":
+                    CompletableFuture<JSONObject> response = this.pendingRequests.get(message.getString("id"));
+                    if (response != null) response.complete(message);
+                    break;
+                case "callback":
+                    CompletableFuture<JSONObject> callback = this.pendingRuns.get(message.getString("run_id"));
+                    if (callback != null) callback.complete(message);
+                    else logger.debug("Callback received for an unknown run: " + message.getString("run_id"));
+                    break;
+                case "progress":
+                    ProgressListener listener = this.progressListener;
+                    if (listener != null) listener.onProgress(message);
+                    break;
+                default:
+                    logger.debug("Unknown message received from the AI Engine: " + message);
+            }
+        } catch (JSONException e) {
+            logger.debug("Incorrect message received from the AI Engine: " + message);
+        } catch (RuntimeException e) {
+            // e.g. thrown by the progress listener, the connection goes on
+            logger.debug(String.format("Error while handling the AI Engine message. %s", e.getMessage()));
+        }
+    }
+
+}
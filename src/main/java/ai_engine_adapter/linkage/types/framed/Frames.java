@@ -0,0 +1,53 @@
+package ai_engine_adapter.linkage.types.framed;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+// Messages exchanged with the AI Engine: 4 bytes big-endian length followed by the UTF-8 JSON object
+public class Frames {
+
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;  // bytes
+
+    public static void write(WritableByteChannel channel, JSONObject message) throws IOException {
+        byte[] bytes = message.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    // returns null when the channel is closed between frames
+    public static JSONObject read(ReadableByteChannel channel) throws IOException {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        if (!readFully(channel, lengthBuffer, true)) return null;
+        int length = lengthBuffer.flip().getInt();
+        if (length < 0 || length > MAX_FRAME_SIZE) throw new IOException("Incorrect frame length: " + length);
+
+        ByteBuffer messageBuffer = ByteBuffer.allocate(length);
+        readFully(channel, messageBuffer, false);
+        try {
+            return new JSONObject(new String(messageBuffer.array(), StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            throw new IOException("Incorrect frame: not a JSON object", e);
+        }
+    }
+
+    private static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer, boolean eofAllowed) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (eofAllowed && buffer.position() == 0) return false;
+                throw new EOFException("Channel closed in the middle of a frame");
+            }
+        }
+        return true;
+    }
+
+}
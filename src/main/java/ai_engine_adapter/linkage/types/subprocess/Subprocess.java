@@ -0,0 +1,120 @@
+package ai_engine_adapter.linkage.types.subprocess;
+
+import ai_engine_adapter.linkage.types.framed.FramedAIEngine;
+import config.EnvironmentVariable;
+import config.EnvironmentVariableType;
+import exceptions.AIEngineException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Linkage with an AI Engine launched by the manager as a child process. The messages described in FramedAIEngine are
+// exchanged through its stdin and stdout, its stderr goes to the manager output. The same process is kept for all
+// the iterations
+public class Subprocess extends FramedAIEngine {
+
+    public static List<EnvironmentVariable> getEnvironmentVariables() {
+        List<EnvironmentVariable> abstractClassVariables = new ArrayList<>();
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_MAX_ITERATION_TIME", EnvironmentVariableType.LONG));  // seconds
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_MAX_INITIALIZATION_TIME", EnvironmentVariableType.LONG));  // seconds
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_MAX_FINALIZATION_TIME", EnvironmentVariableType.LONG));  // seconds
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_COMMAND", EnvironmentVariableType.STRING));  // arguments separated by whitespaces
+        return abstractClassVariables;
+    }
+
+    private static final Logger logger = LogManager.getLogger(Subprocess.class);
+    private static final long DESTROY_TIMEOUT = 5;  // seconds
+
+    private final List<String> command;
+
+    private Process process;
+
+    public Subprocess(Map<String, Object> config) {
+        super(config);
+        this.command = Arrays.asList(((String) config.get("AI_ENGINE_LINKAGE_ADAPTER_COMMAND")).trim().split("\\s+"));
+    }
+
+    @Override
+    public void initialize() throws AIEngineException {
+        logger.debug("Launching the AI Engine: " + this.command);
+        try {
+            this.process = new ProcessBuilder(this.command)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+        } catch (IOException e) {
+            throw new AIEngineException("Error while launching the AI Engine", e);
+        }
+    }
+
+    @Override
+    public void waitAIEngineToBeReady() throws AIEngineException {
+        logger.debug("Waiting for AI Engine to be ready");
+        // stdin is buffered, every frame is flushed as soon as it is written
+        FilterOutputStream stdin = new FilterOutputStream(this.process.getOutputStream()) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                this.out.write(bytes, offset, length);
+                this.out.flush();
+            }
+        };
+        // the AI Engine answers the ping once it has loaded
+        try {
+            connect(Channels.newChannel(this.process.getInputStream()), Channels.newChannel(stdin), this.maxInitializationTime);
+        } catch (AIEngineException e) {
+            if (hasExited()) {
+                throw new AIEngineException("Error while waiting for the AI Engine to be ready. The process exited with code " + this.process.exitValue(), e);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void end() throws AIEngineException {
+        super.end();
+        try {
+            if (!this.process.waitFor(this.maxFinalizationTime, TimeUnit.SECONDS)) {
+                throw new AIEngineException("Error while waiting for the AI Engine to finish. It did not end before the timeout", null);
+            }
+        } catch (InterruptedException e) {
+            throw new AIEngineException("Error while waiting for the AI Engine to finish (during the wait)", e);
+        }
+        logger.debug("AI Engine finished with exit code " + this.process.exitValue());
+    }
+
+    @Override
+    public void clean() throws AIEngineException {
+        if (this.process == null) return;
+        try {
+            try {
+                this.process.getOutputStream().close();  // EOF for the AI Engine
+            } catch (IOException e) {
+                logger.debug("AI Engine stdin already closed");
+            }
+            if (this.process.isAlive()) {
+                this.process.destroy();
+                if (!this.process.waitFor(DESTROY_TIMEOUT, TimeUnit.SECONDS)) this.process.destroyForcibly().waitFor();
+            }
+            joinReader();
+        } catch (InterruptedException e) {
+            throw new AIEngineException("Error while stopping the AI Engine process", e);
+        }
+    }
+
+    // the pipes are closed just before the process ends
+    private boolean hasExited() {
+        try {
+            return this.process.waitFor(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+}
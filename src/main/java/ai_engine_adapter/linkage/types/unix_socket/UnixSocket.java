@@ -0,0 +1,94 @@
+package ai_engine_adapter.linkage.types.unix_socket;
+
+import ai_engine_adapter.linkage.types.framed.FramedAIEngine;
+import config.EnvironmentVariable;
+import config.EnvironmentVariableType;
+import exceptions.AIEngineException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import utils.ExponentialBackoff;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Linkage with an AI Engine running in the same host through a single, persistent unix domain socket connection.
+// The messages are described in FramedAIEngine
+public class UnixSocket extends FramedAIEngine {
+
+    public static List<EnvironmentVariable> getEnvironmentVariables() {
+        List<EnvironmentVariable> abstractClassVariables = new ArrayList<>();
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_MAX_ITERATION_TIME", EnvironmentVariableType.LONG));  // seconds
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_MAX_INITIALIZATION_TIME", EnvironmentVariableType.LONG));  // seconds
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_MAX_FINALIZATION_TIME", EnvironmentVariableType.LONG));  // seconds
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_LINKAGE_ADAPTER_SOCKET_PATH", EnvironmentVariableType.STRING, "/tmp/ai_engine.sock"));  // created by the AI Engine
+        return abstractClassVariables;
+    }
+
+    private static final Logger logger = LogManager.getLogger(UnixSocket.class);
+    private static final long INITIAL_CONNECTION_DELAY = 10;  // ms
+    private static final long MAX_CONNECTION_DELAY = 1000;  // ms
+
+    private final Path socketPath;
+
+    private SocketChannel channel;
+
+    public UnixSocket(Map<String, Object> config) {
+        super(config);
+        this.socketPath = Paths.get((String) config.getOrDefault("AI_ENGINE_LINKAGE_ADAPTER_SOCKET_PATH", "/tmp/ai_engine.sock"));
+    }
+
+    @Override
+    public void initialize() {
+        // the connection is opened once the AI Engine has created the socket, see waitAIEngineToBeReady
+    }
+
+    @Override
+    public void waitAIEngineToBeReady() throws AIEngineException {
+        logger.debug("Waiting for AI Engine to be ready");
+        long deadline = System.currentTimeMillis() + this.maxInitializationTime * 1000;
+        ExponentialBackoff backoff = new ExponentialBackoff(INITIAL_CONNECTION_DELAY, MAX_CONNECTION_DELAY);
+
+        while (this.channel == null) {
+            try {
+                SocketChannel socketChannel = SocketChannel.open(StandardProtocolFamily.UNIX);
+                try {
+                    socketChannel.connect(UnixDomainSocketAddress.of(this.socketPath));
+                } catch (IOException e) {
+                    socketChannel.close();
+                    throw e;
+                }
+                this.channel = socketChannel;
+            } catch (IOException e) {
+                // socket not created yet or AI Engine not listening
+                if (System.currentTimeMillis() > deadline) {
+                    throw new AIEngineException("Error while waiting for the AI Engine to be ready. It did not start before the timeout", null);
+                }
+                try {
+                    Thread.sleep(backoff.nextDelay());
+                } catch (InterruptedException ie) {
+                    throw new AIEngineException("Error while waiting for the AI Engine to be ready (during the thread sleep)", ie);
+                }
+            }
+        }
+
+        connect(this.channel, this.channel, RESPONSE_TIMEOUT);
+    }
+
+    @Override
+    public void clean() throws AIEngineException {
+        try {
+            if (this.channel != null) this.channel.close();
+            joinReader();
+        } catch (IOException | InterruptedException e) {
+            throw new AIEngineException("Error while closing the AI Engine connection", e);
+        }
+    }
+
+}
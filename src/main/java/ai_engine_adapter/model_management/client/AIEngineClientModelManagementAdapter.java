@@ -1,19 +1,33 @@
 package ai_engine_adapter.model_management.client;
 
 import exceptions.AIEngineException;
+import utils.Payload;
+
+import java.util.Map;
 
 public interface AIEngineClientModelManagementAdapter {
 
     void initialize() throws AIEngineException;
 
-    void saveMergedModel(byte[] bytes) throws AIEngineException;
+    void saveMergedModel(Payload model) throws AIEngineException;
+
+    // streaming alternative to saveMergedModel, the model is saved while it arrives. Null if the whole model is needed first
+    default MergedModelSink openMergedModelSink() throws AIEngineException {
+        return null;
+    }
 
-    byte[] loadUnMergedModel() throws AIEngineException;
+    Payload loadUnMergedModel() throws AIEngineException;
 
-    byte[] loadEvaluationMetrics() throws AIEngineException;
+    Payload loadEvaluationMetrics() throws AIEngineException;
 
     void cleanDirectories() throws AIEngineException;
 
+    // selects the directories used by the iteration, see getRunParameters
+    void prepareIteration(int iterationIndex) throws AIEngineException;
+
+    // parameters that tell the AI Engine which directories to use
+    Map<String, String> getRunParameters();
+
     void clean() throws AIEngineException;
 
 }
@@ -0,0 +1,16 @@
+package ai_engine_adapter.model_management.client;
+
+import exceptions.AIEngineException;
+
+// Merged model saved while it is being received, see AIEngineClientModelManagementAdapter.openMergedModelSink
+public interface MergedModelSink {
+
+    void write(byte[] bytes, int offset, int length) throws AIEngineException;
+
+    // waits until the model is saved, as saveMergedModel
+    void finish() throws AIEngineException;
+
+    // the model will not be completed
+    void abort();
+
+}
@@ -1,23 +1,33 @@
 package ai_engine_adapter.model_management.client.types;
 
 import ai_engine_adapter.model_management.client.AIEngineClientModelManagementAdapter;
+import ai_engine_adapter.model_management.client.MergedModelSink;
 import config.EnvironmentVariable;
 import config.EnvironmentVariableType;
 import exceptions.AIEngineException;
-import org.apache.commons.io.FileUtils;
+import utils.BackgroundDeleter;
+import utils.ContentAddressedStore;
+import utils.DirectoryWatcher;
+import utils.FileHandOff;
 import utils.FileMethods;
+import utils.ModelContainer;
+import utils.PackingFormat;
+import utils.Payload;
+import utils.SpillingPayload;
+import utils.StreamingUnpacker;
 import utils.ZipCompression;
+import utils.ZipPrePackager;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static utils.ZipCompression.zipFile;
 
@@ -28,52 +38,166 @@ public class Default implements AIEngineClientModelManagementAdapter {
         abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_MERGED_MODEL_PATH", EnvironmentVariableType.STRING, "/usr/application/input/model/"));
         abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_UNMERGED_MODEL_PATH", EnvironmentVariableType.STRING, "/usr/application/output/model/"));
         abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_EVALUATION_METRICS_PATH", EnvironmentVariableType.STRING, "/usr/application/output/evaluation_metrics.json"));
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_STORE_PATH", EnvironmentVariableType.STRING, ""));  // empty -> content-addressed store disabled
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_FILE_HAND_OFF", EnvironmentVariableType.STRING, "COPY"));  // COPY or LINK, how the store takes the model files
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_PACKING_FORMAT", EnvironmentVariableType.STRING, "ZIP"));  // ZIP or CONTAINER, used if the store is disabled
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_CLEANING_WORKERS", EnvironmentVariableType.INTEGER, 4));  // 0 -> directories cleaned synchronously
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_MIN_FREE_SPACE", EnvironmentVariableType.INTEGER, 1000));  // MB
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_DIRECTORY_SLOTS", EnvironmentVariableType.INTEGER, 1));  // > 1 -> iteration i uses the subdirectories slot_<i mod slots>
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_PRE_PACKAGING", EnvironmentVariableType.BOOLEAN, false));  // pack output files while the AI Engine is running, see DirectoryWatcher
         return abstractClassVariables;
     }
 
     private final String inputMergedModelPath;
     private final String outputUnmergedModelPath;
     private final String outputEvaluationMetricsPath;
+    private final String storePath;
+    private final String fileHandOff;
+    private final String packingFormatName;
+    private final BackgroundDeleter backgroundDeleter;
+    private final int directorySlots;
+    private int activeSlot = 0;
+    private PackingFormat packingFormat = PackingFormat.ZIP;
+    private final boolean prePackaging;
+    private ZipPrePackager zipPrePackager;  // pre-packaging without store
+    private DirectoryWatcher storeWatcher;  // pre-packaging with store
+
+    private ContentAddressedStore store;
+    private final Set<String> blobsKnownByServer = new HashSet<>();  // blobs of the last merged model, kept by both sides
 
     public Default(Map<String, Object> config) {
         this.inputMergedModelPath = (String) config.get("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_MERGED_MODEL_PATH");
         this.outputUnmergedModelPath = (String) config.get("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_UNMERGED_MODEL_PATH");
         this.outputEvaluationMetricsPath = (String) config.get("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_EVALUATION_METRICS_PATH");
+        this.storePath = (String) config.getOrDefault("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_STORE_PATH", "");
+        this.fileHandOff = (String) config.getOrDefault("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_FILE_HAND_OFF", "COPY");
+        this.packingFormatName = (String) config.getOrDefault("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_PACKING_FORMAT", "ZIP");
+        this.backgroundDeleter = new BackgroundDeleter(
+                (int) config.getOrDefault("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_CLEANING_WORKERS", 4),
+                (int) config.getOrDefault("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_MIN_FREE_SPACE", 1000) * 1000L * 1000L
+        );
+        this.directorySlots = Math.max(1, (int) config.getOrDefault("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_DIRECTORY_SLOTS", 1));
+        this.prePackaging = (boolean) config.getOrDefault("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_PRE_PACKAGING", false);
     }
 
     @Override
-    public void initialize() throws AIEngineException {}
+    public void initialize() throws AIEngineException {
+        try {
+            this.packingFormat = PackingFormat.parse(this.packingFormatName);
+        } catch (IllegalArgumentException e) {
+            throw new AIEngineException("Error while initializing the packing format", e);
+        }
+
+        if (this.storePath.isEmpty()) return;
+        try {
+            this.store = new ContentAddressedStore(Paths.get(this.storePath), FileHandOff.parseMode(this.fileHandOff));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new AIEngineException("Error while initializing the model store", e);
+        }
+    }
 
     @Override
-    public void saveMergedModel(byte[] bytes) throws AIEngineException {
+    public void saveMergedModel(Payload model) throws AIEngineException {
         try {
-            // write compressed file to disk
-            ZipCompression.unZipFile(new ByteArrayInputStream(bytes), Paths.get(this.inputMergedModelPath));  // automatically creates directory if it does not exist
+            this.backgroundDeleter.awaitFreeSpace(getSlotPath(this.inputMergedModelPath));
+            if (this.store != null) {
+                // store missing blobs and link the model files
+                keepOnlyBlobs(this.store.unpack(model.getInputStream(), getSlotPath(this.inputMergedModelPath)));
+            } else {
+                // write compressed file to disk
+                if (this.packingFormat == PackingFormat.CONTAINER) ModelContainer.unpack(model, getSlotPath(this.inputMergedModelPath));
+                else ZipCompression.unZipFile(model.getInputStream(), getSlotPath(this.inputMergedModelPath));  // automatically creates directory if it does not exist
+            }
         } catch (IOException| IllegalArgumentException e) {
             throw new AIEngineException("Error while saving merged model", e);
         }
     }
 
     @Override
-    public byte[] loadUnMergedModel() throws AIEngineException {
-        byte[] mergedModelBytes;
-        Path modelDirectory = Path.of(this.outputUnmergedModelPath);
+    public MergedModelSink openMergedModelSink() throws AIEngineException {
+        if (this.store == null && this.packingFormat == PackingFormat.CONTAINER) return null;  // the index is at the end of the container
 
+        StreamingUnpacker<Set<String>> unpacker;
         try {
-            // compress directory
-            try(ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-                zipFile(String.format("%s/*", modelDirectory), outputStream);
-                mergedModelBytes = outputStream.toByteArray();
+            Path directory = getSlotPath(this.inputMergedModelPath);
+            this.backgroundDeleter.awaitFreeSpace(directory);
+            unpacker = new StreamingUnpacker<>(inputStream -> {
+                if (this.store != null) return this.store.unpack(inputStream, directory);
+                ZipCompression.unZipFile(inputStream, directory);
+                return Set.of();
+            });
+        } catch (IOException | IllegalArgumentException e) {
+            throw new AIEngineException("Error while saving merged model", e);
+        }
+
+        return new MergedModelSink() {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws AIEngineException {
+                try {
+                    unpacker.write(bytes, offset, length);
+                } catch (IOException | IllegalArgumentException e) {
+                    throw new AIEngineException("Error while saving merged model", e);
+                }
+            }
+
+            @Override
+            public void finish() throws AIEngineException {
+                try {
+                    Set<String> hashes = unpacker.finish();
+                    if (store != null) keepOnlyBlobs(hashes);
+                } catch (IOException | IllegalArgumentException e) {
+                    throw new AIEngineException("Error while saving merged model", e);
+                }
             }
+
+            @Override
+            public void abort() {
+                unpacker.abort();
+            }
+        };
+    }
+
+    // the server only keeps the blobs of the last merged model (see the server Default), so the older ones are neither
+    // omitted from the uploads nor kept here
+    private void keepOnlyBlobs(Set<String> hashes) throws IOException {
+        this.blobsKnownByServer.clear();
+        this.blobsKnownByServer.addAll(hashes);
+        this.store.prune(hashes);
+    }
+
+    @Override
+    public Payload loadUnMergedModel() throws AIEngineException {
+        Path modelDirectory = getSlotPath(this.outputUnmergedModelPath);
+
+        if (this.zipPrePackager != null) {
+            try {
+                Payload prePackagedModel = this.zipPrePackager.finish();
+                if (prePackagedModel != null) return prePackagedModel;
+                // some file was modified after being packed, pack everything again
+            } catch (IOException e) {
+                throw new AIEngineException("Error while loading unmerged model", e);
+            } finally {
+                this.zipPrePackager = null;
+            }
+        }
+        stopPrePackaging();  // the files already ingested in the store are not hashed again
+
+        SpillingPayload unMergedModel = new SpillingPayload();
+        try {
+            // compress directory
+            if (this.store != null) this.store.pack(modelDirectory, this.blobsKnownByServer, unMergedModel.getOutputStream());
+            else if (this.packingFormat == PackingFormat.CONTAINER) ModelContainer.pack(modelDirectory, unMergedModel.getOutputStream());
+            else zipFile(String.format("%s/*", modelDirectory), unMergedModel.getOutputStream());
         } catch (IOException | IllegalArgumentException e) {
+            unMergedModel.close();
             throw new AIEngineException("Error while loading unmerged model", e);
         }
 
-        return mergedModelBytes;
+        return unMergedModel;
     }
 
     @Override
-    public byte[] loadEvaluationMetrics() throws AIEngineException {
+    public Payload loadEvaluationMetrics() throws AIEngineException {
         try {
             Path path = Paths.get(this.outputEvaluationMetricsPath);
             return FileMethods.readFile(path);
@@ -84,22 +208,85 @@ public class Default implements AIEngineClientModelManagementAdapter {
 
     @Override
     public void cleanDirectories() throws AIEngineException {
+        if (this.directorySlots > 1) return;  // each slot is cleaned when it is reused, see prepareIteration
         try {
             // delete merged model
             if (Files.exists(Paths.get(this.inputMergedModelPath))) {  // for the first iteration of training from scratch
-                FileUtils.cleanDirectory(new File(this.inputMergedModelPath));
+                this.backgroundDeleter.cleanDirectory(Paths.get(this.inputMergedModelPath));
             }
 
             // delete unmerged model
-            FileUtils.cleanDirectory(new File(this.outputUnmergedModelPath));
+            this.backgroundDeleter.cleanDirectory(Paths.get(this.outputUnmergedModelPath));
         } catch (IOException | IllegalArgumentException e) {
             throw new AIEngineException("Error while cleaning the AI Engine directories", e);
         }
     }
 
+    @Override
+    public void prepareIteration(int iterationIndex) throws AIEngineException {
+        if (this.directorySlots > 1) {
+            this.activeSlot = iterationIndex % this.directorySlots;
+            try {
+                // the slot may still hold the files of iteration iterationIndex - directorySlots
+                prepareSlotDirectory(getSlotPath(this.inputMergedModelPath));
+                prepareSlotDirectory(getSlotPath(this.outputUnmergedModelPath));
+            } catch (IOException | IllegalArgumentException e) {
+                throw new AIEngineException("Error while preparing the AI Engine directories", e);
+            }
+        }
+        if (this.prePackaging) startPrePackaging();
+    }
+
+    private void startPrePackaging() throws AIEngineException {
+        stopPrePackaging();
+        try {
+            Path modelDirectory = getSlotPath(this.outputUnmergedModelPath);
+            Files.createDirectories(modelDirectory);
+            if (this.store != null) this.storeWatcher = new DirectoryWatcher(modelDirectory, this.store::ingestFile);
+            else if (this.packingFormat == PackingFormat.ZIP) this.zipPrePackager = new ZipPrePackager(modelDirectory);
+            // the container format needs every file size beforehand, it is not pre-packaged
+        } catch (IOException e) {
+            throw new AIEngineException("Error while starting the pre-packaging of the unmerged model", e);
+        }
+    }
+
+    private void stopPrePackaging() {
+        if (this.zipPrePackager != null) {
+            this.zipPrePackager.close();
+            this.zipPrePackager = null;
+        }
+        if (this.storeWatcher != null) {
+            this.storeWatcher.stop();
+            this.storeWatcher = null;
+        }
+    }
+
+    @Override
+    public Map<String, String> getRunParameters() {
+        if (this.directorySlots == 1) return Map.of();
+        return Map.of("slot", String.valueOf(this.activeSlot));
+    }
+
     @Override
     public void clean() throws AIEngineException {
-        // empty
+        stopPrePackaging();
+        this.backgroundDeleter.awaitPendingDeletions();
+    }
+
+    private Path getSlotPath(String path) {
+        if (this.directorySlots == 1) return Paths.get(path);
+        return Paths.get(path, "slot_" + this.activeSlot);
+    }
+
+    private void prepareSlotDirectory(Path slotPath) throws IOException {
+        if (!Files.exists(slotPath)) {
+            Files.createDirectories(slotPath);
+            return;
+        }
+        try (Stream<Path> stream = Files.list(slotPath)) {
+            if (stream.findAny().isEmpty()) return;
+        }
+        this.backgroundDeleter.cleanDirectory(slotPath);
     }
 
 }
@@ -4,8 +4,11 @@ import ai_engine_adapter.model_management.client.AIEngineClientModelManagementAd
 import exceptions.AIEngineException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import utils.Payload;
+import utils.PooledPayload;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 
 public class Dummy implements AIEngineClientModelManagementAdapter {
 
@@ -17,20 +20,20 @@ public class Dummy implements AIEngineClientModelManagementAdapter {
     }
 
     @Override
-    public void saveMergedModel(byte[] bytes) throws AIEngineException {
+    public void saveMergedModel(Payload model) throws AIEngineException {
         logger.debug("saveMergedModel method called");
     }
 
     @Override
-    public byte[] loadUnMergedModel() throws AIEngineException {
+    public Payload loadUnMergedModel() throws AIEngineException {
         logger.debug("loadUnMergedModel method called");
-        return "empty".getBytes(StandardCharsets.UTF_8);
+        return PooledPayload.wrap("empty".getBytes(StandardCharsets.UTF_8));
     }
 
     @Override
-    public byte[] loadEvaluationMetrics() throws AIEngineException {
+    public Payload loadEvaluationMetrics() throws AIEngineException {
         logger.debug("loadEvaluationMetrics method called");
-        return "empty".getBytes(StandardCharsets.UTF_8);
+        return PooledPayload.wrap("empty".getBytes(StandardCharsets.UTF_8));
     }
 
     @Override
@@ -38,6 +41,16 @@ public class Dummy implements AIEngineClientModelManagementAdapter {
         logger.debug("cleanDirectories method called");
     }
 
+    @Override
+    public void prepareIteration(int iterationIndex) throws AIEngineException {
+        logger.debug("prepareIteration method called");
+    }
+
+    @Override
+    public Map<String, String> getRunParameters() {
+        return Map.of();
+    }
+
     @Override
     public void clean() throws AIEngineException {
         logger.debug("clean method called");
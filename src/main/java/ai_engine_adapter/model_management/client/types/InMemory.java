@@ -0,0 +1,89 @@
+package ai_engine_adapter.model_management.client.types;
+
+import ai_engine_adapter.linkage.ModelExchange;
+import ai_engine_adapter.model_management.client.AIEngineClientModelManagementAdapter;
+import exceptions.AIEngineException;
+import utils.Payload;
+import utils.SpillingPayload;
+
+import java.io.IOException;
+import java.util.Map;
+
+// Keeps the models in memory (spilled to a temporary file if large) and hands them to the AI Engine in the run requests,
+// see ModelExchange. The payloads are forwarded as they are: the model format is the one produced by the AI Engines
+public class InMemory implements AIEngineClientModelManagementAdapter, ModelExchange {
+
+    private Payload mergedModel = null;  // input of the next run
+    private Payload outputModel = null;  // output of the last run
+
+    @Override
+    public void initialize() throws AIEngineException {
+        // nothing to prepare
+    }
+
+    @Override
+    public synchronized void saveMergedModel(Payload model) throws AIEngineException {
+        try {
+            // the received payload is closed by the communication adapter
+            SpillingPayload copy = SpillingPayload.copyOf(model);
+            if (this.mergedModel != null) this.mergedModel.close();
+            this.mergedModel = copy;
+        } catch (IOException e) {
+            throw new AIEngineException("Error while saving merged model", e);
+        }
+    }
+
+    @Override
+    public Payload loadUnMergedModel() throws AIEngineException {
+        return takeOutputModel("Error while loading unmerged model");
+    }
+
+    @Override
+    public Payload loadEvaluationMetrics() throws AIEngineException {
+        return takeOutputModel("Error while loading evaluation metrics");
+    }
+
+    @Override
+    public synchronized void cleanDirectories() {
+        // the merged model has already been used by the run
+        if (this.mergedModel != null) this.mergedModel.close();
+        this.mergedModel = null;
+    }
+
+    @Override
+    public void prepareIteration(int iterationIndex) {
+        // no directories
+    }
+
+    @Override
+    public Map<String, String> getRunParameters() {
+        return Map.of();
+    }
+
+    @Override
+    public synchronized void clean() {
+        cleanDirectories();
+        if (this.outputModel != null) this.outputModel.close();
+        this.outputModel = null;
+    }
+
+    @Override
+    public synchronized Map<String, Payload> getInputModels() {
+        if (this.mergedModel == null) return Map.of();
+        return Map.of("model", this.mergedModel);
+    }
+
+    @Override
+    public synchronized void setOutputModel(Payload model) {
+        if (this.outputModel != null) this.outputModel.close();
+        this.outputModel = model;
+    }
+
+    private synchronized Payload takeOutputModel(String errorMessage) throws AIEngineException {
+        if (this.outputModel == null) throw new AIEngineException(errorMessage + ". The AI Engine did not return any output", null);
+        Payload model = this.outputModel;
+        this.outputModel = null;
+        return model;
+    }
+
+}
@@ -1,21 +1,34 @@
 package ai_engine_adapter.model_management.server;
 
 import exceptions.AIEngineException;
+import utils.Payload;
+
+import java.util.Map;
 
 public interface AIEngineServerModelManagementAdapter {
 
     void initialize() throws AIEngineException;
 
-    void saveUnMergedModel(String clientId, byte[] bytes) throws AIEngineException;
+    void saveUnMergedModel(String clientId, Payload model) throws AIEngineException;
 
-    void saveEvaluationMetrics(String clientId, byte[] bytes) throws AIEngineException;
+    void saveEvaluationMetrics(String clientId, Payload evaluationMetrics) throws AIEngineException;
 
-    byte[] loadMergedModel() throws AIEngineException;
+    Payload loadMergedModel() throws AIEngineException;
 
     void cleanUnMergedModels() throws AIEngineException;
 
     void cleanMergedModel() throws AIEngineException;
 
+    // the client lost its files (e.g. it was restarted), so the next merged model is sent to it complete
+    default void forgetClient(String clientId) throws AIEngineException {
+    }
+
+    // selects the directories used by the iteration, see getRunParameters
+    void prepareIteration(int iterationIndex) throws AIEngineException;
+
+    // parameters that tell the AI Engine which directories to use
+    Map<String, String> getRunParameters();
+
     void clean() throws AIEngineException;
 
 }
@@ -4,20 +4,22 @@ import ai_engine_adapter.model_management.server.AIEngineServerModelManagementAd
 import config.EnvironmentVariable;
 import config.EnvironmentVariableType;
 import exceptions.AIEngineException;
-import org.apache.commons.io.FileUtils;
+import utils.BackgroundDeleter;
+import utils.ContentAddressedStore;
+import utils.FileHandOff;
 import utils.FileMethods;
+import utils.ModelContainer;
+import utils.PackingFormat;
+import utils.Payload;
+import utils.SpillingPayload;
 import utils.ZipCompression;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.stream.Stream;
 
 import static utils.ZipCompression.zipFile;
 
@@ -28,39 +30,86 @@ public class Default implements AIEngineServerModelManagementAdapter {
         abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_UNMERGED_MODELS_DIRECTORY_PATH", EnvironmentVariableType.STRING, "/usr/application/output/model/"));
         abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_MERGED_MODEL_PATH", EnvironmentVariableType.STRING, "/usr/application/input/models/"));
         abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_EVALUATION_METRICS_DIRECTORY_PATH", EnvironmentVariableType.STRING, "/usr/application/output/evaluation_metrics/"));
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_STORE_PATH", EnvironmentVariableType.STRING, ""));  // empty -> content-addressed store disabled
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_FILE_HAND_OFF", EnvironmentVariableType.STRING, "COPY"));  // COPY or LINK, how the store takes the model files
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_PACKING_FORMAT", EnvironmentVariableType.STRING, "ZIP"));  // ZIP or CONTAINER, used if the store is disabled
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_CLEANING_WORKERS", EnvironmentVariableType.INTEGER, 4));  // 0 -> directories cleaned synchronously
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_MIN_FREE_SPACE", EnvironmentVariableType.INTEGER, 1000));  // MB
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_DIRECTORY_SLOTS", EnvironmentVariableType.INTEGER, 1));  // > 1 -> iteration i uses the subdirectories slot_<i mod slots>
         return abstractClassVariables;
     }
 
     private final String inputUnMergedModelsDirectoryPath;
     private final String outputMergedModelPath;
     private final String outputEvaluationMetricsDirectoryPath;
+    private final String storePath;
+    private final String fileHandOff;
+    private final String packingFormatName;
+    private final BackgroundDeleter backgroundDeleter;
+    private final int directorySlots;
+    private int activeSlot = 0;
+    private PackingFormat packingFormat = PackingFormat.ZIP;
+
+    private ContentAddressedStore store;
+    private final Map<String, Set<String>> blobsKnownByClient = new HashMap<>();  // blobs that every client has: last merged model and its upload
+    private Set<String> lastMergedModelBlobs = null;  // the only blobs kept between iterations
 
     public Default(Map<String, Object> config) {
         this.inputUnMergedModelsDirectoryPath = (String) config.get("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_UNMERGED_MODELS_DIRECTORY_PATH");
         this.outputMergedModelPath = (String) config.get("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_MERGED_MODEL_PATH");
         this.outputEvaluationMetricsDirectoryPath = (String) config.get("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_EVALUATION_METRICS_DIRECTORY_PATH");
+        this.storePath = (String) config.getOrDefault("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_STORE_PATH", "");
+        this.fileHandOff = (String) config.getOrDefault("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_FILE_HAND_OFF", "COPY");
+        this.packingFormatName = (String) config.getOrDefault("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_PACKING_FORMAT", "ZIP");
+        this.backgroundDeleter = new BackgroundDeleter(
+                (int) config.getOrDefault("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_CLEANING_WORKERS", 4),
+                (int) config.getOrDefault("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_MIN_FREE_SPACE", 1000) * 1000L * 1000L
+        );
+        this.directorySlots = Math.max(1, (int) config.getOrDefault("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_DIRECTORY_SLOTS", 1));
     }
 
     @Override
-    public void initialize() throws AIEngineException {}
+    public void initialize() throws AIEngineException {
+        try {
+            this.packingFormat = PackingFormat.parse(this.packingFormatName);
+        } catch (IllegalArgumentException e) {
+            throw new AIEngineException("Error while initializing the packing format", e);
+        }
+
+        if (this.storePath.isEmpty()) return;
+        try {
+            this.store = new ContentAddressedStore(Paths.get(this.storePath), FileHandOff.parseMode(this.fileHandOff));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new AIEngineException("Error while initializing the model store", e);
+        }
+    }
 
     @Override
-    public void saveUnMergedModel(String clientId, byte[] bytes) throws AIEngineException {
+    public void saveUnMergedModel(String clientId, Payload model) throws AIEngineException {
         try {
-            if (!Files.exists(Paths.get(this.inputUnMergedModelsDirectoryPath))) {
-                Files.createDirectory(Paths.get(this.inputUnMergedModelsDirectoryPath));
+            Path inputUnMergedModelsDirectory = getSlotPath(this.inputUnMergedModelsDirectoryPath);
+            if (!Files.exists(inputUnMergedModelsDirectory)) {
+                Files.createDirectories(inputUnMergedModelsDirectory);
             }
+            this.backgroundDeleter.awaitFreeSpace(inputUnMergedModelsDirectory);
 
             // write compressed file to disk
-            Path outputModel = Paths.get(this.inputUnMergedModelsDirectoryPath + "/model_" + clientId);
-            ZipCompression.unZipFile(new ByteArrayInputStream(bytes), outputModel);
+            Path outputModel = inputUnMergedModelsDirectory.resolve("model_" + clientId);
+            if (this.store != null) {
+                // store missing blobs and link the model files
+                Set<String> hashes = this.store.unpack(model.getInputStream(), outputModel);
+                this.blobsKnownByClient.computeIfAbsent(clientId, k -> new HashSet<>()).addAll(hashes);
+            } else {
+                if (this.packingFormat == PackingFormat.CONTAINER) ModelContainer.unpack(model, outputModel);
+                else ZipCompression.unZipFile(model.getInputStream(), outputModel);
+            }
         } catch (IOException| IllegalArgumentException e) {
             throw new AIEngineException(String.format("Error while saving unmerged model from client %s", clientId), e);
         }
     }
 
     @Override
-    public void saveEvaluationMetrics(String clientId, byte[] bytes) throws AIEngineException {
+    public void saveEvaluationMetrics(String clientId, Payload evaluationMetrics) throws AIEngineException {
         try {
             if (!Files.exists(Paths.get(this.outputEvaluationMetricsDirectoryPath))) {
                 Files.createDirectory(Paths.get(this.outputEvaluationMetricsDirectoryPath));
@@ -68,35 +117,50 @@ public class Default implements AIEngineServerModelManagementAdapter {
 
             // write compressed file to disk
             Path outputEvaluationMetrics = Paths.get(String.format("%s/%s.json", this.outputEvaluationMetricsDirectoryPath, clientId));
-            FileMethods.saveFile(bytes, outputEvaluationMetrics);
+            FileMethods.saveFile(evaluationMetrics, outputEvaluationMetrics);
         } catch (IOException| IllegalArgumentException e) {
             throw new AIEngineException(String.format("Error while saving unmerged model from client %s", clientId), e);
         }
     }
 
     @Override
-    public byte[] loadMergedModel() throws AIEngineException {
-        byte[] mergedModelBytes;
-        Path modelDirectory = Path.of(this.outputMergedModelPath);
+    public Payload loadMergedModel() throws AIEngineException {
+        SpillingPayload mergedModel = new SpillingPayload();
+        Path modelDirectory = getSlotPath(this.outputMergedModelPath);
 
         try {
             // compress directory
-            try(ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-                zipFile(String.format("%s/*", modelDirectory), outputStream);
-                mergedModelBytes = outputStream.toByteArray();
+            if (this.store != null) {
+                // the same message is broadcast, so only the blobs that every client has can be omitted
+                Set<String> hashes = this.store.pack(modelDirectory, getBlobsKnownByAllClients(), mergedModel.getOutputStream());
+                // the clients keep only the blobs of the merged model once they receive it
+                for (String clientId : this.blobsKnownByClient.keySet()) this.blobsKnownByClient.put(clientId, new HashSet<>(hashes));
+                this.lastMergedModelBlobs = hashes;
+            } else {
+                if (this.packingFormat == PackingFormat.CONTAINER) ModelContainer.pack(modelDirectory, mergedModel.getOutputStream());
+                else zipFile(String.format("%s/*", modelDirectory), mergedModel.getOutputStream());
             }
         } catch (IOException| IllegalArgumentException e) {
+            mergedModel.close();
             throw new AIEngineException("Error while loading merged model", e);
         }
 
-        return mergedModelBytes;
+        return mergedModel;
     }
 
     @Override
     public void cleanUnMergedModels() throws AIEngineException {
+        try {
+            // the unmerged models have been merged, the clients only omit the blobs of the merged model in their uploads
+            if (this.store != null && this.lastMergedModelBlobs != null) this.store.prune(this.lastMergedModelBlobs);
+        } catch (IOException e) {
+            throw new AIEngineException("Error while pruning the model store", e);
+        }
+
+        if (this.directorySlots > 1) return;  // each slot is cleaned when it is reused, see prepareIteration
         try {
             // delete unmerged models directories
-            FileUtils.cleanDirectory(new File(this.inputUnMergedModelsDirectoryPath));
+            this.backgroundDeleter.cleanDirectory(Paths.get(this.inputUnMergedModelsDirectoryPath));
         } catch (IOException| IllegalArgumentException e) {
             throw new AIEngineException("Error while cleaning the AI Engine directories", e);
         }
@@ -104,17 +168,68 @@ public class Default implements AIEngineServerModelManagementAdapter {
 
     @Override
     public void cleanMergedModel() throws AIEngineException {
+        if (this.directorySlots > 1) return;  // each slot is cleaned when it is reused, see prepareIteration
         try {
             // delete merged model
-            FileUtils.cleanDirectory(new File(this.outputMergedModelPath));
+            this.backgroundDeleter.cleanDirectory(Paths.get(this.outputMergedModelPath));
         } catch (IOException| IllegalArgumentException e) {
             throw new AIEngineException("Error while cleaning the AI Engine directories", e);
         }
     }
 
+    @Override
+    public void prepareIteration(int iterationIndex) throws AIEngineException {
+        if (this.directorySlots == 1) return;
+        this.activeSlot = iterationIndex % this.directorySlots;
+        try {
+            // the slot may still hold the files of iteration iterationIndex - directorySlots
+            prepareSlotDirectory(getSlotPath(this.inputUnMergedModelsDirectoryPath));
+            prepareSlotDirectory(getSlotPath(this.outputMergedModelPath));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new AIEngineException("Error while preparing the AI Engine directories", e);
+        }
+    }
+
+    @Override
+    public Map<String, String> getRunParameters() {
+        if (this.directorySlots == 1) return Map.of();
+        return Map.of("slot", String.valueOf(this.activeSlot));
+    }
+
     @Override
     public void clean() throws AIEngineException {
-        // empty
+        this.backgroundDeleter.awaitPendingDeletions();
+    }
+
+    @Override
+    public void forgetClient(String clientId) {
+        // kept empty instead of removed, so that the blobs it needs are not omitted because of the other clients
+        this.blobsKnownByClient.put(clientId, new HashSet<>());
+    }
+
+    private Set<String> getBlobsKnownByAllClients() {
+        Set<String> knownBlobs = null;
+        for (Set<String> clientKnownBlobs : this.blobsKnownByClient.values()) {
+            if (knownBlobs == null) knownBlobs = new HashSet<>(clientKnownBlobs);
+            else knownBlobs.retainAll(clientKnownBlobs);
+        }
+        return knownBlobs == null ? new HashSet<>() : knownBlobs;
+    }
+
+    private Path getSlotPath(String path) {
+        if (this.directorySlots == 1) return Paths.get(path);
+        return Paths.get(path, "slot_" + this.activeSlot);
+    }
+
+    private void prepareSlotDirectory(Path slotPath) throws IOException {
+        if (!Files.exists(slotPath)) {
+            Files.createDirectories(slotPath);
+            return;
+        }
+        try (Stream<Path> stream = Files.list(slotPath)) {
+            if (stream.findAny().isEmpty()) return;
+        }
+        this.backgroundDeleter.cleanDirectory(slotPath);
     }
 
 }
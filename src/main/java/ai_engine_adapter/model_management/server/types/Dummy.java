@@ -4,8 +4,11 @@ import ai_engine_adapter.model_management.server.AIEngineServerModelManagementAd
 import exceptions.AIEngineException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import utils.Payload;
+import utils.PooledPayload;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 
 public class Dummy implements AIEngineServerModelManagementAdapter {
 
@@ -17,19 +20,19 @@ public class Dummy implements AIEngineServerModelManagementAdapter {
     }
 
     @Override
-    public void saveUnMergedModel(String clientId, byte[] bytes) throws AIEngineException {
+    public void saveUnMergedModel(String clientId, Payload model) throws AIEngineException {
         logger.debug("saveUnMergedModel method called");
     }
 
     @Override
-    public void saveEvaluationMetrics(String clientId, byte[] bytes) throws AIEngineException {
+    public void saveEvaluationMetrics(String clientId, Payload evaluationMetrics) throws AIEngineException {
         logger.debug("saveEvaluationMetrics method called");
     }
 
     @Override
-    public byte[] loadMergedModel() throws AIEngineException {
+    public Payload loadMergedModel() throws AIEngineException {
         logger.debug("loadMergedModel method called");
-        return "empty".getBytes(StandardCharsets.UTF_8);
+        return PooledPayload.wrap("empty".getBytes(StandardCharsets.UTF_8));
     }
 
     @Override
@@ -42,6 +45,16 @@ public class Dummy implements AIEngineServerModelManagementAdapter {
         logger.debug("cleanMergedModel method called");
     }
 
+    @Override
+    public void prepareIteration(int iterationIndex) throws AIEngineException {
+        logger.debug("prepareIteration method called");
+    }
+
+    @Override
+    public Map<String, String> getRunParameters() {
+        return Map.of();
+    }
+
     @Override
     public void clean() throws AIEngineException {
         logger.debug("clean method called");
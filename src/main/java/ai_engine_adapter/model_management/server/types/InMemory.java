@@ -0,0 +1,114 @@
+package ai_engine_adapter.model_management.server.types;
+
+import ai_engine_adapter.linkage.ModelExchange;
+import ai_engine_adapter.model_management.server.AIEngineServerModelManagementAdapter;
+import config.EnvironmentVariable;
+import config.EnvironmentVariableType;
+import exceptions.AIEngineException;
+import utils.FileMethods;
+import utils.Payload;
+import utils.SpillingPayload;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+// Keeps the unmerged models in memory (spilled to temporary files if large) and hands them to the AI Engine in the run
+// request, see ModelExchange. The evaluation metrics are the final output, so they are still written to disk
+public class InMemory implements AIEngineServerModelManagementAdapter, ModelExchange {
+
+    public static List<EnvironmentVariable> getEnvironmentVariables() {
+        List<EnvironmentVariable> abstractClassVariables = new ArrayList<>();
+        abstractClassVariables.add(new EnvironmentVariable("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_EVALUATION_METRICS_DIRECTORY_PATH", EnvironmentVariableType.STRING, "/usr/application/output/evaluation_metrics/"));
+        return abstractClassVariables;
+    }
+
+    private final String outputEvaluationMetricsDirectoryPath;
+
+    private final Map<String, Payload> unMergedModels = new TreeMap<>();  // model_<client id> -> model, input of the next run
+    private Payload mergedModel = null;  // output of the last run
+
+    public InMemory(Map<String, Object> config) {
+        this.outputEvaluationMetricsDirectoryPath = (String) config.getOrDefault("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_EVALUATION_METRICS_DIRECTORY_PATH", "/usr/application/output/evaluation_metrics/");
+    }
+
+    @Override
+    public void initialize() throws AIEngineException {
+        // nothing to prepare
+    }
+
+    @Override
+    public synchronized void saveUnMergedModel(String clientId, Payload model) throws AIEngineException {
+        try {
+            // the received payload is closed by the communication adapter
+            SpillingPayload copy = SpillingPayload.copyOf(model);
+            Payload previousModel = this.unMergedModels.put("model_" + clientId, copy);
+            if (previousModel != null) previousModel.close();
+        } catch (IOException e) {
+            throw new AIEngineException(String.format("Error while saving unmerged model from client %s", clientId), e);
+        }
+    }
+
+    @Override
+    public void saveEvaluationMetrics(String clientId, Payload evaluationMetrics) throws AIEngineException {
+        try {
+            Path outputEvaluationMetricsDirectory = Paths.get(this.outputEvaluationMetricsDirectoryPath);
+            if (!Files.exists(outputEvaluationMetricsDirectory)) {
+                Files.createDirectories(outputEvaluationMetricsDirectory);
+            }
+            FileMethods.saveFile(evaluationMetrics, outputEvaluationMetricsDirectory.resolve(clientId + ".json"));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new AIEngineException(String.format("Error while saving evaluation metrics from client %s", clientId), e);
+        }
+    }
+
+    @Override
+    public synchronized Payload loadMergedModel() throws AIEngineException {
+        if (this.mergedModel == null) throw new AIEngineException("Error while loading merged model. The AI Engine did not return any output", null);
+        Payload model = this.mergedModel;
+        this.mergedModel = null;
+        return model;
+    }
+
+    @Override
+    public synchronized void cleanUnMergedModels() {
+        for (Payload model : this.unMergedModels.values()) model.close();
+        this.unMergedModels.clear();
+    }
+
+    @Override
+    public synchronized void cleanMergedModel() {
+        if (this.mergedModel != null) this.mergedModel.close();
+        this.mergedModel = null;
+    }
+
+    @Override
+    public void prepareIteration(int iterationIndex) {
+        // no directories
+    }
+
+    @Override
+    public Map<String, String> getRunParameters() {
+        return Map.of();
+    }
+
+    @Override
+    public void clean() {
+        cleanUnMergedModels();
+        cleanMergedModel();
+    }
+
+    @Override
+    public synchronized Map<String, Payload> getInputModels() {
+        return new TreeMap<>(this.unMergedModels);
+    }
+
+    @Override
+    public synchronized void setOutputModel(Payload model) {
+        if (this.mergedModel != null) this.mergedModel.close();
+        this.mergedModel = model;
+    }
+
+}
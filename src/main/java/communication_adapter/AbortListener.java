@@ -0,0 +1,9 @@
+package communication_adapter;
+
+// Receives the abort message of another participant of the execution, see CommunicationAdapter.startAbortWatcher
+public interface AbortListener {
+
+    // participant -> e.g. "the manager" or "the client with id ..."
+    void onAbort(String participant, String reason);
+
+}
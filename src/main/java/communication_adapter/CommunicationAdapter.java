@@ -4,5 +4,17 @@ import exceptions.CommunicationException;
 
 public interface CommunicationAdapter {
 
+    // tells the other participants that the execution failed, so that they stop instead of waiting for this one
+    default void sendAbortMessage(String reason) throws CommunicationException {
+    }
+
+    // after the initialization messages, the abort messages of the other participants are received in the background
+    default void startAbortWatcher(AbortListener abortListener) throws CommunicationException {
+    }
+
+    // called from another thread when the execution is aborted: the wait for messages in progress, or the next one, fails
+    default void wakeup() {
+    }
+
     void cleanEnvironment() throws CommunicationException;
 }
@@ -5,6 +5,8 @@ import communication_adapter.CommunicationAdapter;
 import config.EnvironmentVariable;
 import exceptions.AIEngineException;
 import exceptions.CommunicationException;
+import org.json.JSONObject;
+import utils.Payload;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -21,8 +23,19 @@ public interface ClientCommunicationAdapter extends CommunicationAdapter {
 
     void waitForManagerInitializationMessage() throws CommunicationException;
 
-    void sendEndedIterationMessage(int iterationIndex, byte[] model) throws CommunicationException;
+    // a restarted client joins the ongoing execution instead of exchanging the initialization messages. It receives
+    // the current merged model with the next start iteration message
+    default void sendJoinMessage() throws CommunicationException {
+        throw new CommunicationException("Joining an ongoing execution is not supported", null);
+    }
+
+    void sendEndedIterationMessage(int iterationIndex, Payload model) throws CommunicationException;
+
+    // progress of the AI Engine during the iteration, informative only
+    default void sendProgressMessage(int iterationIndex, JSONObject progress) throws CommunicationException {
+    }
 
-    void waitForStartIterationMessage(int iterationIndex, AIEngineClientModelManagementAdapter aiEngineClientModelManagementAdapter) throws CommunicationException, AIEngineException;
+    // saves the merged model
+    IterationStart waitForStartIterationMessage(int iterationIndex, AIEngineClientModelManagementAdapter aiEngineClientModelManagementAdapter) throws CommunicationException, AIEngineException;
 
 }
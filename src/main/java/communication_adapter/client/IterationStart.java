@@ -0,0 +1,7 @@
+package communication_adapter.client;
+
+// Start iteration message of the manager. iterationIndex -> iteration that starts with the received model. selected ->
+// this client trains in the iteration. lastIteration -> the clients evaluate the model instead, even if fewer
+// iterations than expected were done
+public record IterationStart(int iterationIndex, boolean selected, boolean lastIteration) {
+}
@@ -2,10 +2,12 @@ package communication_adapter.client.types;
 
 import ai_engine_adapter.model_management.client.AIEngineClientModelManagementAdapter;
 import communication_adapter.client.ClientCommunicationAdapter;
+import communication_adapter.client.IterationStart;
 import exceptions.AIEngineException;
 import exceptions.CommunicationException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import utils.Payload;
 
 public class Dummy implements ClientCommunicationAdapter {
 
@@ -27,13 +29,19 @@ public class Dummy implements ClientCommunicationAdapter {
     }
 
     @Override
-    public void sendEndedIterationMessage(int iterationIndex, byte[] model) throws CommunicationException {
+    public void sendJoinMessage() throws CommunicationException {
+        logger.debug("sendJoinMessage method called");
+    }
+
+    @Override
+    public void sendEndedIterationMessage(int iterationIndex, Payload model) throws CommunicationException {
         logger.debug("sendEndedIterationMessage method called");
     }
 
     @Override
-    public void waitForStartIterationMessage(int iterationIndex, AIEngineClientModelManagementAdapter aiEngineClientModelManagementAdapter) throws CommunicationException, AIEngineException {
+    public IterationStart waitForStartIterationMessage(int iterationIndex, AIEngineClientModelManagementAdapter aiEngineClientModelManagementAdapter) throws CommunicationException, AIEngineException {
         logger.debug("waitForStartIterationMessage method called");
+        return new IterationStart(iterationIndex, true, false);
     }
 
     @Override
@@ -1,7 +1,12 @@
 package communication_adapter.client.types;
 
 import ai_engine_adapter.model_management.client.AIEngineClientModelManagementAdapter;
+import ai_engine_adapter.model_management.client.MergedModelSink;
+import communication_adapter.AbortListener;
 import communication_adapter.client.ClientCommunicationAdapter;
+import communication_adapter.client.IterationStart;
+import communication_adapter.kafka.AbortWatcher;
+import communication_adapter.kafka.PayloadChunks;
 import config.EnvironmentVariable;
 import config.EnvironmentVariableType;
 import exceptions.AIEngineException;
@@ -11,28 +16,36 @@ import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import utils.ConcurrentTasks;
+import utils.Payload;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Properties;
+import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class KafkaClientCommunication implements ClientCommunicationAdapter {
 
     private static final Logger logger = LogManager.getLogger(KafkaClientCommunication.class);
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(5);  // pending records are dropped after it
     public static List<EnvironmentVariable> getEnvironmentVariables() {
         List<EnvironmentVariable> abstractClassVariables = ClientCommunicationAdapter.getEnvironmentVariables();
         abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_BOOTSTRAP_SERVERS_CONFIG", EnvironmentVariableType.STRING));
@@ -41,10 +54,13 @@ public class KafkaClientCommunication implements ClientCommunicationAdapter {
         abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_START_ITERATION_MESSAGE_TIME_OUT", EnvironmentVariableType.LONG));  // seconds
         abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_MAX_ITERATION_TIME", EnvironmentVariableType.LONG));  // seconds
         abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_MAX_MODEL_SIZE", EnvironmentVariableType.INTEGER));  // KB
+        abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_CHUNK_SIZE", EnvironmentVariableType.INTEGER, 512));  // KB
+        abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_PROGRESS_INTERVAL", EnvironmentVariableType.LONG, 5L));  // seconds, minimum time between progress messages
         return abstractClassVariables;
     }
 
     private final String messageSeparator = "///MESSAGE_SEP///";
+    private static final List<String> PROGRESS_FIELDS = List.of("epoch", "total_epochs", "step", "total_steps", "eta");  // eta in seconds
 
     private final String executionId;
     private final String dataPartner;
@@ -54,11 +70,17 @@ public class KafkaClientCommunication implements ClientCommunicationAdapter {
     private final long startIterationMessageTimeOut;
     private final long maxIterationTime;
     private final long maxModelSize;
+    private final int maxRecordSize;
+    private final int chunkSize;
+    private final long progressInterval;
+    private long lastProgressTime = 0;
+    private boolean joining = false;  // only the start iteration message that admits this client is received
 
     private Consumer<String, String> statusConsumer;
     private Consumer<String, byte[]> modelsToClientsConsumer;
     private Producer<String, byte[]> modelsToManagerProducer;
     private Producer<String, String> statusProducer;
+    private AbortWatcher abortWatcher;
 
     public KafkaClientCommunication(Map<String, Object> config, String executionId, String dataPartner) {
         this.executionId = executionId;
@@ -69,17 +91,29 @@ public class KafkaClientCommunication implements ClientCommunicationAdapter {
         this.initializationMessageTimeOut = (long) config.get("COMMUNICATION_ADAPTER_INITIALIZATION_MESSAGE_TIME_OUT") * 1000;
         this.startIterationMessageTimeOut = (long) config.get("COMMUNICATION_ADAPTER_START_ITERATION_MESSAGE_TIME_OUT") * 1000;
         this.maxIterationTime = (long) config.get("COMMUNICATION_ADAPTER_MAX_ITERATION_TIME") * 1000;
-        this.maxModelSize = (int) config.get("COMMUNICATION_ADAPTER_MAX_MODEL_SIZE") * 1000;
+        this.maxModelSize = (int) config.get("COMMUNICATION_ADAPTER_MAX_MODEL_SIZE") * 1000L;
+        this.maxRecordSize = (int) Math.min(this.maxModelSize, Integer.MAX_VALUE);  // bigger models are always chunked
+        this.chunkSize = (int) Math.min((int) config.get("COMMUNICATION_ADAPTER_CHUNK_SIZE") * 1000L, this.maxRecordSize);
+        this.progressInterval = (long) config.getOrDefault("COMMUNICATION_ADAPTER_PROGRESS_INTERVAL", 5L) * 1000;
     }
 
     @Override
     public void initialize() throws CommunicationException {
-        createProducers();
-        createConsumers();
+        // each client connects and fetches its metadata on its own
+        try {
+            ConcurrentTasks.<CommunicationException>runAll("kafka-initialization", List.of(
+                    this::createProducers,
+                    this::createStatusConsumer,
+                    this::createModelsToClientsConsumer
+            ));
+        } catch (InterruptedException e) {
+            throw new CommunicationException("Interrupted while initializing", e);
+        }
     }
 
     @Override
     public void sendClientInitializationMessage(boolean success) throws CommunicationException {
+        if (this.statusProducer == null) throw new CommunicationException("Error while sending client initialization message. The status producer was not created", null);
         try {
             final ProducerRecord<String, String> record = new ProducerRecord<>(
                     "status",
@@ -89,11 +123,10 @@ public class KafkaClientCommunication implements ClientCommunicationAdapter {
             record.headers().add("message_name", "client_initialization".getBytes(StandardCharsets.UTF_8));
             this.statusProducer.send(record).get();
             logger.debug("Client initialization message sent");
-        } catch (InterruptedException | ExecutionException e) {
+        } catch (InterruptedException | ExecutionException | KafkaException e) {
             throw new CommunicationException("Error while sending client initialization message", e);
         }
-
-        this.statusProducer.close();
+        // the status producer is kept for the abort message
     }
 
     @Override
@@ -111,7 +144,9 @@ public class KafkaClientCommunication implements ClientCommunicationAdapter {
                     boolean fromManager = !record.key().contains(messageSeparator);
                     if (fromManager) {
                         boolean fromThisExecution = this.executionId.equals(record.key());
-                        if (fromThisExecution) {
+                        if (fromThisExecution && AbortWatcher.isAbortMessage(record)) {
+                            throw new CommunicationException("Execution aborted by the manager: " + record.value(), null);
+                        } else if (fromThisExecution) {
                             boolean success = Boolean.parseBoolean(record.value());
                             if (success) {
                                 logger.debug("Manager initialization message received");
@@ -135,65 +170,229 @@ public class KafkaClientCommunication implements ClientCommunicationAdapter {
         } catch (CommitFailedException e) {
             throw new CommunicationException("Error while committing", e);
         }
-
-        this.statusConsumer.close();
-
+        // the status consumer is kept for the abort watcher
     }
 
     @Override
-    public void sendEndedIterationMessage(int iterationIndex, byte[] model) throws CommunicationException {
+    public void sendJoinMessage() throws CommunicationException {
         try {
-            final ProducerRecord<String, byte[]> record = new ProducerRecord<>(
-                    this.executionId + "_models_to_manager",
+            // the messages sent before the restart of this client are skipped. The seek is lazy, so the positions are
+            // fetched before the manager can answer
+            this.modelsToClientsConsumer.seekToEnd(this.modelsToClientsConsumer.assignment());
+            for (TopicPartition partition : this.modelsToClientsConsumer.assignment()) this.modelsToClientsConsumer.position(partition);
+            this.statusConsumer.seekToEnd(this.statusConsumer.assignment());
+            for (TopicPartition partition : this.statusConsumer.assignment()) this.statusConsumer.position(partition);
+            this.joining = true;
+
+            final ProducerRecord<String, String> record = new ProducerRecord<>(
+                    "status",
                     this.executionId + messageSeparator + this.dataPartner,  // key
-                    model  // value
+                    "true"  // value
             );
-            record.headers().add("message_name", "ended_iteration".getBytes(StandardCharsets.UTF_8));
-            record.headers().add("iteration_index", String.valueOf(iterationIndex).getBytes(StandardCharsets.UTF_8));
-            this.modelsToManagerProducer.send(record).get();
+            record.headers().add("message_name", "client_join".getBytes(StandardCharsets.UTF_8));
+            this.statusProducer.send(record).get();
+            logger.debug("Join message sent");
+        } catch (InterruptedException | ExecutionException | KafkaException e) {
+            throw new CommunicationException("Error while sending join message", e);
+        }
+    }
+
+    @Override
+    public void sendEndedIterationMessage(int iterationIndex, Payload model) throws CommunicationException {
+        try {
+            if (model == null) {
+                // failure message
+                final ProducerRecord<String, byte[]> record = new ProducerRecord<>(
+                        this.executionId + "_models_to_manager",
+                        this.executionId + messageSeparator + this.dataPartner,  // key
+                        null  // value
+                );
+                record.headers().add("message_name", "ended_iteration".getBytes(StandardCharsets.UTF_8));
+                record.headers().add("iteration_index", String.valueOf(iterationIndex).getBytes(StandardCharsets.UTF_8));
+                this.modelsToManagerProducer.send(record).get();
+            } else {
+                if (model.size() > this.maxModelSize) {
+                    throw new CommunicationException(String.format("The model size (%d bytes) exceeds the maximum model size (%d bytes)", model.size(), this.maxModelSize), null);
+                }
+                Map<String, String> headers = new LinkedHashMap<>();
+                headers.put("message_name", "ended_iteration");
+                headers.put("iteration_index", String.valueOf(iterationIndex));
+                PayloadChunks.send(
+                        this.modelsToManagerProducer,
+                        this.executionId + "_models_to_manager",
+                        this.executionId + messageSeparator + this.dataPartner,  // key
+                        model,  // value
+                        this.chunkSize,
+                        headers
+                );
+            }
             logger.debug("Ended iteration message sent");
-        } catch (InterruptedException | ExecutionException e) {
+        } catch (InterruptedException | ExecutionException | IOException e) {
             throw new CommunicationException("Error while sending iteration ended message", e);
         }
     }
 
     @Override
-    public void waitForStartIterationMessage(int iterationIndex, AIEngineClientModelManagementAdapter aiEngineClientModelManagementAdapter) throws CommunicationException, AIEngineException {
+    public void sendProgressMessage(int iterationIndex, JSONObject progress) throws CommunicationException {
+        // throttled, the manager only needs a recent estimation
+        synchronized (this) {
+            long currentTime = System.currentTimeMillis();
+            if (currentTime - this.lastProgressTime < this.progressInterval) return;
+            this.lastProgressTime = currentTime;
+        }
+
+        JSONObject condensedProgress = new JSONObject();
+        for (String field : PROGRESS_FIELDS) {
+            if (progress.has(field)) condensedProgress.put(field, progress.get(field));
+        }
+        final ProducerRecord<String, byte[]> record = new ProducerRecord<>(
+                this.executionId + "_models_to_manager",
+                this.executionId + messageSeparator + this.dataPartner,  // key
+                condensedProgress.toString().getBytes(StandardCharsets.UTF_8)  // value
+        );
+        record.headers().add("message_name", "progress".getBytes(StandardCharsets.UTF_8));
+        record.headers().add("iteration_index", String.valueOf(iterationIndex).getBytes(StandardCharsets.UTF_8));
+        try {
+            this.modelsToManagerProducer.send(record);  // not awaited, a lost progress message is not an error
+        } catch (KafkaException e) {
+            throw new CommunicationException("Error while sending progress message", e);
+        }
+    }
+
+    @Override
+    public IterationStart waitForStartIterationMessage(int iterationIndex, AIEngineClientModelManagementAdapter aiEngineClientModelManagementAdapter) throws CommunicationException, AIEngineException {
         boolean received = false;
+        IterationStart iterationStart = null;
+        PayloadChunks.Assembler assembler = new PayloadChunks.Assembler();
+        MergedModelSink sink = null;  // chunked models are saved while they arrive if the adapter supports it
+        long nextChunkIndex = 0;
 
-        Timestamp startTime = Timestamp.from(Instant.now());
-        while (!received) {
-            final ConsumerRecords<String, byte[]> consumerRecords = this.modelsToClientsConsumer.poll(Duration.ofSeconds(this.pollTimeOut));
+        try {
+            Timestamp startTime = Timestamp.from(Instant.now());
+            while (!received) {
+                final ConsumerRecords<String, byte[]> consumerRecords = this.modelsToClientsConsumer.poll(Duration.ofSeconds(this.pollTimeOut));
+
+                for (ConsumerRecord<String, byte[]> record : consumerRecords) {
+                    if (received) break;  // not possible to receive more than one message
+                    if (this.joining && !isJoinedClient(record)) continue;  // model of an iteration before the admission of this client
+                    if (record.value() == null || record.value().length == 0) {
+                        throw new CommunicationException("Start iteration message without value", null);
+                    }
+                    long[] chunkPosition = PayloadChunks.getChunkPosition(record);
+                    if (sink == null && chunkPosition != null && chunkPosition[0] == 0) {
+                        sink = aiEngineClientModelManagementAdapter.openMergedModelSink();
+                        nextChunkIndex = 0;
+                    }
 
-            if (consumerRecords.count() > 0) {
-                ConsumerRecord<String, byte[]> record = consumerRecords.iterator().next(); // not possible to receive more than one message
-                if (record.value() != null && record.value().length != 0) {
-                    logger.debug("Start iteration message received");
-                    aiEngineClientModelManagementAdapter.saveMergedModel(record.value());
-                    received = true;
-                } else {
-                    throw new CommunicationException("Start iteration message without value", null);
+                    if (sink != null) {
+                        if (chunkPosition == null || chunkPosition[0] != nextChunkIndex) {
+                            throw new CommunicationException("Missing chunks in message with key " + record.key(), null);
+                        }
+                        sink.write(record.value(), 0, record.value().length);
+                        if (++nextChunkIndex == chunkPosition[1]) {
+                            logger.debug("Start iteration message received");
+                            MergedModelSink finishedSink = sink;
+                            sink = null;
+                            finishedSink.finish();
+                            received = true;
+                            iterationStart = readIterationStart(record, iterationIndex);
+                        }
+                        continue;
+                    }
+
+                    try (Payload model = assembler.add(record)) {
+                        if (model != null) {
+                            logger.debug("Start iteration message received");
+                            aiEngineClientModelManagementAdapter.saveMergedModel(model);
+                            received = true;
+                            iterationStart = readIterationStart(record, iterationIndex);
+                        }
+                    }
                 }
-            }
-            this.modelsToClientsConsumer.commitAsync();
+                this.modelsToClientsConsumer.commitAsync();
 
-            Timestamp currentTime = Timestamp.from(Instant.now());
-            if (currentTime.getTime() > startTime.getTime() + this.startIterationMessageTimeOut) {
-                throw new CommunicationException("The manager did not communicate the start of the iteration", null);
+                Timestamp currentTime = Timestamp.from(Instant.now());
+                if (!received && currentTime.getTime() > startTime.getTime() + this.startIterationMessageTimeOut) {
+                    throw new CommunicationException("The manager did not communicate the start of the iteration", null);
+                }
             }
+        } catch (WakeupException e) {
+            throw new CommunicationException("Interrupted while waiting for the start iteration message", e);
+        } finally {
+            assembler.close();
+            if (sink != null) sink.abort();
         }
 
         try {
             this.modelsToClientsConsumer.commitSync();
-        } catch (CommitFailedException e) {
+        } catch (CommitFailedException | WakeupException e) {
             throw new CommunicationException("Error while committing", e);
         }
+        this.joining = false;
+        return iterationStart;
+    }
+
+    // every client takes part if the manager does not select them
+    private IterationStart readIterationStart(ConsumerRecord<String, byte[]> record, int expectedIterationIndex) throws CommunicationException {
+        boolean lastIteration = "true".equals(PayloadChunks.getHeader(record, "last_iteration"));
+        String selectedClients = PayloadChunks.getHeader(record, "selected_clients");  // JSON array of client ids
+        String mergedIterationIndex = PayloadChunks.getHeader(record, "iteration_index");
+        try {
+            // the model merged in iteration_index is trained in the following one
+            int iterationIndex = mergedIterationIndex == null ? expectedIterationIndex : Integer.parseInt(mergedIterationIndex) + 1;
+            if (selectedClients == null) return new IterationStart(iterationIndex, true, lastIteration);
+            return new IterationStart(iterationIndex, new JSONArray(selectedClients).toList().contains(this.dataPartner), lastIteration);
+        } catch (NumberFormatException e) {
+            throw new CommunicationException("Incorrect iteration index in start iteration message", e);
+        } catch (JSONException e) {
+            throw new CommunicationException("Incorrect selected clients in start iteration message", e);
+        }
+    }
+
+    // the start iteration message that admits a joining client carries the whole model for it
+    private boolean isJoinedClient(ConsumerRecord<String, byte[]> record) {
+        String joinedClients = PayloadChunks.getHeader(record, "joined_clients");  // JSON array of client ids
+        if (joinedClients == null) return false;
+        try {
+            return new JSONArray(joinedClients).toList().contains(this.dataPartner);
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void sendAbortMessage(String reason) throws CommunicationException {
+        if (this.statusProducer == null) return;  // not initialized, nobody is waiting for this client yet
+        try {
+            this.statusProducer.send(AbortWatcher.createAbortMessage(this.executionId + messageSeparator + this.dataPartner, reason)).get(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            logger.debug("Abort message sent");
+        } catch (InterruptedException | ExecutionException | TimeoutException | KafkaException e) {
+            throw new CommunicationException("Error while sending abort message", e);
+        }
+    }
+
+    @Override
+    public void startAbortWatcher(AbortListener abortListener) {
+        // from now on the status consumer is only used by the watcher. Only the manager's abort ends the run, it decides
+        // whether the failure of another client ends the execution. A client left out while still running does not
+        // join again by itself (the join would seek the status consumer), it has to be restarted with --rejoin
+        this.abortWatcher = new AbortWatcher(this.statusConsumer, this.executionId, this.executionId + messageSeparator + this.dataPartner, messageSeparator, Duration.ofSeconds(this.pollTimeOut), abortListener);
+        this.abortWatcher.start();
+    }
+
+    // the status consumer belongs to the abort watcher, the main thread only waits for models
+    @Override
+    public void wakeup() {
+        if (this.modelsToClientsConsumer != null) this.modelsToClientsConsumer.wakeup();
     }
 
     @Override
     public void cleanEnvironment() {
-        this.modelsToClientsConsumer.close();
-        this.modelsToManagerProducer.close();
+        if (this.abortWatcher != null) this.abortWatcher.stop(CLOSE_TIMEOUT);
+        else if (this.statusConsumer != null) this.statusConsumer.close(CLOSE_TIMEOUT);
+        if (this.statusProducer != null) this.statusProducer.close(CLOSE_TIMEOUT);
+        if (this.modelsToClientsConsumer != null) this.modelsToClientsConsumer.close(CLOSE_TIMEOUT);
+        if (this.modelsToManagerProducer != null) this.modelsToManagerProducer.close(CLOSE_TIMEOUT);
     }
 
     private void createProducers() {
@@ -201,7 +400,7 @@ public class KafkaClientCommunication implements ClientCommunicationAdapter {
         properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, this.bootstrapServersConfig);
         properties.put(ProducerConfig.CLIENT_ID_CONFIG, this.executionId + "_" + this.dataPartner + "_client");
         properties.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "gzip");
-        properties.put(ProducerConfig.MAX_REQUEST_SIZE_CONFIG, maxModelSize + "");
+        properties.put(ProducerConfig.MAX_REQUEST_SIZE_CONFIG, maxRecordSize + "");
         properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
         properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
         this.modelsToManagerProducer = new KafkaProducer<>(properties);
@@ -214,7 +413,7 @@ public class KafkaClientCommunication implements ClientCommunicationAdapter {
         this.statusProducer = new KafkaProducer<>(properties);
     }
 
-    private void createConsumers() throws CommunicationException {
+    private void createStatusConsumer() throws CommunicationException {
         Properties properties = new Properties();
         properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, this.bootstrapServersConfig);
         properties.put(ConsumerConfig.GROUP_ID_CONFIG, this.executionId + "_" + this.dataPartner + "_client");
@@ -228,20 +427,21 @@ public class KafkaClientCommunication implements ClientCommunicationAdapter {
         if (partitionInfos == null || partitionInfos.size() == 0) throw new CommunicationException("Topic status not already created", null);
         for (PartitionInfo partition : partitionInfos) partitions.add(new TopicPartition(partition.topic(), partition.partition()));
         this.statusConsumer.assign(partitions);  // standalone consumer
+    }
 
-
-        properties = new Properties();
+    private void createModelsToClientsConsumer() throws CommunicationException {
+        Properties properties = new Properties();
         properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, this.bootstrapServersConfig);
         properties.put(ConsumerConfig.GROUP_ID_CONFIG, executionId + "_" + dataPartner + "_client");
         properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
-        properties.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, maxModelSize + "");
+        properties.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, maxRecordSize + "");
         properties.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, maxIterationTime + "");
         properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
         properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
         this.modelsToClientsConsumer = new KafkaConsumer<>(properties);
-        partitions = new ArrayList<>();
-        partitionInfos = modelsToClientsConsumer.partitionsFor(executionId + "_models_to_clients");
+        List<TopicPartition> partitions = new ArrayList<>();
+        List<PartitionInfo> partitionInfos = modelsToClientsConsumer.partitionsFor(executionId + "_models_to_clients");
         if (partitionInfos == null || partitionInfos.size() == 0) throw new CommunicationException("Topic " + executionId + "_models_to_clients not already created", null);
         for (PartitionInfo partition : partitionInfos) partitions.add(new TopicPartition(partition.topic(), partition.partition()));
         modelsToClientsConsumer.assign(partitions);  // standalone consumer
@@ -0,0 +1,122 @@
+package communication_adapter.kafka;
+
+import communication_adapter.AbortListener;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Polls the status topic in the background until another participant of the execution sends an abort message: any
+// client for the manager, only the manager for a client. The manager decides whether the failure of a client ends the
+// execution (and then aborts it for every client) or only leaves that client out. It owns the status consumer from
+// then on and closes it
+public class AbortWatcher {
+
+    // other status messages of the execution, e.g. the join of a restarted client. Returns true if the message is
+    // handled, then it does not abort the execution even if it is an abort message
+    public interface StatusHandler {
+        boolean handle(ConsumerRecord<String, String> record);
+    }
+
+    private static final Logger logger = LogManager.getLogger(AbortWatcher.class);
+    private static final String ABORT_MESSAGE = "abort";
+
+    private final Consumer<String, String> statusConsumer;
+    private final String executionId;
+    private final String ownKey;  // executionId for the manager, own abort messages are not received
+    private final String messageSeparator;
+    private final Duration pollTimeOut;
+    private final AbortListener abortListener;
+    private final StatusHandler statusHandler;  // null -> only abort messages
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private volatile boolean stopped = false;
+
+    public AbortWatcher(Consumer<String, String> statusConsumer, String executionId, String ownKey, String messageSeparator, Duration pollTimeOut, AbortListener abortListener) {
+        this(statusConsumer, executionId, ownKey, messageSeparator, pollTimeOut, abortListener, null);
+    }
+
+    public AbortWatcher(Consumer<String, String> statusConsumer, String executionId, String ownKey, String messageSeparator, Duration pollTimeOut, AbortListener abortListener, StatusHandler statusHandler) {
+        this.statusConsumer = statusConsumer;
+        this.executionId = executionId;
+        this.ownKey = ownKey;
+        this.messageSeparator = messageSeparator;
+        this.pollTimeOut = pollTimeOut;
+        this.abortListener = abortListener;
+        this.statusHandler = statusHandler;
+    }
+
+    // key -> executionId (from manager) or executionId MESSAGE_SEP clientId (from client), value -> reason
+    public static ProducerRecord<String, String> createAbortMessage(String key, String reason) {
+        ProducerRecord<String, String> record = new ProducerRecord<>("status", key, reason);
+        record.headers().add("message_name", ABORT_MESSAGE.getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+
+    public static boolean isAbortMessage(ConsumerRecord<String, ?> record) {
+        return ABORT_MESSAGE.equals(PayloadChunks.getHeader(record, "message_name"));
+    }
+
+    public static String getParticipant(String key, String messageSeparator) {
+        if (!key.contains(messageSeparator)) return "the manager";
+        return "the client with id " + key.split(messageSeparator)[1];
+    }
+
+    public void start() {
+        Thread thread = new Thread(this::watch, "abort-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // the listener may be running, e.g. stopping the execution, so only the polling is awaited
+    public void stop(Duration timeout) {
+        this.stopped = true;
+        this.statusConsumer.wakeup();
+        try {
+            if (!this.closed.await(timeout.toMillis(), TimeUnit.MILLISECONDS)) logger.debug("Abort watcher not stopped on time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void watch() {
+        ConsumerRecord<String, String> abortMessage = null;
+        try {
+            while (!this.stopped && abortMessage == null) {
+                for (ConsumerRecord<String, String> record : this.statusConsumer.poll(this.pollTimeOut)) {
+                    if (!isWatchedParticipant(record.key())) continue;
+                    if (this.statusHandler != null && this.statusHandler.handle(record)) continue;
+                    if (isAbortMessage(record)) {
+                        abortMessage = record;
+                        break;
+                    }
+                }
+            }
+        } catch (WakeupException e) {
+            // stopped
+        } catch (KafkaException e) {
+            logger.debug("Abort watcher stopped: " + e.getMessage());
+        } finally {
+            this.statusConsumer.close(Duration.ofSeconds(5));
+            this.closed.countDown();
+        }
+
+        if (abortMessage != null && !this.stopped) {
+            this.abortListener.onAbort(getParticipant(abortMessage.key(), this.messageSeparator), abortMessage.value());
+        }
+    }
+
+    private boolean isWatchedParticipant(String key) {
+        if (key == null) return false;
+        if (!this.ownKey.equals(this.executionId)) return key.equals(this.executionId);
+        return key.startsWith(this.executionId + this.messageSeparator);
+    }
+
+}
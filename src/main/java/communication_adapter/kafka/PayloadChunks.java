@@ -0,0 +1,117 @@
+package communication_adapter.kafka;
+
+import exceptions.CommunicationException;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.header.Header;
+import utils.Payload;
+import utils.PooledPayload;
+import utils.SpillingPayload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+// Payloads are sent as a sequence of records of at most chunkSize bytes, so no message needs a whole model in a single array.
+// Records without chunk headers are taken as a complete payload (e.g. messages from previous versions or from the tests)
+public class PayloadChunks {
+
+    public static final String CHUNK_INDEX_HEADER = "chunk_index";
+    public static final String CHUNK_COUNT_HEADER = "chunk_count";
+
+    public static void send(
+            Producer<String, byte[]> producer,
+            String topic,
+            String key,
+            Payload payload,
+            int chunkSize,
+            Map<String, String> headers
+    ) throws IOException, InterruptedException, ExecutionException {
+        long chunkCount = Math.max(1, (payload.size() + chunkSize - 1) / chunkSize);
+
+        List<Future<RecordMetadata>> futures = new ArrayList<>();
+        try (InputStream inputStream = payload.getInputStream()) {
+            for (long chunkIndex = 0; chunkIndex < chunkCount; ++chunkIndex) {
+                byte[] chunk = inputStream.readNBytes((int) Math.min(chunkSize, payload.size() - chunkIndex * chunkSize));
+                ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, key, chunk);
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    record.headers().add(header.getKey(), header.getValue().getBytes(StandardCharsets.UTF_8));
+                }
+                record.headers().add(CHUNK_INDEX_HEADER, String.valueOf(chunkIndex).getBytes(StandardCharsets.UTF_8));
+                record.headers().add(CHUNK_COUNT_HEADER, String.valueOf(chunkCount).getBytes(StandardCharsets.UTF_8));
+                futures.add(producer.send(record));  // same key -> same partition -> chunks keep their order
+            }
+        }
+
+        for (Future<RecordMetadata> future : futures) future.get();
+    }
+
+    public static String getHeader(ConsumerRecord<String, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    // {chunk index, chunk count}, null if the record is a complete payload
+    public static long[] getChunkPosition(ConsumerRecord<String, ?> record) throws CommunicationException {
+        String chunkIndexHeader = getHeader(record, CHUNK_INDEX_HEADER);
+        String chunkCountHeader = getHeader(record, CHUNK_COUNT_HEADER);
+        if (chunkIndexHeader == null || chunkCountHeader == null) return null;
+
+        try {
+            return new long[]{Long.parseLong(chunkIndexHeader), Long.parseLong(chunkCountHeader)};
+        } catch (NumberFormatException e) {
+            throw new CommunicationException("Incorrect chunk headers in message with key " + record.key(), e);
+        }
+    }
+
+    // joins the chunks of the payloads that are being received, one payload in progress per key
+    public static class Assembler {
+
+        private final Map<String, SpillingPayload> pendingPayloads = new HashMap<>();
+        private final Map<String, Long> nextChunkIndexes = new HashMap<>();
+
+        // returns the complete payload when the last chunk is added, null otherwise. The caller owns the returned payload
+        public Payload add(ConsumerRecord<String, byte[]> record) throws CommunicationException {
+            long[] chunkPosition = getChunkPosition(record);
+            if (chunkPosition == null) return PooledPayload.wrap(record.value());
+            long chunkIndex = chunkPosition[0];
+            long chunkCount = chunkPosition[1];
+
+            if (chunkIndex == 0) {
+                SpillingPayload previousPayload = this.pendingPayloads.put(record.key(), new SpillingPayload());
+                if (previousPayload != null) previousPayload.close();  // incomplete payload replaced by a new one
+            } else if (!this.pendingPayloads.containsKey(record.key()) || this.nextChunkIndexes.get(record.key()) != chunkIndex) {
+                throw new CommunicationException("Missing chunks in message with key " + record.key(), null);
+            }
+
+            SpillingPayload payload = this.pendingPayloads.get(record.key());
+            try {
+                payload.write(record.value(), 0, record.value().length);
+            } catch (IOException e) {
+                throw new CommunicationException("Error while storing the chunks of message with key " + record.key(), e);
+            }
+            this.nextChunkIndexes.put(record.key(), chunkIndex + 1);
+
+            if (chunkIndex + 1 < chunkCount) return null;
+            this.pendingPayloads.remove(record.key());
+            this.nextChunkIndexes.remove(record.key());
+            return payload;
+        }
+
+        public void close() {
+            for (SpillingPayload payload : this.pendingPayloads.values()) payload.close();
+            this.pendingPayloads.clear();
+            this.nextChunkIndexes.clear();
+        }
+
+    }
+
+}
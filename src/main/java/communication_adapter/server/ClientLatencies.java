@@ -0,0 +1,89 @@
+package communication_adapter.server;
+
+import org.json.JSONObject;
+import utils.RollingHistogram;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Round durations of every client, split into training (from the start of the round until the first bytes of its
+// model arrive) and upload (until the last ones arrive). The round starts when the broadcast of the previous model is
+// acknowledged, since it is still being sent while the manager starts waiting for the next models. The deadline of
+// each client comes from its own history, so that a client that is clearly stuck is detected without waiting the
+// maximum iteration time
+public class ClientLatencies {
+
+    private static final int MIN_SAMPLES = 5;  // fewer samples -> the maximum iteration time is used
+
+    private final int windowSize;
+    private final int percentile;  // 0-100
+    private final int deadlineFactor;  // percentage of the percentile, 0 -> adaptive deadlines disabled
+    private final Map<String, RollingHistogram> trainingTimes = new TreeMap<>();  // client id -> milliseconds
+    private final Map<String, RollingHistogram> uploadTimes = new TreeMap<>();  // client id -> milliseconds
+
+    public ClientLatencies(int windowSize, int percentile, int deadlineFactor) {
+        this.windowSize = windowSize;
+        this.percentile = percentile;
+        this.deadlineFactor = deadlineFactor;
+    }
+
+    public synchronized void record(String clientId, long trainingTime, long uploadTime) {
+        this.trainingTimes.computeIfAbsent(clientId, id -> new RollingHistogram(this.windowSize)).add(trainingTime);
+        this.uploadTimes.computeIfAbsent(clientId, id -> new RollingHistogram(this.windowSize)).add(uploadTime);
+    }
+
+    // milliseconds since the start of the round (see above), never more than maxTime
+    public synchronized long getDeadline(String clientId, long maxTime) {
+        RollingHistogram trainingTimes = this.trainingTimes.get(clientId);
+        RollingHistogram uploadTimes = this.uploadTimes.get(clientId);
+        if (this.deadlineFactor <= 0 || trainingTimes == null || trainingTimes.size() < MIN_SAMPLES) return maxTime;
+        long expectedTime = trainingTimes.percentile(this.percentile) + uploadTimes.percentile(this.percentile);
+        return Math.min(maxTime, expectedTime * this.deadlineFactor / 100);
+    }
+
+    // expected round time of the client (sum of the percentiles), 0 if unknown
+    public synchronized long getExpectedTime(String clientId) {
+        RollingHistogram trainingTimes = this.trainingTimes.get(clientId);
+        if (trainingTimes == null) return 0;
+        return trainingTimes.percentile(this.percentile) + this.uploadTimes.get(clientId).percentile(this.percentile);
+    }
+
+    // samples and percentiles of every client, for monitoring. load() reads the samples back
+    public synchronized JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        for (String clientId : this.trainingTimes.keySet()) {
+            RollingHistogram trainingTimes = this.trainingTimes.get(clientId);
+            RollingHistogram uploadTimes = this.uploadTimes.get(clientId);
+            JSONObject client = new JSONObject();
+            client.put("training", trainingTimes.toJSON());
+            client.put("upload", uploadTimes.toJSON());
+            client.put("training_p" + this.percentile, trainingTimes.percentile(this.percentile));
+            client.put("upload_p" + this.percentile, uploadTimes.percentile(this.percentile));
+            json.put(clientId, client);
+        }
+        return json;
+    }
+
+    // samples of previous executions, the clients that are already known are replaced
+    public synchronized void load(Path path) throws IOException {
+        JSONObject json = new JSONObject(Files.readString(path, StandardCharsets.UTF_8));
+        for (String clientId : json.keySet()) {
+            JSONObject client = json.getJSONObject(clientId);
+            this.trainingTimes.put(clientId, RollingHistogram.fromJSON(client.getJSONArray("training"), this.windowSize));
+            this.uploadTimes.put(clientId, RollingHistogram.fromJSON(client.getJSONArray("upload"), this.windowSize));
+        }
+    }
+
+    public synchronized void save(Path path) throws IOException {
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(temporaryPath, toJSON().toString(), StandardCharsets.UTF_8);
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);  // never half written
+    }
+
+}
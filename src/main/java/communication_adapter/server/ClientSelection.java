@@ -0,0 +1,51 @@
+package communication_adapter.server;
+
+import exceptions.BadConfigurationException;
+
+import java.util.*;
+
+// Clients that train in an iteration: ALL of them, a RANDOM fraction, or a random fraction of the ones expected to end
+// before the maximum iteration time according to their LATENCY history (see ClientLatencies). A slow client that ends
+// on time is still selected now and then, so its data is not left out and its history is updated. The rest keep the
+// merged model and skip the iteration
+public class ClientSelection {
+
+    private final String policy;
+    private final int fraction;  // 1-100
+    private final long maxTime;  // ms
+    private final ClientLatencies clientLatencies;
+    private final Random random;
+
+    public ClientSelection(String policy, int fraction, long maxTime, ClientLatencies clientLatencies, Random random) throws BadConfigurationException {
+        if (!List.of("ALL", "RANDOM", "LATENCY").contains(policy)) {
+            throw new BadConfigurationException("Client selection " + policy + " not supported. Available: ALL, RANDOM and LATENCY");
+        }
+        if (fraction <= 0 || fraction > 100) {
+            throw new BadConfigurationException("The client fraction must be between 1 and 100");
+        }
+        this.policy = policy;
+        this.fraction = fraction;
+        this.maxTime = maxTime;
+        this.clientLatencies = clientLatencies;
+        this.random = random;
+    }
+
+    // null if every client is selected
+    public Set<String> select(Collection<String> clientIds) {
+        if (this.policy.equals("ALL")) return null;
+
+        List<String> candidates = new ArrayList<>(clientIds);
+        int numberOfSelectedClients = (int) Math.max(1, Math.ceil(candidates.size() * this.fraction / 100.0));
+        if (this.policy.equals("LATENCY")) {
+            // the clients without history are eligible, so that it is gathered. If none is expected to end on time, any can
+            List<String> eligibleClients = new ArrayList<>();
+            for (String clientId : candidates) {
+                if (this.clientLatencies.getExpectedTime(clientId) <= this.maxTime) eligibleClients.add(clientId);
+            }
+            if (!eligibleClients.isEmpty()) candidates = eligibleClients;
+        }
+        Collections.shuffle(candidates, this.random);
+        return new TreeSet<>(candidates.subList(0, Math.min(numberOfSelectedClients, candidates.size())));
+    }
+
+}
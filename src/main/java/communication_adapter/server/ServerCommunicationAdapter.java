@@ -5,9 +5,13 @@ import communication_adapter.CommunicationAdapter;
 import config.EnvironmentVariable;
 import exceptions.AIEngineException;
 import exceptions.CommunicationException;
+import org.json.JSONObject;
+import utils.Payload;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public interface ServerCommunicationAdapter extends CommunicationAdapter {
 
@@ -23,6 +27,26 @@ public interface ServerCommunicationAdapter extends CommunicationAdapter {
 
     void waitForAllEndedIterationMessages(int iterationIndex, boolean isModel, AIEngineServerModelManagementAdapter aiEngineServerModelManagementAdapter) throws CommunicationException, AIEngineException;
 
-    void sendStartIterationMessage(int iterationIndex, byte[] model) throws CommunicationException;
+    // latest progress received from every client during the current iteration
+    default Map<String, JSONObject> getClientProgress() {
+        return Map.of();
+    }
+
+    // round time distributions of every client, see ClientLatencies
+    default JSONObject getClientLatencies() {
+        return new JSONObject();
+    }
+
+    // clients that join again after a failure, they take part from the start iteration message of iterationIndex on
+    default Set<String> admitJoiningClients(int iterationIndex) {
+        return Set.of();
+    }
+
+    default void sendStartIterationMessage(int iterationIndex, Payload model) throws CommunicationException {
+        sendStartIterationMessage(iterationIndex, model, false);
+    }
+
+    // lastIteration -> the clients evaluate the model instead of training it (e.g. the training is stopped early)
+    void sendStartIterationMessage(int iterationIndex, Payload model, boolean lastIteration) throws CommunicationException;
 
 }
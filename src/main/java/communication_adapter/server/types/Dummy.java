@@ -6,6 +6,7 @@ import exceptions.AIEngineException;
 import exceptions.CommunicationException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import utils.Payload;
 
 public class Dummy implements ServerCommunicationAdapter {
 
@@ -32,7 +33,7 @@ public class Dummy implements ServerCommunicationAdapter {
     }
 
     @Override
-    public void sendStartIterationMessage(int iterationIndex, byte[] model) throws CommunicationException {
+    public void sendStartIterationMessage(int iterationIndex, Payload model, boolean lastIteration) throws CommunicationException {
         logger.debug("sendStartIterationMessage method called");
     }
 
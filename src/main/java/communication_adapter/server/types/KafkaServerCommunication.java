@@ -1,6 +1,11 @@
 package communication_adapter.server.types;
 
 import ai_engine_adapter.model_management.server.AIEngineServerModelManagementAdapter;
+import communication_adapter.AbortListener;
+import communication_adapter.kafka.AbortWatcher;
+import communication_adapter.kafka.PayloadChunks;
+import communication_adapter.server.ClientLatencies;
+import communication_adapter.server.ClientSelection;
 import communication_adapter.server.ServerCommunicationAdapter;
 import config.EnvironmentVariable;
 import config.EnvironmentVariableType;
@@ -12,28 +17,39 @@ import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import utils.ConcurrentTasks;
+import utils.Payload;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Properties;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class KafkaServerCommunication implements ServerCommunicationAdapter {
 
     private static final Logger logger = LogManager.getLogger(KafkaServerCommunication.class);
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(5);  // pending records are dropped after it
     public static List<EnvironmentVariable> getEnvironmentVariables() {
         List<EnvironmentVariable> abstractClassVariables = ServerCommunicationAdapter.getEnvironmentVariables();
         abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_BOOTSTRAP_SERVERS_CONFIG", EnvironmentVariableType.STRING));
@@ -41,6 +57,14 @@ public class KafkaServerCommunication implements ServerCommunicationAdapter {
         abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_MAX_INITIALIZATION_TIME", EnvironmentVariableType.LONG));  // seconds
         abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_MAX_ITERATION_TIME", EnvironmentVariableType.LONG));  // seconds
         abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_MAX_MODEL_SIZE", EnvironmentVariableType.INTEGER)); // KB
+        abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_CHUNK_SIZE", EnvironmentVariableType.INTEGER, 512));  // KB
+        abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_LATENCY_WINDOW", EnvironmentVariableType.INTEGER, 50));  // rounds kept per client
+        abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_DEADLINE_PERCENTILE", EnvironmentVariableType.INTEGER, 99));
+        abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_DEADLINE_FACTOR", EnvironmentVariableType.INTEGER, 0));  // % of the percentile, 0 -> only MAX_ITERATION_TIME
+        abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_LATENCY_HISTORY_PATH", EnvironmentVariableType.STRING, ""));  // empty -> not persisted
+        abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_CLIENT_SELECTION", EnvironmentVariableType.STRING, "ALL"));  // ALL, RANDOM or LATENCY
+        abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_CLIENT_FRACTION", EnvironmentVariableType.INTEGER, 100));  // % of the clients selected every iteration
+        abstractClassVariables.add(new EnvironmentVariable("COMMUNICATION_ADAPTER_CLIENT_REJOIN", EnvironmentVariableType.BOOLEAN, false));  // failed clients are left out until they are restarted with --rejoin instead of failing the execution
         return abstractClassVariables;
     }
 
@@ -54,11 +78,26 @@ public class KafkaServerCommunication implements ServerCommunicationAdapter {
     private final long maxInitializationTime;
     private final long maxIterationTime;
     private final long maxModelSize;
+    private final int maxRecordSize;
+    private final int chunkSize;
+    private final Map<String, ClientProgress> clientProgress = new ConcurrentHashMap<>();  // client id -> latest progress of the current iteration
+    private final ClientLatencies clientLatencies;
+    private volatile long broadcastTime = 0;  // when the last model broadcast was acknowledged (clients train from then), -1 while in progress
+    private final String latencyHistoryPath;
+    private final Set<String> participants = new HashSet<>();  // clients that have ended some iteration of this execution
+    private final ClientSelection clientSelection;
+    private final Set<String> clientIds = new TreeSet<>();  // from the client initialization messages
+    private final Map<Integer, Set<String>> selectedClients = new HashMap<>();  // iteration index -> clients that train in it
+    private final boolean clientRejoin;
+    private final Set<String> droppedClients = ConcurrentHashMap.newKeySet();  // failed clients, left out until they join again
+    private final Set<String> joiningClients = ConcurrentHashMap.newKeySet();  // restarted clients waiting for the next round boundary
+    private final Map<Integer, Set<String>> joinedClients = new HashMap<>();  // iteration index -> clients admitted by its start iteration message
 
     private Producer<String, String> statusProducer;
     private Producer<String, byte[]> modelsToClientsProducer;
     private Consumer<String, byte[]> modelsToManagerConsumer;
     private Consumer<String, String> statusConsumer;
+    private AbortWatcher abortWatcher;
 
     public KafkaServerCommunication(Map<String, Object> config, String executionId, int numberOfClients) throws BadConfigurationException {
         this.executionId = executionId;
@@ -68,17 +107,44 @@ public class KafkaServerCommunication implements ServerCommunicationAdapter {
         this.pollTimeOut = (long) config.get("COMMUNICATION_ADAPTER_POLL_TIME_OUT");
         this.maxInitializationTime = (long) config.get("COMMUNICATION_ADAPTER_MAX_INITIALIZATION_TIME") * 1000;
         this.maxIterationTime = (long) config.get("COMMUNICATION_ADAPTER_MAX_ITERATION_TIME") * 1000;
-        this.maxModelSize = (int) config.get("COMMUNICATION_ADAPTER_MAX_MODEL_SIZE") * 1000;
+        this.maxModelSize = (int) config.get("COMMUNICATION_ADAPTER_MAX_MODEL_SIZE") * 1000L;
+        this.maxRecordSize = (int) Math.min(this.maxModelSize, Integer.MAX_VALUE);  // bigger models are always chunked
+        this.chunkSize = (int) Math.min((int) config.get("COMMUNICATION_ADAPTER_CHUNK_SIZE") * 1000L, this.maxRecordSize);
+        this.clientLatencies = new ClientLatencies(
+                (int) config.getOrDefault("COMMUNICATION_ADAPTER_LATENCY_WINDOW", 50),
+                (int) config.getOrDefault("COMMUNICATION_ADAPTER_DEADLINE_PERCENTILE", 99),
+                (int) config.getOrDefault("COMMUNICATION_ADAPTER_DEADLINE_FACTOR", 0)
+        );
+        this.latencyHistoryPath = (String) config.getOrDefault("COMMUNICATION_ADAPTER_LATENCY_HISTORY_PATH", "");
+        this.clientSelection = new ClientSelection(
+                (String) config.getOrDefault("COMMUNICATION_ADAPTER_CLIENT_SELECTION", "ALL"),
+                (int) config.getOrDefault("COMMUNICATION_ADAPTER_CLIENT_FRACTION", 100),
+                this.maxIterationTime,
+                this.clientLatencies,
+                new Random()
+        );
+        this.clientRejoin = (boolean) config.getOrDefault("COMMUNICATION_ADAPTER_CLIENT_REJOIN", false);
     }
 
     @Override
     public void initialize() throws CommunicationException {
-        createConsumers();
-        createProducers();
+        loadLatencyHistory();
+
+        // each client connects and fetches its metadata on its own
+        try {
+            ConcurrentTasks.<CommunicationException>runAll("kafka-initialization", List.of(
+                    this::createModelsToManagerConsumer,
+                    this::createStatusConsumer,
+                    this::createProducers
+            ));
+        } catch (InterruptedException e) {
+            throw new CommunicationException("Interrupted while initializing", e);
+        }
     }
 
     @Override
     public void sendManagerInitializationMessage(boolean success) throws CommunicationException {
+        if (this.statusProducer == null) throw new CommunicationException("Error while sending manager initialization message. The status producer was not created", null);
         try {
             ProducerRecord<String, String> record = new ProducerRecord<>(
                     "status",
@@ -88,11 +154,10 @@ public class KafkaServerCommunication implements ServerCommunicationAdapter {
             record.headers().add("message_name", "manager_initialization".getBytes(StandardCharsets.UTF_8));
             this.statusProducer.send(record).get();
             logger.debug("Manager initialization message sent");
-        } catch (InterruptedException | ExecutionException e) {
+        } catch (InterruptedException | ExecutionException | KafkaException e) {
             throw new CommunicationException("Error while sending manager initialization message", e);
         }
-
-        this.statusProducer.close();
+        // the status producer is kept for the abort message
     }
 
     @Override
@@ -112,9 +177,15 @@ public class KafkaServerCommunication implements ServerCommunicationAdapter {
                         boolean fromThisExecution = this.executionId.equals(record.key().split(messageSeparator)[0]);
                         if (fromThisExecution) {
                             String clientId = record.key().split(messageSeparator)[1];
+                            if (AbortWatcher.isAbortMessage(record)) {
+                                throw new CommunicationException("Execution aborted by the client with id " + clientId + ": " + record.value(), null);
+                            }
                             boolean success = Boolean.parseBoolean(record.value());
                             if (success) {
                                 logger.debug("Started iteration message received from client with id " + clientId);
+                                synchronized (this) {
+                                    this.clientIds.add(clientId);
+                                }
                                 ++numberOfReceivedMessages;
                             } else {
                                 throw new CommunicationException("The client with id " + clientId + " did not start well its iteration", null);
@@ -135,70 +206,328 @@ public class KafkaServerCommunication implements ServerCommunicationAdapter {
         } catch (CommitFailedException e) {
             throw new CommunicationException("Error while committing", e);
         }
-
-        this.statusConsumer.close();
+        // the status consumer is kept for the abort watcher
     }
 
     @Override
     public void waitForAllEndedIterationMessages(int iterationIndex, boolean isModel, AIEngineServerModelManagementAdapter aiEngineServerModelManagementAdapter) throws CommunicationException, AIEngineException {
         int numberOfFinishedClients = 0;
+        Set<String> selectedClients = isModel ? getSelectedClients(iterationIndex) : null;  // every client evaluates
+        int numberOfExpectedClients = selectedClients == null ? this.numberOfClients : selectedClients.size();
+        PayloadChunks.Assembler assembler = new PayloadChunks.Assembler();
+        Map<String, Long> firstChunkTimes = new HashMap<>();  // client id -> end of its training
+        Set<String> finishedClients = new HashSet<>();
+        this.clientProgress.clear();
 
-        Timestamp startTime = Timestamp.from(Instant.now());
-        while (numberOfFinishedClients < numberOfClients) {
-            final ConsumerRecords<String, byte[]> consumerRecords = this.modelsToManagerConsumer.poll(Duration.ofSeconds(this.pollTimeOut));
+        try {
+            Timestamp startTime = Timestamp.from(Instant.now());
+            while (numberOfFinishedClients < numberOfExpectedClients - countDroppedClients(selectedClients, finishedClients)) {
+                final ConsumerRecords<String, byte[]> consumerRecords = this.modelsToManagerConsumer.poll(Duration.ofSeconds(this.pollTimeOut));
 
-            if (consumerRecords.count() > 0) {
                 for (ConsumerRecord<String, byte[]> record: consumerRecords) {
                     // key -> executionId MESSAGE_SEP clientId
-                    // value -> model or null
+                    // value -> model (or one of its chunks) or null
                     if (!record.key().contains(messageSeparator)) throw new CommunicationException("Ended iteration message key without message separator", null);
                     String clientId = record.key().split(messageSeparator)[1];
+                    if ("progress".equals(PayloadChunks.getHeader(record, "message_name"))) {
+                        updateClientProgress(iterationIndex, clientId, record, startTime);
+                        continue;
+                    }
+                    if (selectedClients != null && !selectedClients.contains(clientId)) {
+                        logger.warn(String.format("Ended iteration message ignored, the client with id %s was not selected for iteration %d", clientId, iterationIndex));
+                        continue;
+                    }
+                    if (this.droppedClients.contains(clientId)) continue;  // left out until it joins again
                     byte[] bytes = record.value();
                     if (bytes != null && bytes.length != 0) {
-                        logger.debug("Ended iteration message received from client with id " + clientId);
-                        if (isModel) aiEngineServerModelManagementAdapter.saveUnMergedModel(clientId, bytes);
-                        else aiEngineServerModelManagementAdapter.saveEvaluationMetrics(clientId, bytes);
-                        ++numberOfFinishedClients;
+                        firstChunkTimes.putIfAbsent(clientId, System.currentTimeMillis());
+                        try (Payload payload = assembler.add(record)) {
+                            if (payload == null) continue;  // waiting for the rest of the chunks
+                            logger.debug("Ended iteration message received from client with id " + clientId);
+                            long endTime = System.currentTimeMillis();
+                            long firstChunkTime = firstChunkTimes.remove(clientId);
+                            if (isModel) this.clientLatencies.record(clientId, firstChunkTime - roundStartTime(startTime), endTime - firstChunkTime);
+                            finishedClients.add(clientId);
+                            this.participants.add(clientId);
+                            if (isModel) aiEngineServerModelManagementAdapter.saveUnMergedModel(clientId, payload);
+                            else aiEngineServerModelManagementAdapter.saveEvaluationMetrics(clientId, payload);
+                            ++numberOfFinishedClients;
+                        }
+                    } else if (this.clientRejoin) {
+                        dropClient(clientId, String.format("it did not end well iteration %d", iterationIndex));
                     } else {
                         throw new CommunicationException("The client with id " + clientId + " did not end well its iteration", null);
                     }
                 }
-            }
 
-            Timestamp currentTime = Timestamp.from(Instant.now());
-            if (currentTime.getTime() > startTime.getTime() + this.maxIterationTime) {
-                throw new CommunicationException("Some client did not communicate the end of its iteration", null);
+                Timestamp currentTime = Timestamp.from(Instant.now());
+                if (numberOfFinishedClients < numberOfExpectedClients - countDroppedClients(selectedClients, finishedClients) && currentTime.getTime() > startTime.getTime() + this.maxIterationTime) {
+                    if (this.clientRejoin) {
+                        for (String clientId : getExpectedClients(selectedClients)) {
+                            if (!finishedClients.contains(clientId)) dropClient(clientId, String.format("it did not communicate the end of iteration %d", iterationIndex));
+                        }
+                    }
+                    if (numberOfFinishedClients < numberOfExpectedClients - countDroppedClients(selectedClients, finishedClients)) {
+                        throw new CommunicationException("Some client did not communicate the end of its iteration", null);
+                    }
+                }
+                if (isModel) checkClientDeadlines(iterationIndex, selectedClients, finishedClients, currentTime.getTime() - roundStartTime(startTime));
             }
+        } catch (WakeupException e) {
+            throw new CommunicationException("Interrupted while waiting for the ended iteration messages", e);
+        } finally {
+            assembler.close();
         }
+        if (numberOfFinishedClients == 0 && numberOfExpectedClients > 0) {
+            throw new CommunicationException(String.format("No client communicated the end of iteration %d", iterationIndex), null);
+        }
+
+        if (isModel) saveLatencyHistory();
 
         try {
             this.modelsToManagerConsumer.commitSync();
-        } catch (CommitFailedException e) {
+        } catch (CommitFailedException | WakeupException e) {
             throw new CommunicationException("Error while committing", e);
         }
     }
 
+    // the broadcast of the previous model may still be in progress when the manager starts waiting
+    private long roundStartTime(Timestamp startTime) {
+        long broadcastTime = this.broadcastTime;
+        if (broadcastTime < 0) return System.currentTimeMillis();  // no client has started yet
+        return Math.max(startTime.getTime(), broadcastTime);
+    }
+
+    // only the clients whose round time is known can be late before the maximum iteration time
+    private void checkClientDeadlines(int iterationIndex, Set<String> selectedClients, Set<String> finishedClients, long elapsedTime) throws CommunicationException {
+        for (String clientId : this.participants) {
+            if (finishedClients.contains(clientId) || (selectedClients != null && !selectedClients.contains(clientId))) continue;
+            if (this.droppedClients.contains(clientId)) continue;
+            long deadline = this.clientLatencies.getDeadline(clientId, this.maxIterationTime);
+            if (elapsedTime > deadline && this.clientRejoin) {
+                dropClient(clientId, String.format("it did not communicate the end of iteration %d before its deadline (%d seconds)", iterationIndex, deadline / 1000));
+            } else if (elapsedTime > deadline) {
+                throw new CommunicationException(String.format("The client with id %s did not communicate the end of iteration %d before its deadline (%d seconds)", clientId, iterationIndex, deadline / 1000), null);
+            }
+        }
+    }
+
+    // clients dropped while they were expected in the iteration, they do not hold it back
+    private int countDroppedClients(Set<String> selectedClients, Set<String> finishedClients) {
+        int numberOfDroppedClients = 0;
+        for (String clientId : this.droppedClients) {
+            if (!finishedClients.contains(clientId) && (selectedClients == null || selectedClients.contains(clientId))) ++numberOfDroppedClients;
+        }
+        return numberOfDroppedClients;
+    }
+
+    private synchronized Set<String> getExpectedClients(Set<String> selectedClients) {
+        return selectedClients != null ? selectedClients : new TreeSet<>(this.clientIds);
+    }
+
+    private void dropClient(String clientId, String reason) {
+        if (this.droppedClients.add(clientId)) {
+            logger.warn(String.format("The client with id %s is left out of the execution until it is restarted with --rejoin, %s", clientId, reason));
+        }
+    }
+
+    // with client rejoin, a failed client does not abort the execution and a restarted one asks to join it again
+    private boolean handleStatusMessage(ConsumerRecord<String, String> record) {
+        if (!record.key().contains(messageSeparator)) return false;
+        String clientId = record.key().split(messageSeparator)[1];
+        if (AbortWatcher.isAbortMessage(record)) {
+            dropClient(clientId, "it aborted: " + record.value());
+            return true;
+        }
+        if (!"client_join".equals(PayloadChunks.getHeader(record, "message_name"))) return false;
+        synchronized (this) {
+            if (!this.clientIds.contains(clientId)) {
+                logger.warn(String.format("Join message ignored, the client with id %s is not part of the execution", clientId));
+                return true;
+            }
+        }
+        dropClient(clientId, "it was restarted");  // its ongoing iteration is lost
+        this.joiningClients.add(clientId);
+        logger.info(String.format("The client with id %s asks to join the execution again", clientId));
+        return true;
+    }
+
+    @Override
+    public synchronized Set<String> admitJoiningClients(int iterationIndex) {
+        Set<String> admittedClients = new TreeSet<>(this.joiningClients);
+        if (admittedClients.isEmpty()) return admittedClients;
+        this.joiningClients.removeAll(admittedClients);
+        this.droppedClients.removeAll(admittedClients);
+        this.joinedClients.put(iterationIndex, admittedClients);
+        return admittedClients;
+    }
+
+    private synchronized Set<String> takeJoinedClients(int iterationIndex) {
+        Set<String> joinedClients = this.joinedClients.remove(iterationIndex);
+        return joinedClients == null ? Set.of() : joinedClients;
+    }
+
+    // null if every client trains in the iteration. Chosen once per iteration, by the broadcast or by the wait for its
+    // ended iteration messages, whichever comes first. The dropped clients are not chosen, and once some client has been
+    // dropped the selection is always explicit, otherwise a dropped client that is still running would keep training
+    private synchronized Set<String> getSelectedClients(int iterationIndex) {
+        if (iterationIndex == 0 || this.clientIds.size() < this.numberOfClients) return null;  // clients not known yet
+        if (!this.selectedClients.containsKey(iterationIndex)) {
+            Set<String> candidates = new TreeSet<>(this.clientIds);
+            candidates.removeAll(this.droppedClients);
+            Set<String> selectedClients = this.clientSelection.select(candidates);
+            if (selectedClients == null && !this.droppedClients.isEmpty()) selectedClients = candidates;
+            if (selectedClients != null) logger.debug(String.format("Clients selected for iteration %d: %s", iterationIndex, selectedClients));
+            this.selectedClients.put(iterationIndex, selectedClients);
+        }
+        return this.selectedClients.get(iterationIndex);
+    }
+
     @Override
-    public void sendStartIterationMessage(int iterationIndex, byte[] model) throws CommunicationException {
+    public JSONObject getClientLatencies() {
+        return this.clientLatencies.toJSON();
+    }
+
+    private void loadLatencyHistory() {
+        if (this.latencyHistoryPath.isEmpty() || !Files.exists(Paths.get(this.latencyHistoryPath))) return;
         try {
-            final ProducerRecord<String, byte[]> record = new ProducerRecord<>(
-                    this.executionId + "_models_to_clients",
-                    executionId,  // key
-                    model  // value
-            );
-            record.headers().add("message_name", "start_iteration".getBytes(StandardCharsets.UTF_8));
-            record.headers().add("iteration_index", String.valueOf(iterationIndex).getBytes(StandardCharsets.UTF_8));
-            this.modelsToClientsProducer.send(record).get();
+            this.clientLatencies.load(Paths.get(this.latencyHistoryPath));
+        } catch (IOException | JSONException e) {
+            logger.warn("Latency history not loaded, the deadlines start from the maximum iteration time: " + e.getMessage());
+        }
+    }
+
+    private void saveLatencyHistory() {
+        if (this.latencyHistoryPath.isEmpty()) return;
+        try {
+            this.clientLatencies.save(Paths.get(this.latencyHistoryPath));
+        } catch (IOException e) {
+            logger.warn("Latency history not saved: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, JSONObject> getClientProgress() {
+        Map<String, JSONObject> progress = new HashMap<>();
+        for (Map.Entry<String, ClientProgress> entry : this.clientProgress.entrySet()) progress.put(entry.getKey(), entry.getValue().progress());
+        return progress;
+    }
+
+    private void updateClientProgress(int iterationIndex, String clientId, ConsumerRecord<String, byte[]> record, Timestamp startTime) {
+        if (!String.valueOf(iterationIndex).equals(PayloadChunks.getHeader(record, "iteration_index"))) return;  // late message of a previous iteration
+        JSONObject progress;
+        try {
+            progress = new JSONObject(new String(record.value(), StandardCharsets.UTF_8));
+        } catch (JSONException | NullPointerException e) {
+            logger.debug("Incorrect progress message received from client with id " + clientId);
+            return;
+        }
+        long receivedTime = System.currentTimeMillis();
+        this.clientProgress.put(clientId, new ClientProgress(progress, receivedTime));
+        logger.debug(String.format("Progress of client with id %s in iteration %d: %s", clientId, iterationIndex, progress));
+
+        // predicted end of the round: the latest expected end of the clients that sent an estimation
+        long roundEnd = 0;
+        for (ClientProgress clientProgress : this.clientProgress.values()) roundEnd = Math.max(roundEnd, clientProgress.expectedEndTime());
+        if (roundEnd > 0) {
+            logger.debug(String.format("Iteration %d expected to end in %d seconds", iterationIndex, Math.max(0, roundEnd - receivedTime) / 1000));
+        }
+
+        long expectedEndTime = this.clientProgress.get(clientId).expectedEndTime();
+        if (expectedEndTime > startTime.getTime() + this.maxIterationTime) {
+            logger.warn(String.format("The client with id %s is not expected to end iteration %d before the maximum iteration time", clientId, iterationIndex));
+        }
+    }
+
+    @Override
+    public void sendStartIterationMessage(int iterationIndex, Payload model, boolean lastIteration) throws CommunicationException {
+        try {
+            if (model == null) {
+                // failure message
+                final ProducerRecord<String, byte[]> record = new ProducerRecord<>(
+                        this.executionId + "_models_to_clients",
+                        executionId,  // key
+                        null  // value
+                );
+                record.headers().add("message_name", "start_iteration".getBytes(StandardCharsets.UTF_8));
+                record.headers().add("iteration_index", String.valueOf(iterationIndex).getBytes(StandardCharsets.UTF_8));
+                this.modelsToClientsProducer.send(record).get();
+            } else {
+                if (model.size() > this.maxModelSize) {
+                    throw new CommunicationException(String.format("The model size (%d bytes) exceeds the maximum model size (%d bytes)", model.size(), this.maxModelSize), null);
+                }
+                Map<String, String> headers = new LinkedHashMap<>();
+                headers.put("message_name", "start_iteration");
+                headers.put("iteration_index", String.valueOf(iterationIndex));
+                Set<String> joinedClients = takeJoinedClients(iterationIndex);
+                if (!joinedClients.isEmpty()) headers.put("joined_clients", new JSONArray(joinedClients).toString());
+                if (lastIteration) {
+                    headers.put("last_iteration", "true");  // every client evaluates
+                } else {
+                    Set<String> selectedClients = getSelectedClients(iterationIndex + 1);
+                    if (selectedClients != null) headers.put("selected_clients", new JSONArray(selectedClients).toString());
+                }
+                this.broadcastTime = -1;
+                try {
+                    PayloadChunks.send(
+                            this.modelsToClientsProducer,
+                            this.executionId + "_models_to_clients",
+                            executionId,  // key
+                            model,  // value
+                            this.chunkSize,
+                            headers
+                    );
+                } finally {
+                    this.broadcastTime = System.currentTimeMillis();
+                }
+            }
             logger.debug("Start iteration message sent");
-        } catch (InterruptedException | ExecutionException e) {
+        } catch (InterruptedException | ExecutionException | IOException e) {
             throw new CommunicationException("Error while sending iteration start message", e);
         }
     }
 
+    @Override
+    public void sendAbortMessage(String reason) throws CommunicationException {
+        if (this.statusProducer == null) return;  // not initialized, no client is waiting for the manager yet
+        try {
+            this.statusProducer.send(AbortWatcher.createAbortMessage(this.executionId, reason)).get(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            logger.debug("Abort message sent");
+        } catch (InterruptedException | ExecutionException | TimeoutException | KafkaException e) {
+            throw new CommunicationException("Error while sending abort message", e);
+        }
+    }
+
+    @Override
+    public void startAbortWatcher(AbortListener abortListener) {
+        // from now on the status consumer is only used by the watcher
+        this.abortWatcher = new AbortWatcher(this.statusConsumer, this.executionId, this.executionId, messageSeparator, Duration.ofSeconds(this.pollTimeOut), abortListener, this.clientRejoin ? this::handleStatusMessage : null);
+        this.abortWatcher.start();
+    }
+
+    // the status consumer belongs to the abort watcher, the main thread only waits for models
+    @Override
+    public void wakeup() {
+        if (this.modelsToManagerConsumer != null) this.modelsToManagerConsumer.wakeup();
+    }
+
     @Override
     public void cleanEnvironment() throws CommunicationException {
-        this.modelsToClientsProducer.close();
-        this.modelsToManagerConsumer.close();
+        if (this.abortWatcher != null) this.abortWatcher.stop(CLOSE_TIMEOUT);
+        else if (this.statusConsumer != null) this.statusConsumer.close(CLOSE_TIMEOUT);
+        if (this.statusProducer != null) this.statusProducer.close(CLOSE_TIMEOUT);
+        if (this.modelsToClientsProducer != null) this.modelsToClientsProducer.close(CLOSE_TIMEOUT);
+        if (this.modelsToManagerConsumer != null) this.modelsToManagerConsumer.close(CLOSE_TIMEOUT);
+    }
+
+    private record ClientProgress(JSONObject progress, long receivedTime) {
+
+        // 0 when the client did not send an estimation
+        private long expectedEndTime() {
+            if (!this.progress.has("eta")) return 0;
+            return this.receivedTime + (long) (this.progress.optDouble("eta", 0) * 1000);
+        }
+
     }
 
     private void createProducers() {
@@ -213,20 +542,20 @@ public class KafkaServerCommunication implements ServerCommunicationAdapter {
         properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, this.bootstrap_servers_config);
         properties.put(ProducerConfig.CLIENT_ID_CONFIG, executionId + "_manager");
         properties.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "gzip");
-        properties.put(ProducerConfig.MAX_REQUEST_SIZE_CONFIG, this.maxModelSize + "");
+        properties.put(ProducerConfig.MAX_REQUEST_SIZE_CONFIG, this.maxRecordSize + "");
         properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
         properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
         this.modelsToClientsProducer = new KafkaProducer<>(properties);
     }
 
-    private void createConsumers() throws CommunicationException {
+    private void createModelsToManagerConsumer() throws CommunicationException {
         Properties properties = new Properties();
         properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, this.bootstrap_servers_config);
         properties.put(ConsumerConfig.GROUP_ID_CONFIG, this.executionId + "_manager");
         properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
         properties.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, this.maxIterationTime + "");
-        properties.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, this.maxModelSize + "");
+        properties.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, this.maxRecordSize + "");
         properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
         properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
         this.modelsToManagerConsumer = new KafkaConsumer<>(properties);
@@ -235,8 +564,10 @@ public class KafkaServerCommunication implements ServerCommunicationAdapter {
         if (partitionInfos == null || partitionInfos.size() == 0) throw new CommunicationException("Topic " + this.executionId + "_models_to_manager not already created", null);
         for (PartitionInfo partition : partitionInfos) partitions.add(new TopicPartition(partition.topic(), partition.partition()));
         this.modelsToManagerConsumer.assign(partitions);  // standalone consumer
+    }
 
-        properties = new Properties();
+    private void createStatusConsumer() throws CommunicationException {
+        Properties properties = new Properties();
         properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, this.bootstrap_servers_config);
         properties.put(ConsumerConfig.GROUP_ID_CONFIG, this.executionId + "_manager");
         properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
@@ -244,8 +575,8 @@ public class KafkaServerCommunication implements ServerCommunicationAdapter {
         properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
         properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
         this.statusConsumer = new KafkaConsumer<>(properties);
-        partitions = new ArrayList<>();
-        partitionInfos = this.statusConsumer.partitionsFor("status");
+        List<TopicPartition> partitions = new ArrayList<>();
+        List<PartitionInfo> partitionInfos = this.statusConsumer.partitionsFor("status");
         if (partitionInfos == null || partitionInfos.size() == 0) throw new CommunicationException("Topic status not already created", null);
         for (PartitionInfo partition : partitionInfos) partitions.add(new TopicPartition(partition.topic(), partition.partition()));
         this.statusConsumer.assign(partitions);  // standalone consumer
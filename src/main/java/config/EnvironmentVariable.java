@@ -51,6 +51,10 @@ public class EnvironmentVariable {
                     } catch (NumberFormatException e) {
                         throw new BadConfigurationException("Environment variable " + this.name + " should be a long");
                     }
+                case BOOLEAN:
+                    if (value.equalsIgnoreCase("true")) return true;
+                    if (value.equalsIgnoreCase("false")) return false;
+                    throw new BadConfigurationException("Environment variable " + this.name + " should be a boolean");
                 default:
                     // this code should never be executed
                     return null;
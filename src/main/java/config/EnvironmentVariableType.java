@@ -4,5 +4,6 @@ package config;
 public enum EnvironmentVariableType {
     STRING,
     INTEGER,
-    LONG
+    LONG,
+    BOOLEAN
 }
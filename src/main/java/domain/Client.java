@@ -1,14 +1,22 @@
 package domain;
 
 import ai_engine_adapter.linkage.AIEngineLinkageAdapter;
+import ai_engine_adapter.linkage.ModelExchange;
 import ai_engine_adapter.model_management.client.AIEngineClientModelManagementAdapter;
 import communication_adapter.client.ClientCommunicationAdapter;
+import communication_adapter.client.IterationStart;
 import exceptions.AIEngineException;
 import exceptions.CommunicationException;
 import exceptions.FailureEndSignal;
+import exceptions.InternalException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
 import platform_adapter.PlatformAdapter;
+import utils.Payload;
+
+import java.util.List;
+import java.util.concurrent.*;
 
 public class Client {
 
@@ -18,6 +26,17 @@ public class Client {
     private final AIEngineLinkageAdapter aiEngineLinkageAdapter;
     private final AIEngineClientModelManagementAdapter aiEngineModelManagementAdapter;
     private final PlatformAdapter platformAdapter;
+    private final Teardown teardown;
+    private volatile String abortReason = null;  // set when another participant aborts the execution
+    private volatile int currentIterationIndex = 0;  // iteration of the progress messages
+
+    // the ended iteration messages are sent in the background while the AI Engine files are cleaned
+    private final ExecutorService uploadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "upload");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Future<?> pendingUpload = CompletableFuture.completedFuture(null);
 
     public Client(
             ClientCommunicationAdapter communicationAdapter,
@@ -29,28 +48,70 @@ public class Client {
         this.aiEngineLinkageAdapter = aiEngineLinkageAdapter;
         this.aiEngineModelManagementAdapter = aiEngineModelManagementAdapter;
         this.platformAdapter = platformAdapter;
+        this.teardown = new Teardown(communicationAdapter, aiEngineLinkageAdapter, logger);
     }
 
     public void run(int numberOfIterations, String useCase, String failureEndpoint) throws FailureEndSignal {
+        run(numberOfIterations, useCase, failureEndpoint, false);
+    }
+
+    // rejoin -> the client was restarted and joins the ongoing execution from the current merged model
+    public void run(int numberOfIterations, String useCase, String failureEndpoint, boolean rejoin) throws FailureEndSignal {
         logger.info("Started");
+        this.teardown.registerShutdownHook(() -> {
+            if (this.abortReason == null) Common.sendAbortMessage(this.communicationAdapter, "The client was stopped", logger);
+        });  // the pod may be stopped at any time
 
         // initialization
 
         performInitialization(failureEndpoint);
-        sendInitializationMessageToManager(failureEndpoint);
-        waitForManagerToInitialize(failureEndpoint);
+        if (!rejoin) {
+            sendInitializationMessageToManager(failureEndpoint);
+            waitForManagerToInitialize(failureEndpoint);
+        } else {
+            sendJoinMessageToManager(failureEndpoint);
+        }
+        startAbortWatcher(failureEndpoint);
 
         // iteration training logic
 
         int iterationIndex;
-        for (iterationIndex = 0; iterationIndex < numberOfIterations; ++iterationIndex) {
-
-            logger.info(String.format("Started iteration %d", iterationIndex));
-            byte[] model = runAIEngine(iterationIndex, useCase, true, failureEndpoint);
+        int firstIterationIndex = 0;  // the directories are prepared counting from the first iteration of this client
+        boolean selected = true;  // every client takes part in the first iteration
+        boolean lastIteration = false;
+        prepareIteration(0, failureEndpoint);
+        if (rejoin) {
+            IterationStart iterationStart = waitForNextIterationStart(-1, failureEndpoint);
+            firstIterationIndex = iterationStart.iterationIndex();
+            selected = iterationStart.selected();
+            lastIteration = iterationStart.lastIteration();
             useCase = "training_from_pretrained_model";
+            logger.info(String.format("Joined the execution at iteration %d", firstIterationIndex));
+        }
+        for (iterationIndex = firstIterationIndex; iterationIndex < numberOfIterations && !lastIteration; ++iterationIndex) {
 
-            communicateIterationEnd(iterationIndex, model, failureEndpoint);
-            waitForNextIterationStart(iterationIndex, failureEndpoint);
+            this.currentIterationIndex = iterationIndex;
+            if (selected) {
+                logger.info(String.format("Started iteration %d", iterationIndex));
+                Payload model = runAIEngine(iterationIndex, useCase, true, failureEndpoint);
+                useCase = "training_from_pretrained_model";
+
+                startUpload(iterationIndex, model);
+                cleanDirectories(failureEndpoint);
+                prepareIteration(iterationIndex + 1 - firstIterationIndex, failureEndpoint);  // the next merged model is saved in the directories of the next iteration
+                awaitUpload(failureEndpoint);  // the manager does not start the next iteration without this model
+            } else {
+                // the merged model is replaced by the one of the next iteration
+                logger.info(String.format("Skipped iteration %d, not selected by the manager", iterationIndex));
+                cleanDirectories(failureEndpoint);
+                prepareIteration(iterationIndex + 1 - firstIterationIndex, failureEndpoint);
+            }
+            IterationStart iterationStart = waitForNextIterationStart(iterationIndex, failureEndpoint);
+            selected = iterationStart.selected();
+            lastIteration = iterationStart.lastIteration();
+            if (lastIteration && iterationIndex + 1 < numberOfIterations) {
+                logger.info(String.format("Training stopped by the manager after iteration %d", iterationIndex));
+            }
 
         }
 
@@ -58,8 +119,11 @@ public class Client {
 
         logger.info("Started evaluation");
         useCase = "evaluating_from_pretrained_model";
-        byte[] evaluationMetrics = runAIEngine(iterationIndex, useCase, false, failureEndpoint);
-        communicateIterationEnd(iterationIndex, evaluationMetrics, failureEndpoint);
+        this.currentIterationIndex = iterationIndex;
+        Payload evaluationMetrics = runAIEngine(iterationIndex, useCase, false, failureEndpoint);
+        startUpload(iterationIndex, evaluationMetrics);
+        cleanDirectories(failureEndpoint);
+        awaitUpload(failureEndpoint);
 
         // finalization
 
@@ -69,11 +133,19 @@ public class Client {
 
     private void performInitialization(String failureEndpoint) throws FailureEndSignal {
         try {
-            this.communicationAdapter.initialize();
-            this.aiEngineLinkageAdapter.initialize();
-            this.aiEngineModelManagementAdapter.initialize();
-            this.aiEngineLinkageAdapter.waitAIEngineToBeReady();
-        } catch (CommunicationException | AIEngineException e1) {
+            if (this.aiEngineModelManagementAdapter instanceof ModelExchange) {
+                this.aiEngineLinkageAdapter.setModelExchange((ModelExchange) this.aiEngineModelManagementAdapter);
+            }
+            this.aiEngineLinkageAdapter.setProgressListener(this::sendProgress);
+            Common.initializeConcurrently(List.of(
+                    this.communicationAdapter::initialize,
+                    this.aiEngineModelManagementAdapter::initialize,
+                    () -> {
+                        this.aiEngineLinkageAdapter.initialize();
+                        this.aiEngineLinkageAdapter.waitAIEngineToBeReady();
+                    }
+            ));
+        } catch (InternalException e1) {
             e1.print(logger);
             // send initialization message to all clients with failed status
             try {
@@ -97,6 +169,16 @@ public class Client {
         }
     }
 
+    private void sendJoinMessageToManager(String failureEndpoint) throws FailureEndSignal {
+        try {
+            logger.debug("Sending join message");
+            this.communicationAdapter.sendJoinMessage();
+        } catch (CommunicationException e) {
+            e.print(logger);
+            finishExecution(false, e.getMessage(), failureEndpoint);  // throws FailureEndSignal -> ends method execution
+        }
+    }
+
     private void waitForManagerToInitialize(String failureEndpoint) throws FailureEndSignal {
         try {
             logger.debug("Waiting for manager initialization message");
@@ -107,18 +189,16 @@ public class Client {
         }
     }
 
-    private byte[] runAIEngine(int iterationIndex, String useCase, boolean isModel, String failureEndpoint) throws FailureEndSignal {
-        byte[] bytes = null;
+    private Payload runAIEngine(int iterationIndex, String useCase, boolean isModel, String failureEndpoint) throws FailureEndSignal {
+        Payload bytes = null;
         try {
             logger.debug("Running AI Engine");
-            this.aiEngineLinkageAdapter.run(useCase);
+            this.aiEngineLinkageAdapter.run(useCase, this.aiEngineModelManagementAdapter.getRunParameters());
             if (isModel) bytes = this.aiEngineModelManagementAdapter.loadUnMergedModel();
             else bytes = this.aiEngineModelManagementAdapter.loadEvaluationMetrics();
-
-            logger.debug("Cleaning AI Engine files");
-            this.aiEngineModelManagementAdapter.cleanDirectories();
         } catch (AIEngineException e1) {
             e1.print(logger);
+            if (bytes != null) bytes.close();
             // send ended iteration message with failed status
             try {
                 logger.debug("Sending ended iteration message with failed status");
@@ -132,34 +212,101 @@ public class Client {
         return bytes;
     }
 
-    private void communicateIterationEnd(int iterationIndex, byte[] model, String failureEndpoint) throws FailureEndSignal {
+    // called from the AI Engine linkage while the AI Engine runs
+    private void sendProgress(JSONObject progress) {
         try {
-            logger.debug("Sending ended iteration message");
-            this.communicationAdapter.sendEndedIterationMessage(iterationIndex, model);
+            this.communicationAdapter.sendProgressMessage(this.currentIterationIndex, progress);
         } catch (CommunicationException e) {
+            logger.debug("Progress message not sent: " + e.getMessage());
+        }
+    }
+
+    private void prepareIteration(int iterationIndex, String failureEndpoint) throws FailureEndSignal {
+        try {
+            this.aiEngineModelManagementAdapter.prepareIteration(iterationIndex);
+        } catch (AIEngineException e) {
+            e.print(logger);
+            finishExecution(false, e.getMessage(), failureEndpoint);  // throws FailureEndSignal -> ends method execution
+        }
+    }
+
+    // the model is already packed, so the AI Engine files can be cleaned while it is sent
+    private void startUpload(int iterationIndex, Payload model) {
+        logger.debug("Sending ended iteration message");
+        this.pendingUpload = this.uploadExecutor.submit(() -> {
+            try {
+                this.communicationAdapter.sendEndedIterationMessage(iterationIndex, model);
+            } finally {
+                model.close();
+            }
+            return null;
+        });
+    }
+
+    private void awaitUpload(String failureEndpoint) throws FailureEndSignal {
+        try {
+            this.pendingUpload.get();
+        } catch (ExecutionException e) {
+            CommunicationException exception = e.getCause() instanceof CommunicationException
+                    ? (CommunicationException) e.getCause()
+                    : new CommunicationException("Error while sending ended iteration message", e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+            exception.print(logger);
+            finishExecution(false, exception.getMessage(), failureEndpoint);  // throws FailureEndSignal -> ends method execution
+        } catch (InterruptedException | CancellationException e) {
+            finishExecution(false, "Interrupted while sending ended iteration message", failureEndpoint);  // throws FailureEndSignal -> ends method execution
+        }
+    }
+
+    private void cleanDirectories(String failureEndpoint) throws FailureEndSignal {
+        try {
+            logger.debug("Cleaning AI Engine files");
+            this.aiEngineModelManagementAdapter.cleanDirectories();
+        } catch (AIEngineException e) {
             e.print(logger);
             finishExecution(false, e.getMessage(), failureEndpoint);  // throws FailureEndSignal -> ends method execution
         }
     }
 
-    private void waitForNextIterationStart(int iterationIndex, String failureEndpoint) throws FailureEndSignal {
+    private IterationStart waitForNextIterationStart(int iterationIndex, String failureEndpoint) throws FailureEndSignal {
+        IterationStart iterationStart = null;
         try {
             logger.debug("Waiting for the start of the following iteration");
-            this.communicationAdapter.waitForStartIterationMessage(iterationIndex + 1, this.aiEngineModelManagementAdapter);
+            iterationStart = this.communicationAdapter.waitForStartIterationMessage(iterationIndex + 1, this.aiEngineModelManagementAdapter);
         } catch (CommunicationException | AIEngineException e) {
             e.print(logger);
             finishExecution(false, e.getMessage(), failureEndpoint);  // throws FailureEndSignal -> ends method execution
         }
+        return iterationStart;
+    }
+
+    private void startAbortWatcher(String failureEndpoint) throws FailureEndSignal {
+        try {
+            logger.debug("Starting abort watcher");
+            this.communicationAdapter.startAbortWatcher(this::onAbort);
+        } catch (CommunicationException e) {
+            e.print(logger);
+            finishExecution(false, e.getMessage(), failureEndpoint);  // throws FailureEndSignal -> ends method execution
+        }
+    }
+
+    private void onAbort(String participant, String reason) {
+        this.abortReason = String.format("Execution aborted by %s: %s", participant, reason);
+        Common.abortExecution(this.abortReason, this.communicationAdapter, this.aiEngineLinkageAdapter, logger);
+        this.pendingUpload.cancel(true);
     }
 
     private void finishExecution(boolean success, String failureMessage, String failureEndpoint) throws FailureEndSignal {
+        if (!success) {
+            // a failure caused by the abort of another participant is not sent back
+            if (this.abortReason != null) failureMessage = this.abortReason;
+            else Common.sendAbortMessage(this.communicationAdapter, failureMessage, logger);
+        }
         Common.finishExecution(
                 success,
                 failureMessage,
                 failureEndpoint,
                 this.platformAdapter,
-                this.communicationAdapter,
-                this.aiEngineLinkageAdapter,
+                this.teardown,
                 logger
         );
     }
@@ -2,83 +2,91 @@ package domain;
 
 import ai_engine_adapter.linkage.AIEngineLinkageAdapter;
 import communication_adapter.CommunicationAdapter;
-import exceptions.AIEngineException;
 import exceptions.CommunicationException;
 import exceptions.FailureEndSignal;
-import exceptions.PlatformException;
+import exceptions.InternalException;
 import org.apache.logging.log4j.Logger;
 import platform_adapter.PlatformAdapter;
+import utils.ConcurrentTasks;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Common {
 
+    private static final long PLATFORM_TIMEOUT = 10;  // seconds
+
+    // the adapters are independent until the initialization messages are exchanged, so they are initialized together
+    public static void initializeConcurrently(List<ConcurrentTasks.Task<InternalException>> steps) throws InternalException {
+        try {
+            ConcurrentTasks.runAll("initialization", steps);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalException("Interrupted while initializing", e);
+        }
+    }
+
+    // tells the other participants that this one failed, so that they stop instead of waiting for it
+    public static void sendAbortMessage(CommunicationAdapter communicationAdapter, String reason, Logger logger) {
+        try {
+            logger.debug("Sending abort message");
+            communicationAdapter.sendAbortMessage(reason);
+        } catch (CommunicationException e) {
+            e.print(logger);
+        }
+    }
+
+    // another participant failed. The main thread may be blocked in the AI Engine run or waiting for a message, so both
+    // are made to fail and the execution is finished there as with any other failure
+    public static void abortExecution(
+            String abortReason,
+            CommunicationAdapter communicationAdapter,
+            AIEngineLinkageAdapter aiEngineLinkageAdapter,
+            Logger logger
+    ) {
+        logger.error(abortReason);
+        communicationAdapter.wakeup();
+        aiEngineLinkageAdapter.abortRuns();
+    }
+
     public static void finishExecution(
             boolean success,
             String failureMessage,
             String failureEndpoint,
             PlatformAdapter platformAdapter,
-            CommunicationAdapter communicationAdapter,
-            AIEngineLinkageAdapter aiEngineLinkageAdapter,
+            Teardown teardown,
             Logger logger
     ) throws FailureEndSignal {
         Exception exceptionsThrown = null;
+        List<Teardown.Step> extraSteps = new ArrayList<>();
 
         if (!success) {
             try {
-
-                // contact external endpoint if required
-                if (failureEndpoint != null) {
-                    try {
-                        logger.debug("Communicating execution end to the platform with status: " + success);
-                        platformAdapter.communicateExecutionFailure(failureEndpoint, failureMessage);
-                    } catch (PlatformException e) {
-                        e.print(logger);
-                        exceptionsThrown = e;
-                    }
-                }
-
                 // extract error message to file
                 Path path = Paths.get("error_message.txt");
                 byte[] strToBytes = failureMessage.getBytes();
                 Files.write(path, strToBytes);
-
             } catch (IOException e) {
                 logger.error(e.getMessage());
                 e.printStackTrace();
                 exceptionsThrown = e;
             }
-        }
-
-        try {
-            // clean communication adapter environment
-            logger.debug("Cleaning environment");
-            communicationAdapter.cleanEnvironment();
-        } catch (CommunicationException e) {
-            e.print(logger);
-            exceptionsThrown = e;
-        }
 
-        try {
-            // end AI Engine execution own server
-            logger.debug("Ending AI Engine execution own server");
-            aiEngineLinkageAdapter.clean();
-        } catch (AIEngineException e) {
-            e.print(logger);
-            exceptionsThrown = e;
+            // contact external endpoint if required, while the adapters are cleaned
+            if (failureEndpoint != null) {
+                extraSteps.add(new Teardown.Step("communicating execution failure", PLATFORM_TIMEOUT, () -> {
+                    logger.debug("Communicating execution end to the platform with status: " + success);
+                    platformAdapter.communicateExecutionFailure(failureEndpoint, failureMessage);
+                }));
+            }
         }
 
-        try {
-            // end AI Engine execution
-            logger.debug("Ending AI Engine execution");
-            aiEngineLinkageAdapter.end();
-        } catch (AIEngineException e) {
-            e.print(logger);
-            exceptionsThrown = e;
-        }
+        List<InternalException> teardownExceptions = teardown.run(extraSteps);
+        if (!teardownExceptions.isEmpty()) exceptionsThrown = teardownExceptions.get(teardownExceptions.size() - 1);
 
         if (exceptionsThrown != null || !success) {
             if (!success) throw new FailureEndSignal(failureMessage);
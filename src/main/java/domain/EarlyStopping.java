@@ -0,0 +1,60 @@
+package domain;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+// Ends the training before the number of iterations when a metric stops improving. The metric is a field of the
+// progress events of the AI Engine during the merge use case (e.g. the validation loss of the global model or the norm
+// of its update), the server cannot read the model itself
+public class EarlyStopping {
+
+    private static final Logger logger = LogManager.getLogger(EarlyStopping.class);
+
+    private final String metric;
+    private final boolean maximize;
+    private final double minDelta;  // smaller improvements do not count
+    private final int patience;  // iterations without improvement before stopping
+
+    private Double best = null;
+    private int iterationsWithoutImprovement = 0;
+    private volatile JSONObject lastProgress = null;  // of the current merge
+
+    public EarlyStopping(String metric, boolean maximize, double minDelta, int patience) {
+        this.metric = metric;
+        this.maximize = maximize;
+        this.minDelta = minDelta;
+        this.patience = patience;
+    }
+
+    // called from the AI Engine linkage while the merge runs
+    public void onProgress(JSONObject progress) {
+        if (progress.has(this.metric)) this.lastProgress = progress;
+    }
+
+    // before every merge
+    public void reset() {
+        this.lastProgress = null;
+    }
+
+    // after every merge, returns true if the training should stop
+    public boolean shouldStop(int iterationIndex) {
+        JSONObject progress = this.lastProgress;
+        double value = progress == null ? Double.NaN : progress.optDouble(this.metric, Double.NaN);
+        if (Double.isNaN(value)) {
+            logger.warn(String.format("The metric %s was not reported in iteration %d", this.metric, iterationIndex));
+            return false;
+        }
+
+        double improvement = this.best == null ? Double.POSITIVE_INFINITY : (this.maximize ? value - this.best : this.best - value);
+        if (improvement >= this.minDelta) {
+            this.best = value;
+            this.iterationsWithoutImprovement = 0;
+        } else {
+            ++this.iterationsWithoutImprovement;
+        }
+        logger.info(String.format("Iteration %d: %s = %s, best = %s, %d iterations without improvement", iterationIndex, this.metric, value, this.best, this.iterationsWithoutImprovement));
+        return this.iterationsWithoutImprovement >= this.patience;
+    }
+
+}
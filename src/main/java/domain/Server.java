@@ -1,14 +1,20 @@
 package domain;
 
 import ai_engine_adapter.linkage.AIEngineLinkageAdapter;
+import ai_engine_adapter.linkage.ModelExchange;
 import ai_engine_adapter.model_management.server.AIEngineServerModelManagementAdapter;
 import communication_adapter.server.ServerCommunicationAdapter;
 import exceptions.AIEngineException;
 import exceptions.CommunicationException;
 import exceptions.FailureEndSignal;
+import exceptions.InternalException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import platform_adapter.PlatformAdapter;
+import utils.Payload;
+
+import java.util.List;
+import java.util.concurrent.*;
 
 public class Server {
 
@@ -18,44 +24,86 @@ public class Server {
     private final AIEngineLinkageAdapter aiEngineLinkageAdapter;
     private final AIEngineServerModelManagementAdapter aiEngineModelManagementAdapter;
     private final PlatformAdapter platformAdapter;
+    private final Teardown teardown;
+    private volatile String abortReason = null;  // set when another participant aborts the execution
+    private final EarlyStopping earlyStopping;  // null -> every iteration is done
+
+    // the start iteration messages are sent in the background, one after the other, while the next round goes on
+    private final ExecutorService broadcastExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "broadcast");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Future<?> pendingBroadcast = CompletableFuture.completedFuture(null);
 
     public Server(
             ServerCommunicationAdapter communicationAdapter,
             AIEngineLinkageAdapter aiEngineLinkageAdapter,
             AIEngineServerModelManagementAdapter aiEngineModelManagementAdapter,
             PlatformAdapter platformAdapter
+    ) {
+        this(communicationAdapter, aiEngineLinkageAdapter, aiEngineModelManagementAdapter, platformAdapter, null);
+    }
+
+    public Server(
+            ServerCommunicationAdapter communicationAdapter,
+            AIEngineLinkageAdapter aiEngineLinkageAdapter,
+            AIEngineServerModelManagementAdapter aiEngineModelManagementAdapter,
+            PlatformAdapter platformAdapter,
+            EarlyStopping earlyStopping
     ) {
         this.communicationAdapter = communicationAdapter;
         this.aiEngineLinkageAdapter = aiEngineLinkageAdapter;
         this.aiEngineModelManagementAdapter = aiEngineModelManagementAdapter;
         this.platformAdapter = platformAdapter;
+        this.earlyStopping = earlyStopping;
+        this.teardown = new Teardown(communicationAdapter, aiEngineLinkageAdapter, logger);
     }
 
     public void run(int numberOfIterations, String useCase, String failureEndpoint) throws FailureEndSignal {
         logger.info("Started");
+        this.teardown.registerShutdownHook(() -> {
+            if (this.abortReason == null) Common.sendAbortMessage(this.communicationAdapter, "The manager was stopped", logger);
+        });  // the pod may be stopped at any time
 
         // initialization
 
         performInitialization(failureEndpoint);
         sendInitializationMessage(failureEndpoint);
         waitForAllClientInitializationMessages(failureEndpoint);
+        startAbortWatcher(failureEndpoint);
 
         // iteration training logic
 
+        // every round: ingestion -> merge -> broadcast and cleanup. The broadcast of round i is acknowledged while the
+        // cleanup of round i and the ingestion of round i + 1 go on
         int iterationIndex;
+        cleanMergedModel(0, failureEndpoint);  // leftovers of previous executions
         for (iterationIndex = 0; iterationIndex < numberOfIterations; ++iterationIndex) {
 
             logger.info(String.format("Started iteration %d", iterationIndex));
+            prepareIteration(iterationIndex, failureEndpoint);
             waitForAllEndedIterationMessages(iterationIndex, true, failureEndpoint);
+            admitJoiningClients(iterationIndex, failureEndpoint);
+
+            Payload model = runAIEngine(iterationIndex, useCase, failureEndpoint);
+            boolean stopEarly = iterationIndex + 1 < numberOfIterations && this.earlyStopping != null && this.earlyStopping.shouldStop(iterationIndex);
+            startBroadcast(iterationIndex, model, stopEarly || iterationIndex + 1 == numberOfIterations, failureEndpoint);
+            cleanUnMergedModels(iterationIndex, failureEndpoint);
+            cleanMergedModel(iterationIndex, failureEndpoint);
 
-            byte[] model = runAIEngine(iterationIndex, useCase, failureEndpoint);
-            sendStartIterationMessage(iterationIndex, model, failureEndpoint);
+            if (stopEarly) {
+                logger.info(String.format("Training stopped after iteration %d, the model does not improve", iterationIndex));
+                ++iterationIndex;
+                break;
+            }
 
         }
 
         // evaluation logic
 
         waitForAllEndedIterationMessages(iterationIndex, false, failureEndpoint);
+        awaitBroadcast(failureEndpoint);
 
         // finalization
 
@@ -66,11 +114,19 @@ public class Server {
 
     private void performInitialization(String failureEndpoint) throws FailureEndSignal {
         try {
-            this.communicationAdapter.initialize();
-            this.aiEngineLinkageAdapter.initialize();
-            this.aiEngineModelManagementAdapter.initialize();
-            this.aiEngineLinkageAdapter.waitAIEngineToBeReady();
-        } catch (CommunicationException | AIEngineException e1) {
+            if (this.aiEngineModelManagementAdapter instanceof ModelExchange) {
+                this.aiEngineLinkageAdapter.setModelExchange((ModelExchange) this.aiEngineModelManagementAdapter);
+            }
+            if (this.earlyStopping != null) this.aiEngineLinkageAdapter.setProgressListener(this.earlyStopping::onProgress);
+            Common.initializeConcurrently(List.of(
+                    this.communicationAdapter::initialize,
+                    this.aiEngineModelManagementAdapter::initialize,
+                    () -> {
+                        this.aiEngineLinkageAdapter.initialize();
+                        this.aiEngineLinkageAdapter.waitAIEngineToBeReady();
+                    }
+            ));
+        } catch (InternalException e1) {
             e1.print(logger);
             try {
                 // send initialization message to all clients with failed status
@@ -104,35 +160,61 @@ public class Server {
         }
     }
 
+    private void prepareIteration(int iterationIndex, String failureEndpoint) throws FailureEndSignal {
+        try {
+            this.aiEngineModelManagementAdapter.prepareIteration(iterationIndex);
+        } catch (AIEngineException e) {
+            e.print(logger);
+            finishExecution(false, e.getMessage(), failureEndpoint);  // throws FailureEndSignal -> ends method execution
+        }
+    }
+
     private void waitForAllEndedIterationMessages(int iterationIndex, boolean isModel, String failureEndpoint) throws FailureEndSignal {
         try {
             logger.debug("Waiting for all ended iteration messages");
             this.communicationAdapter.waitForAllEndedIterationMessages(iterationIndex, isModel, this.aiEngineModelManagementAdapter);
+            if (isModel) logger.debug(String.format("Client latencies after iteration %d: %s", iterationIndex, this.communicationAdapter.getClientLatencies()));
         } catch (CommunicationException | AIEngineException e) {
             e.print(logger);
-            finishExecution(false, e.getMessage(), failureEndpoint);  // throws FailureEndSignal -> ends method execution
+            // the clients can not send their models if they did not receive the previous one
+            CommunicationException broadcastException = getBroadcastException();
+            String failureMessage = broadcastException != null ? broadcastException.getMessage() : e.getMessage();
+            finishExecution(false, failureMessage, failureEndpoint);  // throws FailureEndSignal -> ends method execution
         }
     }
 
-    private byte[] runAIEngine(int iterationIndex, String useCase, String failureEndpoint) throws FailureEndSignal {
-        byte[] model = null;
+    // the clients that join again receive the model merged in this iteration, complete since their files are lost
+    private void admitJoiningClients(int iterationIndex, String failureEndpoint) throws FailureEndSignal {
         try {
-            this.aiEngineModelManagementAdapter.cleanMergedModel();
+            for (String clientId : this.communicationAdapter.admitJoiningClients(iterationIndex)) {
+                logger.info(String.format("The client with id %s joins the execution again after iteration %d", clientId, iterationIndex));
+                this.aiEngineModelManagementAdapter.forgetClient(clientId);
+            }
+        } catch (AIEngineException e) {
+            e.print(logger);
+            finishExecution(false, e.getMessage(), failureEndpoint);  // throws FailureEndSignal -> ends method execution
+        }
+    }
 
+    private Payload runAIEngine(int iterationIndex, String useCase, String failureEndpoint) throws FailureEndSignal {
+        Payload model = null;
+        try {
             logger.debug("Running the AI Engine");
-            this.aiEngineLinkageAdapter.run(useCase);
+            if (this.earlyStopping != null) this.earlyStopping.reset();
+            this.aiEngineLinkageAdapter.run(useCase, this.aiEngineModelManagementAdapter.getRunParameters());
             model = this.aiEngineModelManagementAdapter.loadMergedModel();
-
-            logger.debug("Cleaning AI Engine files");
-            this.aiEngineModelManagementAdapter.cleanUnMergedModels();
         } catch (AIEngineException e1) {
             e1.print(logger);
-            // send start iteration message to all clients with null model
+            if (model != null) model.close();
+            // send start iteration message to all clients with null model, after the pending one
             try {
                 logger.debug("Sending start iteration message with null value");
-                this.communicationAdapter.sendStartIterationMessage(iterationIndex, null);
-            } catch (CommunicationException e2) {
-                e2.print(logger);
+                this.broadcastExecutor.submit(() -> {
+                    this.communicationAdapter.sendStartIterationMessage(iterationIndex, null);
+                    return null;
+                }).get(Teardown.SHUTDOWN_BUDGET, TimeUnit.SECONDS);
+            } catch (ExecutionException | InterruptedException | TimeoutException e2) {
+                logger.error("Error while sending start iteration message with null value: " + e2.getMessage());
             } finally {
                 finishExecution(false, e1.getMessage(), failureEndpoint);  // throws FailureEndSignal -> ends method execution
             }
@@ -140,24 +222,101 @@ public class Server {
         return model;
     }
 
-    private void sendStartIterationMessage(int iterationIndex, byte[] model, String failureEndpoint) throws FailureEndSignal {
+    // the previous broadcast has been acknowledged while this round was ingested and merged
+    private void startBroadcast(int iterationIndex, Payload model, boolean lastIteration, String failureEndpoint) throws FailureEndSignal {
+        awaitBroadcast(failureEndpoint);
+        logger.debug("Sending start iteration message");
+        this.pendingBroadcast = this.broadcastExecutor.submit(() -> {
+            try {
+                this.communicationAdapter.sendStartIterationMessage(iterationIndex, model, lastIteration);
+            } finally {
+                model.close();
+            }
+            return null;
+        });
+    }
+
+    private void awaitBroadcast(String failureEndpoint) throws FailureEndSignal {
+        try {
+            this.pendingBroadcast.get();
+        } catch (ExecutionException e) {
+            CommunicationException exception = toCommunicationException(e);
+            exception.print(logger);
+            finishExecution(false, exception.getMessage(), failureEndpoint);  // throws FailureEndSignal -> ends method execution
+        } catch (InterruptedException | CancellationException e) {
+            finishExecution(false, "Interrupted while sending start iteration message", failureEndpoint);  // throws FailureEndSignal -> ends method execution
+        }
+    }
+
+    // null if the last broadcast did not fail or is still in progress
+    private CommunicationException getBroadcastException() {
+        if (!this.pendingBroadcast.isDone()) return null;
         try {
-            logger.debug("Sending start iteration message");
-            this.communicationAdapter.sendStartIterationMessage(iterationIndex, model);
+            this.pendingBroadcast.get();
+            return null;
+        } catch (ExecutionException e) {
+            return toCommunicationException(e);
+        } catch (InterruptedException | CancellationException e) {
+            return null;
+        }
+    }
+
+    private static CommunicationException toCommunicationException(ExecutionException e) {
+        if (e.getCause() instanceof CommunicationException) return (CommunicationException) e.getCause();
+        Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        return new CommunicationException("Error while sending start iteration message", cause);
+    }
+
+    // out of the critical path: the broadcast is already in progress
+    private void cleanUnMergedModels(int iterationIndex, String failureEndpoint) throws FailureEndSignal {
+        try {
+            logger.debug("Cleaning AI Engine files of iteration " + iterationIndex);
+            this.aiEngineModelManagementAdapter.cleanUnMergedModels();
+        } catch (AIEngineException e) {
+            e.print(logger);
+            finishExecution(false, e.getMessage(), failureEndpoint);  // throws FailureEndSignal -> ends method execution
+        }
+    }
+
+    // the merged model has already been loaded, so its directory is ready for the next merge
+    private void cleanMergedModel(int iterationIndex, String failureEndpoint) throws FailureEndSignal {
+        try {
+            logger.debug("Cleaning merged model of iteration " + iterationIndex);
+            this.aiEngineModelManagementAdapter.cleanMergedModel();
+        } catch (AIEngineException e) {
+            e.print(logger);
+            finishExecution(false, e.getMessage(), failureEndpoint);  // throws FailureEndSignal -> ends method execution
+        }
+    }
+
+    private void startAbortWatcher(String failureEndpoint) throws FailureEndSignal {
+        try {
+            logger.debug("Starting abort watcher");
+            this.communicationAdapter.startAbortWatcher(this::onAbort);
         } catch (CommunicationException e) {
             e.print(logger);
             finishExecution(false, e.getMessage(), failureEndpoint);  // throws FailureEndSignal -> ends method execution
         }
     }
 
+    private void onAbort(String participant, String reason) {
+        this.abortReason = String.format("Execution aborted by %s: %s", participant, reason);
+        Common.abortExecution(this.abortReason, this.communicationAdapter, this.aiEngineLinkageAdapter, logger);
+        this.pendingBroadcast.cancel(true);
+    }
+
     private void finishExecution(boolean success, String failureMessage, String failureEndpoint) throws FailureEndSignal {
+        if (!success) {
+            // a failure caused by the abort of another participant is not sent back
+            if (this.abortReason != null) failureMessage = this.abortReason;
+            else Common.sendAbortMessage(this.communicationAdapter, failureMessage, logger);
+        }
         Common.finishExecution(
                 success,
                 failureMessage,
                 failureEndpoint,
                 this.platformAdapter,
-                this.communicationAdapter,
-                this.aiEngineLinkageAdapter,
+                this.teardown,
                 logger
         );
     }
@@ -0,0 +1,141 @@
+package domain;
+
+import ai_engine_adapter.linkage.AIEngineLinkageAdapter;
+import communication_adapter.CommunicationAdapter;
+import exceptions.InternalException;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+// Releases the resources of the execution. The steps are independent, so they run concurrently, each one with its own
+// deadline and all of them within SHUTDOWN_BUDGET. It runs once: from finishExecution or, if the process is stopped
+// before, from the JVM shutdown hook
+public class Teardown {
+
+    public static final long SHUTDOWN_BUDGET = 30;  // seconds
+    private static final long COMMUNICATION_TIMEOUT = 10;  // seconds
+
+    private final CommunicationAdapter communicationAdapter;
+    private final AIEngineLinkageAdapter aiEngineLinkageAdapter;
+    private final Logger logger;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private boolean started = false;
+
+    public interface Action {
+        void run() throws InternalException;
+    }
+
+    // timeout in seconds
+    public record Step(String name, long timeout, Action action) {
+    }
+
+    public Teardown(CommunicationAdapter communicationAdapter, AIEngineLinkageAdapter aiEngineLinkageAdapter, Logger logger) {
+        this.communicationAdapter = communicationAdapter;
+        this.aiEngineLinkageAdapter = aiEngineLinkageAdapter;
+        this.logger = logger;
+    }
+
+    // the notification runs only if the execution had not finished (e.g. abort message to the other participants)
+    public void registerShutdownHook(Runnable notification) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (!hasStarted()) notification.run();
+            run(List.of());
+        }, "teardown"));
+    }
+
+    public synchronized boolean hasStarted() {
+        return this.started;
+    }
+
+    // the extra steps run together with the cleaning of the adapters.
+    // Returns the exceptions thrown by the steps, none if the teardown had already run
+    public List<InternalException> run(List<Step> extraSteps) {
+        boolean alreadyStarted;
+        synchronized (this) {
+            alreadyStarted = this.started;
+            this.started = true;
+        }
+        if (alreadyStarted) {
+            // e.g. the shutdown hook while finishExecution runs
+            awaitFinished();
+            return List.of();
+        }
+
+        List<Step> steps = new ArrayList<>(extraSteps);
+        steps.add(new Step("cleaning environment", COMMUNICATION_TIMEOUT, () -> {
+            this.logger.debug("Cleaning environment");
+            this.communicationAdapter.cleanEnvironment();
+        }));
+        steps.add(new Step("ending AI Engine execution", SHUTDOWN_BUDGET, () -> {
+            try {
+                this.logger.debug("Ending AI Engine execution");
+                this.aiEngineLinkageAdapter.end();
+            } finally {
+                // own server stopped after the AI Engine so that it can notify it stopped, even if the end failed
+                this.logger.debug("Ending AI Engine execution own server");
+                this.aiEngineLinkageAdapter.clean();
+            }
+        }));
+
+        ExecutorService executor = Executors.newFixedThreadPool(steps.size(), runnable -> {
+            Thread thread = new Thread(runnable, "teardown-step");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<InternalException> exceptions = new ArrayList<>();
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Step step : steps) {
+                futures.add(executor.submit(() -> {
+                    step.action().run();
+                    return null;
+                }));
+            }
+
+            long startTime = System.nanoTime();
+            long budgetDeadline = startTime + TimeUnit.SECONDS.toNanos(SHUTDOWN_BUDGET);
+            for (int i = 0; i < steps.size(); ++i) {
+                Step step = steps.get(i);
+                long stepDeadline = Math.min(startTime + TimeUnit.SECONDS.toNanos(step.timeout()), budgetDeadline);
+                InternalException exception = await(step, futures.get(i), Math.max(0, stepDeadline - System.nanoTime()));
+                if (exception != null) {
+                    exception.print(this.logger);
+                    exceptions.add(exception);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            this.finished.countDown();
+        }
+        return exceptions;
+    }
+
+    private InternalException await(Step step, Future<Void> future, long timeout) {
+        try {
+            future.get(timeout, TimeUnit.NANOSECONDS);
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InternalException) return (InternalException) e.getCause();
+            Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            return new InternalException("Error while " + step.name(), cause);
+        } catch (TimeoutException e) {
+            future.cancel(true);  // interrupts the step, its thread is a daemon if it does not stop
+            return new InternalException("Error while " + step.name() + ". It did not finish before its deadline", null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return new InternalException("Interrupted while " + step.name(), e);
+        }
+    }
+
+    private void awaitFinished() {
+        try {
+            this.finished.await(SHUTDOWN_BUDGET, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+package utils;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+// Empties directories out of the critical path: their contents are moved atomically to a hidden trash directory
+// next to them (same filesystem, so it is a rename) and deleted afterwards in parallel by a worker pool
+public class BackgroundDeleter {
+
+    private static final Logger logger = LogManager.getLogger(BackgroundDeleter.class);
+
+    private final ForkJoinPool pool;
+    private final long minFreeSpace;  // bytes
+    private final Queue<ForkJoinTask<?>> pendingDeletions = new ConcurrentLinkedQueue<>();
+    private final Set<Path> purgedTrashDirectories = ConcurrentHashMap.newKeySet();
+
+    // workers <= 0 -> directories are cleaned synchronously
+    public BackgroundDeleter(int workers, long minFreeSpace) {
+        this.pool = workers > 0 ? new ForkJoinPool(workers) : null;
+        this.minFreeSpace = minFreeSpace;
+    }
+
+    // leaves the directory empty, the previous contents are deleted in the background
+    public void cleanDirectory(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) throw new IllegalArgumentException(directory + " is not a directory");
+        if (this.pool == null) {
+            FileUtils.cleanDirectory(directory.toFile());
+            return;
+        }
+
+        Path trashDirectory = getTrashDirectory(directory);
+        Files.createDirectories(trashDirectory);
+        if (this.purgedTrashDirectories.add(trashDirectory)) {
+            // leftovers of previous executions
+            try (Stream<Path> stream = Files.list(trashDirectory)) {
+                stream.forEach(this::deleteInBackground);
+            }
+        }
+
+        Path trashEntry = trashDirectory.resolve(UUID.randomUUID().toString());
+        boolean moved;
+        try {
+            Files.move(directory, trashEntry, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } catch (IOException e) {
+            moved = false;
+        }
+        if (moved) {
+            Files.createDirectory(directory);
+        } else {
+            // the directory itself can not be moved (e.g. it is a mount point), move its contents instead
+            Files.createDirectory(trashEntry);
+            List<Path> children;
+            try (Stream<Path> stream = Files.list(directory)) {
+                children = stream.toList();
+            }
+            for (Path child : children) {
+                Files.move(child, trashEntry.resolve(child.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        deleteInBackground(trashEntry);
+    }
+
+    // disk-pressure guard, to be called before writing to directory. Waits for the pending deletions only if space is low
+    public void awaitFreeSpace(Path directory) throws IOException {
+        if (this.minFreeSpace <= 0 || this.pendingDeletions.isEmpty()) return;
+
+        Path existingPath = directory.toAbsolutePath();
+        while (existingPath != null && !Files.exists(existingPath)) existingPath = existingPath.getParent();
+        if (existingPath == null) return;
+
+        long usableSpace = Files.getFileStore(existingPath).getUsableSpace();
+        if (usableSpace >= this.minFreeSpace) return;
+
+        logger.debug(String.format("Low disk space (%d bytes), waiting for pending deletions", usableSpace));
+        awaitPendingDeletions();
+    }
+
+    public void awaitPendingDeletions() {
+        ForkJoinTask<?> task;
+        while ((task = this.pendingDeletions.peek()) != null) {
+            task.quietlyJoin();
+            this.pendingDeletions.remove(task);
+        }
+    }
+
+    private void deleteInBackground(Path path) {
+        ForkJoinTask<?> task = this.pool.submit(ForkJoinTask.adapt(() -> {
+            try {
+                new DeleteTask(path).invoke();
+            } catch (UncheckedIOException e) {
+                logger.warn(String.format("Error while deleting %s in background: %s", path, e.getCause().getMessage()));
+            }
+        }));
+        this.pendingDeletions.add(task);
+        this.pendingDeletions.removeIf(ForkJoinTask::isDone);
+    }
+
+    private static Path getTrashDirectory(Path directory) {
+        Path absoluteDirectory = directory.toAbsolutePath().normalize();
+        // hidden so that it is never included when packing a model
+        return absoluteDirectory.resolveSibling("." + absoluteDirectory.getFileName() + "_trash");
+    }
+
+    // deletes a tree forking one subtask per subdirectory
+    private static class DeleteTask extends RecursiveAction {
+
+        private final Path path;
+
+        DeleteTask(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (Files.isDirectory(this.path, LinkOption.NOFOLLOW_LINKS)) {
+                    List<DeleteTask> subtasks = new ArrayList<>();
+                    try (Stream<Path> stream = Files.list(this.path)) {
+                        for (Path child : (Iterable<Path>) stream::iterator) {
+                            if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) subtasks.add(new DeleteTask(child));
+                            else Files.deleteIfExists(child);
+                        }
+                    }
+                    invokeAll(subtasks);
+                }
+                Files.deleteIfExists(this.path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,47 @@
+package utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Pool of fixed-size direct buffers used to keep the model payloads outside the Java heap
+public class BufferPool {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;  // bytes
+    private static final int DEFAULT_MAX_POOLED_BUFFERS = 64;
+    private static final BufferPool defaultPool = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED_BUFFERS);
+
+    private final int bufferSize;
+    private final int maxPooledBuffers;
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger numberOfPooledBuffers = new AtomicInteger(0);
+
+    public BufferPool(int bufferSize, int maxPooledBuffers) {
+        this.bufferSize = bufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    public static BufferPool getDefault() {
+        return defaultPool;
+    }
+
+    public int getBufferSize() {
+        return this.bufferSize;
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = this.buffers.poll();
+        if (buffer == null) return ByteBuffer.allocateDirect(this.bufferSize);
+        this.numberOfPooledBuffers.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != this.bufferSize || !buffer.isDirect()) return;
+        // buffers above the limit are left to the garbage collector
+        if (this.numberOfPooledBuffers.incrementAndGet() <= this.maxPooledBuffers) this.buffers.offer(buffer);
+        else this.numberOfPooledBuffers.decrementAndGet();
+    }
+
+}
@@ -0,0 +1,64 @@
+package utils;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+// Runs independent tasks (e.g. the initialization of different adapters) each one on its own thread and waits for all
+// of them. The first failure cancels the remaining tasks and is thrown as it is, once the cancelled tasks have stopped
+public class ConcurrentTasks {
+
+    public interface Task<E extends Exception> {
+        void run() throws E;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E extends Exception> void runAll(String name, List<Task<E>> tasks) throws E, InterruptedException {
+        if (tasks.size() == 1) {
+            tasks.get(0).run();
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size(), runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+            for (Task<E> task : tasks) {
+                completionService.submit(() -> {
+                    task.run();
+                    return null;
+                });
+            }
+
+            for (int i = 0; i < tasks.size(); ++i) {
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                    if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                    throw (E) e.getCause();  // only E is declared by the tasks
+                }
+            }
+        } finally {
+            cancelAndWait(executor);
+        }
+    }
+
+    // interrupts the tasks still running and waits for them, so that nothing they are creating (e.g. a connection) is
+    // left behind unreferenced and the caller sees everything they set. The tasks are bounded by their own timeouts
+    private static void cancelAndWait(ExecutorService executor) {
+        executor.shutdownNow();
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+}
@@ -0,0 +1,290 @@
+package utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+// Local store where every model file is kept once, keyed by its SHA-256 hash.
+// Models are transferred as a manifest (relative path -> hash) plus only the blobs the peer does not already have,
+// and they are materialized again with hard links to the stored blobs
+public class ContentAddressedStore {
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String MANIFEST_ENTRY = "manifest.json";
+    private static final String BLOBS_ENTRY = "blobs/";
+
+    private final Path blobsDirectory;
+    private final Path incomingDirectory;
+    private final FileHandOff.Mode ingestMode;
+    private final Map<Path, IngestedFile> ingestedFiles = new ConcurrentHashMap<>();
+
+    public ContentAddressedStore(Path storeDirectory) throws IOException {
+        this(storeDirectory, FileHandOff.Mode.COPY);
+    }
+
+    // with LINK the packed files become blobs through hard links instead of copies. Blobs are read-only,
+    // so the linked files are read-only too and must be deleted instead of overwritten in place
+    public ContentAddressedStore(Path storeDirectory, FileHandOff.Mode ingestMode) throws IOException {
+        this.ingestMode = ingestMode;
+        this.blobsDirectory = storeDirectory.resolve("blobs");
+        this.incomingDirectory = storeDirectory.resolve("incoming");
+        Files.createDirectories(this.blobsDirectory);
+        Files.createDirectories(this.incomingDirectory);
+    }
+
+    // packs the model directory writing the manifest and the blobs not included in knownBlobs, returns the hashes of the model
+    public Set<String> pack(Path modelDirectory, Set<String> knownBlobs, OutputStream outputStream) throws IOException {
+        JSONObject manifest = ingest(modelDirectory);
+        Set<String> hashes = getHashes(manifest);
+
+        try (ZipOutputStream zipOut = new ZipOutputStream(outputStream)) {
+            zipOut.putNextEntry(new ZipEntry(MANIFEST_ENTRY));
+            zipOut.write(manifest.toString().getBytes(StandardCharsets.UTF_8));
+            zipOut.closeEntry();
+
+            for (String hash : hashes) {
+                if (knownBlobs.contains(hash)) continue;
+                zipOut.putNextEntry(new ZipEntry(BLOBS_ENTRY + hash));
+                Files.copy(getBlobPath(hash), zipOut);
+                zipOut.closeEntry();
+            }
+        }
+
+        return hashes;
+    }
+
+    // stores the received blobs and materializes the model described by the manifest, returns the hashes of the model
+    public Set<String> unpack(InputStream inputStream, Path destDirectory) throws IOException {
+        JSONObject manifest = null;
+
+        try (ZipInputStream zis = new ZipInputStream(inputStream)) {
+            ZipEntry zipEntry = zis.getNextEntry();
+            while (zipEntry != null) {
+                if (MANIFEST_ENTRY.equals(zipEntry.getName())) {
+                    try {
+                        manifest = new JSONObject(new String(zis.readAllBytes(), StandardCharsets.UTF_8));
+                    } catch (JSONException e) {
+                        throw new IOException("Incorrect model manifest", e);
+                    }
+                } else if (zipEntry.getName().startsWith(BLOBS_ENTRY)) {
+                    storeBlob(zipEntry.getName().substring(BLOBS_ENTRY.length()), zis);
+                } else {
+                    throw new IOException("Unexpected entry in model archive: " + zipEntry.getName());
+                }
+                zipEntry = zis.getNextEntry();
+            }
+        }
+
+        if (manifest == null) throw new IOException("Model archive without manifest");
+        materialize(manifest, destDirectory);
+        return getHashes(manifest);
+    }
+
+    // stores the file as a blob and returns its hash. The hash is reused while the file size and modification time do not change,
+    // so files can be ingested in advance (e.g. while the AI Engine is still writing the rest of the model)
+    public String ingestFile(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        IngestedFile ingestedFile = this.ingestedFiles.get(path.toAbsolutePath());
+        if (ingestedFile != null && ingestedFile.size == attributes.size() && ingestedFile.lastModifiedTime.equals(attributes.lastModifiedTime())
+                && Files.exists(getBlobPath(ingestedFile.hash))) {
+            return ingestedFile.hash;
+        }
+
+        String hash;
+        if (this.ingestMode == FileHandOff.Mode.LINK) {
+            hash = hash(path);
+            if (!Files.exists(getBlobPath(hash))) {
+                Path temporaryFile = this.incomingDirectory.resolve("ingest" + UUID.randomUUID());
+                try {
+                    FileHandOff.handOff(path, temporaryFile, this.ingestMode);
+                    moveToBlobs(temporaryFile, hash);
+                } finally {
+                    Files.deleteIfExists(temporaryFile);
+                }
+            }
+        } else {
+            Path temporaryFile = Files.createTempFile(this.incomingDirectory, "ingest", null);
+            try {
+                try (InputStream inputStream = Files.newInputStream(path)) {
+                    hash = copyAndHash(inputStream, temporaryFile);
+                }
+                moveToBlobs(temporaryFile, hash);
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+
+        this.ingestedFiles.put(path.toAbsolutePath(), new IngestedFile(attributes.size(), attributes.lastModifiedTime(), hash));
+        return hash;
+    }
+
+    // deletes the blobs not included in liveBlobs, e.g. those of the models of previous iterations. The materialized
+    // models keep their files, they are hard links. Returns the number of deleted blobs
+    public int prune(Set<String> liveBlobs) throws IOException {
+        List<Path> blobs;
+        try (Stream<Path> stream = Files.walk(this.blobsDirectory)) {
+            blobs = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        int numberOfDeletedBlobs = 0;
+        for (Path blob : blobs) {
+            if (liveBlobs.contains(blob.getFileName().toString())) continue;
+            if (Files.deleteIfExists(blob)) ++numberOfDeletedBlobs;
+        }
+        this.ingestedFiles.values().removeIf(ingestedFile -> !liveBlobs.contains(ingestedFile.hash));
+        return numberOfDeletedBlobs;
+    }
+
+    private JSONObject ingest(Path modelDirectory) throws IOException {
+        JSONArray files = new JSONArray();
+
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(modelDirectory)) {
+            paths = stream
+                    .filter(Files::isRegularFile)
+                    .filter(path -> !isHidden(modelDirectory, path))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        for (Path path : paths) {
+            String hash = ingestFile(path);
+
+            JSONObject file = new JSONObject();
+            file.put("path", toManifestPath(modelDirectory.relativize(path)));
+            file.put("hash", hash);
+            file.put("size", Files.size(path));
+            files.put(file);
+        }
+
+        JSONObject manifest = new JSONObject();
+        manifest.put("files", files);
+        return manifest;
+    }
+
+    private void storeBlob(String expectedHash, InputStream inputStream) throws IOException {
+        Path temporaryFile = Files.createTempFile(this.incomingDirectory, "blob", null);
+        try {
+            String hash = copyAndHash(inputStream, temporaryFile);
+            if (!hash.equals(expectedHash)) throw new IOException("Corrupted blob received: " + expectedHash);
+            moveToBlobs(temporaryFile, hash);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private void materialize(JSONObject manifest, Path destDirectory) throws IOException {
+        Path normalizedDestDirectory = destDirectory.toAbsolutePath().normalize();
+        Files.createDirectories(normalizedDestDirectory);
+
+        try {
+            JSONArray files = manifest.getJSONArray("files");
+            for (int i = 0; i < files.length(); ++i) {
+                JSONObject file = files.getJSONObject(i);
+                String hash = file.getString("hash");
+                Path blob = getBlobPath(hash);
+                if (!Files.exists(blob)) throw new IOException("Missing blob " + hash + " for file " + file.getString("path"));
+
+                Path target = normalizedDestDirectory.resolve(file.getString("path")).normalize();
+                if (!target.startsWith(normalizedDestDirectory) || target.equals(normalizedDestDirectory)) {
+                    throw new IOException("Entry is outside of the target dir: " + file.getString("path"));
+                }
+                Files.createDirectories(target.getParent());
+                Files.deleteIfExists(target);
+                FileHandOff.handOff(blob, target, FileHandOff.Mode.LINK);
+            }
+        } catch (JSONException e) {
+            throw new IOException("Incorrect model manifest", e);
+        }
+    }
+
+    private void moveToBlobs(Path temporaryFile, String hash) throws IOException {
+        Path blob = getBlobPath(hash);
+        if (Files.exists(blob)) return;
+        Files.createDirectories(blob.getParent());
+        try {
+            Files.move(temporaryFile, blob, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            return;  // stored concurrently
+        }
+        // blobs are shared by hard links, they must never be modified in place
+        if (!blob.toFile().setReadOnly()) throw new IOException("Failed to protect blob " + hash);
+    }
+
+    private Path getBlobPath(String hash) throws IOException {
+        if (!hash.matches("[0-9a-f]{64}")) throw new IOException("Incorrect blob hash: " + hash);
+        return this.blobsDirectory.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static String copyAndHash(InputStream inputStream, Path target) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Hash algorithm not available: " + HASH_ALGORITHM, e);
+        }
+
+        // the input stream is not closed, it may be a zip entry
+        Files.copy(new DigestInputStream(inputStream, digest), target, StandardCopyOption.REPLACE_EXISTING);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String hash(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Hash algorithm not available: " + HASH_ALGORITHM, e);
+        }
+
+        try (InputStream inputStream = new DigestInputStream(Files.newInputStream(path), digest)) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static Set<String> getHashes(JSONObject manifest) throws IOException {
+        Set<String> hashes = new LinkedHashSet<>();
+        try {
+            JSONArray files = manifest.getJSONArray("files");
+            for (int i = 0; i < files.length(); ++i) hashes.add(files.getJSONObject(i).getString("hash"));
+        } catch (JSONException e) {
+            throw new IOException("Incorrect model manifest", e);
+        }
+        return hashes;
+    }
+
+    private static boolean isHidden(Path root, Path path) {
+        // same criteria as the zip compression: hidden files and directories are not part of the model
+        for (Path part : root.relativize(path)) {
+            if (part.toString().startsWith(".")) return true;
+        }
+        return false;
+    }
+
+    private static String toManifestPath(Path relativePath) {
+        List<String> parts = new ArrayList<>();
+        for (Path part : relativePath) parts.add(part.toString());
+        return String.join("/", parts);
+    }
+
+    private record IngestedFile(long size, FileTime lastModifiedTime, String hash) {
+    }
+
+}
@@ -0,0 +1,87 @@
+package utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// Watches a directory tree and hands every finished file to a handler in a background thread.
+// Writers must use the rename convention: write to "<name>.part" and rename it to "<name>" once it is complete
+public class DirectoryWatcher {
+
+    public static final String PART_SUFFIX = ".part";
+    private static final Logger logger = LogManager.getLogger(DirectoryWatcher.class);
+
+    public interface FileHandler {
+        void handle(Path file) throws IOException;
+    }
+
+    private final FileHandler handler;
+    private final WatchService watchService;
+    private final Set<Path> handledFiles = ConcurrentHashMap.newKeySet();
+    private final Thread thread;
+
+    public DirectoryWatcher(Path directory, FileHandler handler) throws IOException {
+        this.handler = handler;
+        this.watchService = directory.getFileSystem().newWatchService();
+        try {
+            register(directory);
+        } catch (IOException e) {
+            this.watchService.close();
+            throw e;
+        }
+        this.thread = new Thread(this::watch, "directory-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // waits for the file being handled, if any, and stops watching
+    public void stop() {
+        try {
+            this.watchService.close();
+            this.thread.join();
+        } catch (IOException e) {
+            logger.warn("Error while closing the directory watcher: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = this.watchService.take();
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;  // missed files are handled by the caller afterwards
+                    onCreated(directory.resolve((Path) event.context()));
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        } catch (IOException e) {
+            logger.warn("Directory watcher stopped: " + e.getMessage());
+        }
+    }
+
+    private void register(Path directory) throws IOException {
+        directory.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE);
+        // files created before the registration
+        try (Stream<Path> stream = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) stream::iterator) onCreated(path);
+        }
+    }
+
+    private void onCreated(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        if (name.startsWith(".") || name.endsWith(PART_SUFFIX)) return;
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) register(path);
+        else if (Files.isRegularFile(path) && this.handledFiles.add(path)) this.handler.handle(path);
+    }
+
+}
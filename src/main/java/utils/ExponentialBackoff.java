@@ -0,0 +1,24 @@
+package utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Delays between retries: doubled on every attempt up to a maximum, with random jitter so that several
+// processes retrying against the same service do not stay synchronized
+public class ExponentialBackoff {
+
+    private final long maxDelay;  // ms
+    private long currentDelay;
+
+    public ExponentialBackoff(long initialDelay, long maxDelay) {
+        this.maxDelay = maxDelay;
+        this.currentDelay = initialDelay;
+    }
+
+    // random delay between half and the whole current delay
+    public long nextDelay() {
+        long delay = this.currentDelay;
+        this.currentDelay = Math.min(this.maxDelay, this.currentDelay * 2);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+}
@@ -0,0 +1,38 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Hands a file over to another location of the shared filesystem without copying its contents when possible
+public class FileHandOff {
+
+    public enum Mode {
+        COPY,
+        LINK  // hard link, falls back to a copy when the locations are in different filesystems
+    }
+
+    public static Mode parseMode(String mode) {
+        try {
+            return Mode.valueOf(mode);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("File hand-off mode unknown: " + mode + ". Available: COPY and LINK", e);
+        }
+    }
+
+    // returns true if the file was linked, false if it was copied
+    public static boolean handOff(Path source, Path target, Mode mode) throws IOException {
+        if (mode == Mode.LINK) {
+            try {
+                Files.createLink(target, source);
+                return true;
+            } catch (FileSystemException | UnsupportedOperationException e) {
+                // different filesystem or no hard link support
+            }
+        }
+        Files.copy(source, target);
+        return false;
+    }
+
+}
@@ -3,8 +3,9 @@ package utils;
 import org.json.JSONObject;
 
 import java.io.*;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 public class FileMethods {
 
@@ -21,13 +22,15 @@ public class FileMethods {
         }
     }
 
-    public static byte[] readFile(Path path) throws IOException {
-        return Files.readAllBytes(path);
+    public static PooledPayload readFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return PooledPayload.readFrom(channel);
+        }
     }
 
-    public static void saveFile(byte[] bytes, Path path) throws IOException {
-        try (FileOutputStream outputStream = new FileOutputStream(String.valueOf(path))) {
-            outputStream.write(bytes);
+    public static void saveFile(Payload payload, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            payload.writeTo(channel);
         }
     }
 
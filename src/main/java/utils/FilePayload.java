@@ -0,0 +1,130 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Payload stored in a temporary file that is deleted when the payload is closed. Used for models that do not fit in memory
+public class FilePayload implements Payload {
+
+    private final Path path;
+    private final FileChannel channel;
+    private long size = 0;
+    private boolean closed = false;
+
+    public FilePayload(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.path = Files.createTempFile(directory, "payload", null);
+        this.channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    public synchronized void write(ByteBuffer source) throws IOException {
+        checkOpen();
+        while (source.hasRemaining()) this.size += this.channel.write(source, this.size);
+    }
+
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        write(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                FilePayload.this.write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                FilePayload.this.write(bytes, offset, length);
+            }
+        };
+    }
+
+    @Override
+    public synchronized long size() {
+        return this.size;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return getInputStream(0, size());
+    }
+
+    @Override
+    public synchronized InputStream getInputStream(long position, long length) {
+        checkOpen();
+        if (position < 0 || length < 0 || position + length > this.size) {
+            throw new IndexOutOfBoundsException(String.format("Range [%d, %d) outside of payload of size %d", position, position + length, this.size));
+        }
+        final long end = position + length;
+        return new InputStream() {
+            private long current = position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] bytes = new byte[1];
+                return read(bytes, 0, 1) < 0 ? -1 : bytes[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                if (length == 0) return 0;
+                if (this.current >= end) return -1;
+                ByteBuffer destination = ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - this.current));
+                int read = FilePayload.this.channel.read(destination, this.current);
+                if (read < 0) return -1;
+                this.current += read;
+                return read;
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        writeTo(0, size(), channel);
+    }
+
+    @Override
+    public void writeTo(long position, long length, WritableByteChannel channel) throws IOException {
+        checkOpen();
+        // transferTo lets the kernel copy the data when the target is a file or a socket
+        long transferred = 0;
+        while (transferred < length) {
+            long count = this.channel.transferTo(position + transferred, length - transferred, channel);
+            if (count <= 0) {
+                // some targets do not accept direct transfers, copy through the stream
+                try (InputStream inputStream = getInputStream(position + transferred, length - transferred)) {
+                    inputStream.transferTo(Channels.newOutputStream(channel));
+                }
+                return;
+            }
+            transferred += count;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.closed) return;
+        this.closed = true;
+        try {
+            this.channel.close();
+            Files.deleteIfExists(this.path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while deleting payload file " + this.path, e);
+        }
+    }
+
+    private void checkOpen() {
+        if (this.closed) throw new IllegalStateException("Payload already closed");
+    }
+
+}
@@ -2,14 +2,20 @@ package utils;
 
 import exceptions.InternalException;
 import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -18,9 +24,59 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class HttpMethods {
 
+    private static final int MAX_CONNECTIONS = 20;
+    private static final int MAX_CONNECTIONS_PER_HOST = 10;
+    private static final int CONNECTION_REQUEST_TIMEOUT = 10;  // seconds, waiting for a free connection of the pool
+    private static final int MAX_IDLE_TIME = 30;  // seconds
+    private static final int MULTIPART_CONNECT_TIMEOUT = 10;  // seconds
+    private static final int MULTIPART_SOCKET_TIMEOUT = 300;  // seconds
+    private static final int STALE_CONNECTION_RETRIES = 1;
+    // ms. An idle connection may have been closed by the AI Engine (e.g. restarted) and a POST sent on it is not
+    // retried, so it is checked before being reused unless it was used just before. The check costs about 1 ms
+    private static final int VALIDATE_AFTER_INACTIVITY = 10;
+    private static final Logger logger = LogManager.getLogger(HttpMethods.class);
+
+    // shared by every HTTP call of the process, keeps the connections alive between requests
+    private static final CloseableHttpClient sharedClient = createSharedClient();
+
+    private static CloseableHttpClient createSharedClient() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_HOST);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(getRequestConfig(MULTIPART_CONNECT_TIMEOUT, MULTIPART_SOCKET_TIMEOUT))
+                .setRetryHandler(new DefaultHttpRequestRetryHandler(STALE_CONNECTION_RETRIES, false))  // a request already sent is only retried if it has no body (e.g. GET), never a run or end POST
+                .evictExpiredConnections()
+                .evictIdleConnections(MAX_IDLE_TIME, TimeUnit.SECONDS)
+                .build();
+    }
+
+    // timeouts in seconds. The socket timeout bounds the time without receiving data, so a stuck read fails instead of hanging
+    public static RequestConfig getRequestConfig(int connectTimeout, int socketTimeout) {
+        return RequestConfig.custom()
+                .setConnectTimeout(connectTimeout * 1000)
+                .setSocketTimeout(socketTimeout * 1000)
+                .setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT * 1000)
+                .build();
+    }
+
+    // sends the request with the shared client. The response entity must be consumed before closing the response, otherwise the connection is closed instead of given back to the pool
+    public static CloseableHttpResponse execute(HttpRequestBase request, RequestConfig config) throws IOException {
+        request.setConfig(config);
+        long startTime = System.nanoTime();
+        try {
+            return sharedClient.execute(request);
+        } finally {
+            logger.debug(String.format("%s %s took %d ms", request.getMethod(), request.getURI().getPath(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)));
+        }
+    }
+
     public static JSONObject patchMultipartMethod(
             String url,
             JSONObject jsonEntity,
@@ -40,33 +96,28 @@ public class HttpMethods {
             Set<Integer> expectedStatusCode,
             String errorMessage
     ) throws InternalException {
-        try(CloseableHttpClient client = HttpClients.createDefault()) {
-            MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-            builder.setMode(HttpMultipartMode.BROWSER_COMPATIBLE);
-            builder.addTextBody("data", jsonEntity.toString(), ContentType.APPLICATION_JSON);
-            for (int i = 0; i < fileNameList.size(); ++i) {
-                builder.addBinaryBody(
-                        fileNameList.get(i),
-                        fileEntityList.get(i),
-                        ContentType.DEFAULT_BINARY,
-                        fileNameList.get(i)
-                );
-            }
-            HttpEntity entity = builder.build();
-            httpMethod.setEntity(entity);
-            return responseHandling(client, httpMethod, expectedStatusCode, errorMessage);
-        } catch (IOException e) {
-            throw new InternalException(String.format("%s. Error during post creation", errorMessage), e);
+        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+        builder.setMode(HttpMultipartMode.BROWSER_COMPATIBLE);
+        builder.addTextBody("data", jsonEntity.toString(), ContentType.APPLICATION_JSON);
+        for (int i = 0; i < fileNameList.size(); ++i) {
+            builder.addBinaryBody(
+                    fileNameList.get(i),
+                    fileEntityList.get(i),
+                    ContentType.DEFAULT_BINARY,
+                    fileNameList.get(i)
+            );
         }
+        HttpEntity entity = builder.build();
+        httpMethod.setEntity(entity);
+        return responseHandling(httpMethod, expectedStatusCode, errorMessage);
     }
 
     private static JSONObject responseHandling(
-            CloseableHttpClient client,
             HttpEntityEnclosingRequestBase httpMethod,
             Set<Integer> expectedStatusCode,
             String errorMessage
     ) throws InternalException {
-        try(CloseableHttpResponse response = client.execute(httpMethod)) {
+        try(CloseableHttpResponse response = execute(httpMethod, getRequestConfig(MULTIPART_CONNECT_TIMEOUT, MULTIPART_SOCKET_TIMEOUT))) {
             int statusCode = response.getStatusLine().getStatusCode();
             if (!expectedStatusCode.contains(statusCode)) {
                 throw new InternalException(String.format(
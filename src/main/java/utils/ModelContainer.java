@@ -0,0 +1,222 @@
+package utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Single-file model container, an alternative to zip for large uncompressed checkpoints:
+//   header: magic, version, index offset, number of files (padded to ALIGNMENT bytes)
+//   bodies: raw file contents, each one starting at a multiple of ALIGNMENT
+//   index:  JSON array with the path, offset, length and SHA-256 of every file, until the end of the container
+// The receiver reads the index and writes every body directly from the payload buffers to its file
+public class ModelContainer {
+
+    public static final int ALIGNMENT = 4096;  // bytes
+    private static final int MAGIC = 0x464c4d43;  // FLMC
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 4 + 4 + 8 + 4;
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    public static void pack(Path modelDirectory, OutputStream outputStream) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(modelDirectory)) {
+            paths = stream
+                    .filter(Files::isRegularFile)
+                    .filter(path -> !isHidden(modelDirectory, path))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        // offsets are known beforehand from the file sizes
+        List<Long> lengths = new ArrayList<>();
+        long indexOffset = ALIGNMENT;
+        for (Path path : paths) {
+            long length = Files.size(path);
+            lengths.add(length);
+            indexOffset += align(length);
+        }
+
+        OutputStream bufferedOutputStream = new BufferedOutputStream(outputStream, 64 * 1024);
+        DataOutputStream dataOutputStream = new DataOutputStream(bufferedOutputStream);
+        dataOutputStream.writeInt(MAGIC);
+        dataOutputStream.writeInt(VERSION);
+        dataOutputStream.writeLong(indexOffset);
+        dataOutputStream.writeInt(paths.size());
+        writePadding(dataOutputStream, HEADER_LENGTH);
+
+        JSONArray index = new JSONArray();
+        long offset = ALIGNMENT;
+        for (int i = 0; i < paths.size(); ++i) {
+            Path path = paths.get(i);
+            long length = lengths.get(i);
+            MessageDigest digest = getDigest();
+
+            long copied;
+            try (InputStream inputStream = Files.newInputStream(path)) {
+                copied = inputStream.transferTo(new DigestOutputStream(nonClosing(dataOutputStream), digest));
+            }
+            if (copied != length) throw new IOException("File modified while packing: " + path);
+            writePadding(dataOutputStream, length);
+
+            JSONObject entry = new JSONObject();
+            entry.put("path", toContainerPath(modelDirectory.relativize(path)));
+            entry.put("offset", offset);
+            entry.put("length", length);
+            entry.put("hash", HexFormat.of().formatHex(digest.digest()));
+            index.put(entry);
+            offset += align(length);
+        }
+
+        dataOutputStream.write(index.toString().getBytes(StandardCharsets.UTF_8));
+        dataOutputStream.flush();
+        outputStream.close();
+    }
+
+    public static void unpack(Payload payload, Path destDirectory) throws IOException {
+        Path normalizedDestDirectory = destDirectory.toAbsolutePath().normalize();
+        Files.createDirectories(normalizedDestDirectory);
+
+        long indexOffset;
+        int numberOfFiles;
+        try (DataInputStream header = new DataInputStream(payload.getInputStream(0, Math.min(HEADER_LENGTH, payload.size())))) {
+            if (header.readInt() != MAGIC) throw new IOException("Incorrect model container header");
+            int version = header.readInt();
+            if (version != VERSION) throw new IOException("Model container version not supported: " + version);
+            indexOffset = header.readLong();
+            numberOfFiles = header.readInt();
+        } catch (EOFException e) {
+            throw new IOException("Incomplete model container header", e);
+        }
+        if (indexOffset < ALIGNMENT || indexOffset > payload.size()) throw new IOException("Incorrect model container index offset");
+
+        JSONArray index;
+        try (InputStream inputStream = payload.getInputStream(indexOffset, payload.size() - indexOffset)) {
+            index = new JSONArray(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            throw new IOException("Incorrect model container index", e);
+        }
+        if (index.length() != numberOfFiles) throw new IOException("Incorrect number of files in model container index");
+
+        try {
+            for (int i = 0; i < index.length(); ++i) {
+                JSONObject entry = index.getJSONObject(i);
+                long offset = entry.getLong("offset");
+                long length = entry.getLong("length");
+                if (offset < ALIGNMENT || offset % ALIGNMENT != 0 || length < 0 || offset + length > indexOffset) {
+                    throw new IOException("Incorrect model container entry: " + entry.getString("path"));
+                }
+
+                Path target = normalizedDestDirectory.resolve(entry.getString("path")).normalize();
+                if (!target.startsWith(normalizedDestDirectory) || target.equals(normalizedDestDirectory)) {
+                    throw new IOException("Entry is outside of the target dir: " + entry.getString("path"));
+                }
+                Files.createDirectories(target.getParent());
+
+                MessageDigest digest = getDigest();
+                try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    payload.writeTo(offset, length, new DigestChannel(channel, digest));
+                }
+                if (!HexFormat.of().formatHex(digest.digest()).equals(entry.getString("hash"))) {
+                    throw new IOException("Corrupted file in model container: " + entry.getString("path"));
+                }
+            }
+        } catch (JSONException e) {
+            throw new IOException("Incorrect model container index", e);
+        }
+    }
+
+    private static long align(long length) {
+        return (length + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static void writePadding(OutputStream outputStream, long length) throws IOException {
+        long padding = align(length) - length;
+        outputStream.write(new byte[(int) padding]);
+    }
+
+    private static MessageDigest getDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Hash algorithm not available: " + HASH_ALGORITHM, e);
+        }
+    }
+
+    private static OutputStream nonClosing(OutputStream outputStream) {
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+            }
+
+            @Override
+            public void close() {
+                // the container stream is closed by pack
+            }
+        };
+    }
+
+    private static boolean isHidden(Path root, Path path) {
+        // same criteria as the zip compression: hidden files and directories are not part of the model
+        for (Path part : root.relativize(path)) {
+            if (part.toString().startsWith(".")) return true;
+        }
+        return false;
+    }
+
+    private static String toContainerPath(Path relativePath) {
+        List<String> parts = new ArrayList<>();
+        for (Path part : relativePath) parts.add(part.toString());
+        return String.join("/", parts);
+    }
+
+    // hashes the bytes while they are written to the file
+    private static class DigestChannel implements WritableByteChannel {
+
+        private final WritableByteChannel channel;
+        private final MessageDigest digest;
+
+        private DigestChannel(WritableByteChannel channel, MessageDigest digest) {
+            this.channel = channel;
+            this.digest = digest;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            ByteBuffer duplicate = source.duplicate();
+            int written = this.channel.write(source);
+            duplicate.limit(duplicate.position() + written);
+            this.digest.update(duplicate);
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return this.channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+
+    }
+
+}
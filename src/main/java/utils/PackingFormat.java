@@ -0,0 +1,15 @@
+package utils;
+
+// format used to pack a model directory into a payload when the content-addressed store is disabled
+public enum PackingFormat {
+    ZIP,
+    CONTAINER;  // see ModelContainer
+
+    public static PackingFormat parse(String format) {
+        try {
+            return PackingFormat.valueOf(format);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Packing format unknown: " + format + ". Available: ZIP and CONTAINER", e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+
+// Model bytes exchanged between the adapters. The owner of the payload must close it once it is not needed anymore
+public interface Payload extends Closeable {
+
+    long size();
+
+    InputStream getInputStream();
+
+    // positional reads, used to extract parts of the payload without reading it sequentially
+    InputStream getInputStream(long position, long length);
+
+    void writeTo(WritableByteChannel channel) throws IOException;
+
+    void writeTo(long position, long length, WritableByteChannel channel) throws IOException;
+
+    @Override
+    void close();
+
+}
@@ -0,0 +1,175 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Payload stored in direct buffers taken from a pool, so large models never become humongous heap arrays
+public class PooledPayload implements Payload {
+
+    private final BufferPool pool;
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private long size = 0;
+    private boolean closed = false;
+
+    public PooledPayload() {
+        this(BufferPool.getDefault());
+    }
+
+    public PooledPayload(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    public static PooledPayload wrap(byte[] bytes) {
+        PooledPayload payload = new PooledPayload();
+        payload.write(bytes, 0, bytes.length);
+        return payload;
+    }
+
+    public static PooledPayload readFrom(ReadableByteChannel channel) throws IOException {
+        PooledPayload payload = new PooledPayload();
+        try {
+            while (true) {
+                ByteBuffer buffer = payload.getWritableBuffer();
+                int position = buffer.position();
+                if (channel.read(buffer) < 0) break;
+                payload.size += buffer.position() - position;
+            }
+        } catch (IOException e) {
+            payload.close();
+            throw e;
+        }
+        return payload;
+    }
+
+    public synchronized void write(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            ByteBuffer buffer = getWritableBuffer();
+            int written = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, written);
+            offset += written;
+            length -= written;
+            this.size += written;
+        }
+    }
+
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                PooledPayload.this.write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                PooledPayload.this.write(bytes, offset, length);
+            }
+        };
+    }
+
+    @Override
+    public synchronized long size() {
+        return this.size;
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() {
+        return toInputStream(getReadableBuffers());
+    }
+
+    @Override
+    public synchronized InputStream getInputStream(long position, long length) {
+        return toInputStream(getReadableBuffers(position, length));
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        for (ByteBuffer buffer : getReadableBuffers()) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void writeTo(long position, long length, WritableByteChannel channel) throws IOException {
+        for (ByteBuffer buffer : getReadableBuffers(position, length)) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.closed) return;
+        this.closed = true;
+        for (ByteBuffer buffer : this.buffers) this.pool.release(buffer);
+        this.buffers.clear();
+    }
+
+    private static InputStream toInputStream(List<ByteBuffer> readableBuffers) {
+        return new InputStream() {
+            private int index = 0;
+
+            @Override
+            public int read() {
+                byte[] bytes = new byte[1];
+                return read(bytes, 0, 1) < 0 ? -1 : bytes[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) {
+                if (length == 0) return 0;
+                while (index < readableBuffers.size() && !readableBuffers.get(index).hasRemaining()) ++index;
+                if (index == readableBuffers.size()) return -1;
+                ByteBuffer buffer = readableBuffers.get(index);
+                int read = Math.min(length, buffer.remaining());
+                buffer.get(bytes, offset, read);
+                return read;
+            }
+
+            @Override
+            public int available() {
+                return index < readableBuffers.size() ? readableBuffers.get(index).remaining() : 0;
+            }
+        };
+    }
+
+    private ByteBuffer getWritableBuffer() {
+        if (this.closed) throw new IllegalStateException("Payload already closed");
+        if (this.buffers.isEmpty() || !this.buffers.get(this.buffers.size() - 1).hasRemaining()) {
+            this.buffers.add(this.pool.acquire());
+        }
+        return this.buffers.get(this.buffers.size() - 1);
+    }
+
+    private synchronized List<ByteBuffer> getReadableBuffers() {
+        if (this.closed) throw new IllegalStateException("Payload already closed");
+        List<ByteBuffer> readableBuffers = new ArrayList<>();
+        for (ByteBuffer buffer : this.buffers) readableBuffers.add(buffer.duplicate().flip());
+        return readableBuffers;
+    }
+
+    // slices of the buffers covering [position, position + length)
+    private synchronized List<ByteBuffer> getReadableBuffers(long position, long length) {
+        if (position < 0 || length < 0 || position + length > this.size) {
+            throw new IndexOutOfBoundsException(String.format("Range [%d, %d) outside of payload of size %d", position, position + length, this.size));
+        }
+        List<ByteBuffer> readableBuffers = new ArrayList<>();
+        for (ByteBuffer buffer : getReadableBuffers()) {
+            if (length == 0) break;
+            if (position >= buffer.limit()) {
+                position -= buffer.limit();
+                continue;
+            }
+            int sliceLength = (int) Math.min(length, buffer.limit() - position);
+            readableBuffers.add(buffer.slice((int) position, sliceLength));
+            position = 0;
+            length -= sliceLength;
+        }
+        return readableBuffers;
+    }
+
+}
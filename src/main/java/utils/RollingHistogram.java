@@ -0,0 +1,52 @@
+package utils;
+
+import org.json.JSONArray;
+
+import java.util.Arrays;
+
+// Distribution of the latest windowSize samples, the older ones are forgotten
+public class RollingHistogram {
+
+    private final long[] samples;
+    private int count = 0;
+    private int next = 0;  // position of the next sample, the oldest one once the window is full
+
+    public RollingHistogram(int windowSize) {
+        if (windowSize <= 0) throw new IllegalArgumentException("The window size must be positive");
+        this.samples = new long[windowSize];
+    }
+
+    public synchronized void add(long sample) {
+        this.samples[this.next] = sample;
+        this.next = (this.next + 1) % this.samples.length;
+        this.count = Math.min(this.count + 1, this.samples.length);
+    }
+
+    public synchronized int size() {
+        return this.count;
+    }
+
+    // nearest-rank percentile (0-100), 0 if there are no samples
+    public synchronized long percentile(int percentile) {
+        if (this.count == 0) return 0;
+        long[] sorted = Arrays.copyOf(this.samples, this.count);  // the window is filled from the start
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * this.count);
+        return sorted[Math.min(Math.max(rank, 1), this.count) - 1];
+    }
+
+    // samples from the oldest to the newest
+    public synchronized JSONArray toJSON() {
+        JSONArray json = new JSONArray();
+        int first = this.count < this.samples.length ? 0 : this.next;
+        for (int i = 0; i < this.count; ++i) json.put(this.samples[(first + i) % this.samples.length]);
+        return json;
+    }
+
+    public static RollingHistogram fromJSON(JSONArray json, int windowSize) {
+        RollingHistogram histogram = new RollingHistogram(windowSize);
+        for (int i = 0; i < json.length(); ++i) histogram.add(json.getLong(i));  // only the newest ones if the window is smaller
+        return histogram;
+    }
+
+}
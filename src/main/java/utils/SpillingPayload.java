@@ -0,0 +1,110 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Payload kept in pooled buffers until it grows over the spill threshold, then moved to a temporary file.
+// Models of any size can be written to it without exhausting the direct memory
+public class SpillingPayload implements Payload {
+
+    private static volatile long spillThreshold = 512L * 1000 * 1000;  // bytes
+    private static volatile Path spillDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+
+    private final PooledPayload pooledPayload = new PooledPayload();
+    private FilePayload filePayload = null;
+
+    public static void configure(long spillThreshold, Path spillDirectory) {
+        SpillingPayload.spillThreshold = spillThreshold;
+        SpillingPayload.spillDirectory = spillDirectory;
+    }
+
+    // the copy outlives the original payload, which is closed by its owner
+    public static SpillingPayload copyOf(Payload payload) throws IOException {
+        SpillingPayload copy = new SpillingPayload();
+        try (InputStream inputStream = payload.getInputStream()) {
+            inputStream.transferTo(copy.getOutputStream());
+        } catch (IOException e) {
+            copy.close();
+            throw e;
+        }
+        return copy;
+    }
+
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        if (this.filePayload == null && this.pooledPayload.size() + length > spillThreshold) spill();
+        if (this.filePayload != null) this.filePayload.write(bytes, offset, length);
+        else this.pooledPayload.write(bytes, offset, length);
+    }
+
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                SpillingPayload.this.write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                SpillingPayload.this.write(bytes, offset, length);
+            }
+        };
+    }
+
+    public synchronized boolean isSpilled() {
+        return this.filePayload != null;
+    }
+
+    @Override
+    public synchronized long size() {
+        return getPayload().size();
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() {
+        return getPayload().getInputStream();
+    }
+
+    @Override
+    public synchronized InputStream getInputStream(long position, long length) {
+        return getPayload().getInputStream(position, length);
+    }
+
+    @Override
+    public synchronized void writeTo(WritableByteChannel channel) throws IOException {
+        getPayload().writeTo(channel);
+    }
+
+    @Override
+    public synchronized void writeTo(long position, long length, WritableByteChannel channel) throws IOException {
+        getPayload().writeTo(position, length, channel);
+    }
+
+    @Override
+    public synchronized void close() {
+        this.pooledPayload.close();
+        if (this.filePayload != null) this.filePayload.close();
+    }
+
+    private Payload getPayload() {
+        return this.filePayload != null ? this.filePayload : this.pooledPayload;
+    }
+
+    private void spill() throws IOException {
+        FilePayload newFilePayload = new FilePayload(spillDirectory);
+        try {
+            try (InputStream inputStream = this.pooledPayload.getInputStream()) {
+                inputStream.transferTo(newFilePayload.getOutputStream());
+            }
+        } catch (IOException e) {
+            newFilePayload.close();
+            throw e;
+        }
+        this.filePayload = newFilePayload;
+        this.pooledPayload.close();  // buffers go back to the pool
+    }
+
+}
@@ -0,0 +1,86 @@
+package utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.*;
+
+// Unpacks an archive while its bytes are being received: they are written to a pipe that a background thread reads
+// (e.g. ZipCompression.unZipFile), so that the files are on disk as soon as the last bytes arrive. Only for formats
+// that can be read sequentially
+public class StreamingUnpacker<T> {
+
+    private static final int PIPE_SIZE = 1024 * 1024;  // bytes
+
+    public interface Unpacking<T> {
+        T unpack(InputStream inputStream) throws IOException;
+    }
+
+    private final PipedOutputStream pipeOut = new PipedOutputStream();
+    private final FutureTask<T> task;
+
+    public StreamingUnpacker(Unpacking<T> unpacking) throws IOException {
+        PipedInputStream pipeIn = new PipedInputStream(this.pipeOut, PIPE_SIZE);
+        this.task = new FutureTask<>(() -> {
+            try (pipeIn) {
+                // the unpacking may close its stream (e.g. ZipInputStream), the pipe is closed here once drained
+                T result = unpacking.unpack(new FilterInputStream(pipeIn) {
+                    @Override
+                    public void close() {
+                    }
+                });
+                pipeIn.transferTo(OutputStream.nullOutputStream());  // e.g. bytes after the end of the archive, so that the writer does not block
+                return result;
+            }
+        });
+        Thread thread = new Thread(this.task, "streaming-unpacker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        try {
+            this.pipeOut.write(bytes, offset, length);
+        } catch (IOException e) {
+            // the pipe is closed when the unpacking fails, its exception explains why
+            if (this.task.isDone()) getResult();
+            throw e;
+        }
+    }
+
+    // waits until the archive is unpacked
+    public T finish() throws IOException {
+        this.pipeOut.close();
+        return getResult();
+    }
+
+    // discards the archive, the files unpacked so far are left as they are
+    public void abort() {
+        this.task.cancel(true);
+        try {
+            this.pipeOut.close();
+        } catch (IOException ignored) {
+            // nothing to release
+        }
+    }
+
+    private T getResult() throws IOException {
+        try {
+            return this.task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        } catch (CancellationException e) {
+            throw new IOException("Unpacking aborted", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while unpacking");
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Zips the files of a directory while they are being written (see DirectoryWatcher), so that only the remaining files
+// and the central directory are left to write once the writer ends. Same archive contents as ZipCompression
+public class ZipPrePackager {
+
+    private final Path directory;
+    private final SpillingPayload payload = new SpillingPayload();
+    private final ZipOutputStream zipOut = new ZipOutputStream(this.payload.getOutputStream());
+    private final Map<Path, FileState> packedFiles = new HashMap<>();
+    private final DirectoryWatcher watcher;
+    private boolean valid = true;
+
+    public ZipPrePackager(Path directory) throws IOException {
+        this.directory = directory;
+        this.watcher = new DirectoryWatcher(directory, this::pack);
+    }
+
+    // returns null if some file changed after being packed, in which case the directory has to be packed again
+    public Payload finish() throws IOException {
+        this.watcher.stop();
+        synchronized (this) {
+            try {
+                for (Map.Entry<Path, FileState> packedFile : this.packedFiles.entrySet()) {
+                    if (!Files.exists(packedFile.getKey()) || !packedFile.getValue().equals(FileState.of(packedFile.getKey()))) {
+                        this.valid = false;
+                        break;
+                    }
+                }
+                if (!this.valid) {
+                    this.payload.close();
+                    return null;
+                }
+
+                // files not detected by the watcher
+                List<Path> remainingFiles;
+                try (Stream<Path> stream = Files.walk(this.directory)) {
+                    remainingFiles = stream
+                            .filter(Files::isRegularFile)
+                            .filter(path -> !isHidden(path))
+                            .filter(path -> !this.packedFiles.containsKey(path))
+                            .sorted()
+                            .collect(Collectors.toList());
+                }
+                for (Path path : remainingFiles) pack(path);
+                if (!this.valid) {
+                    this.payload.close();
+                    return null;
+                }
+
+                this.zipOut.close();  // writes the central directory
+                return this.payload;
+            } catch (IOException e) {
+                this.payload.close();
+                throw e;
+            }
+        }
+    }
+
+    // discards the archive
+    public void close() {
+        this.watcher.stop();
+        synchronized (this) {
+            this.payload.close();
+        }
+    }
+
+    private synchronized void pack(Path file) throws IOException {
+        if (!this.valid) return;
+        try {
+            FileState state = FileState.of(file);
+            this.zipOut.putNextEntry(new ZipEntry(toEntryName(file)));
+            Files.copy(file, this.zipOut);
+            this.zipOut.closeEntry();
+            if (!state.equals(FileState.of(file))) this.valid = false;  // still being written
+            this.packedFiles.put(file, state);
+        } catch (IOException e) {
+            this.valid = false;
+            throw e;
+        }
+    }
+
+    private String toEntryName(Path file) {
+        List<String> parts = new ArrayList<>();
+        for (Path part : this.directory.relativize(file)) parts.add(part.toString());
+        return String.join("/", parts);
+    }
+
+    private boolean isHidden(Path path) {
+        for (Path part : this.directory.relativize(path)) {
+            if (part.toString().startsWith(".")) return true;
+        }
+        return false;
+    }
+
+    private record FileState(long size, FileTime lastModifiedTime) {
+
+        private static FileState of(Path file) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new FileState(attributes.size(), attributes.lastModifiedTime());
+        }
+
+    }
+
+}
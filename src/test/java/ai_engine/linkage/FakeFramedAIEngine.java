@@ -0,0 +1,43 @@
+package ai_engine.linkage;
+
+import ai_engine_adapter.linkage.types.framed.Frames;
+import org.json.JSONObject;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+// AI Engine launched by TestSubprocess: answers every request through stdin/stdout and ends the runs with the
+// success value given as argument. The progress messages carry its pid
+public class FakeFramedAIEngine {
+
+    public static void main(String[] args) throws IOException {
+        boolean runSuccess = Boolean.parseBoolean(args[0]);
+        ReadableByteChannel input = Channels.newChannel(System.in);
+        WritableByteChannel output = Channels.newChannel(new FilterOutputStream(System.out) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                this.out.write(bytes, offset, length);
+                this.out.flush();
+            }
+        });
+
+        JSONObject message;
+        while ((message = Frames.read(input)) != null) {
+            Frames.write(output, new JSONObject().put("type", "response").put("id", message.getString("id")).put("status", "ok"));
+            switch (message.getString("type")) {
+                case "run":
+                    Frames.write(output, new JSONObject().put("type", "progress").put("pid", ProcessHandle.current().pid()));
+                    JSONObject callback = new JSONObject().put("type", "callback").put("run_id", message.getString("run_id")).put("SUCCESS", runSuccess);
+                    if (!runSuccess) callback.put("message", "training failed");
+                    Frames.write(output, callback);
+                    break;
+                case "end":
+                    return;
+            }
+        }
+    }
+
+}
@@ -2,19 +2,29 @@ package ai_engine.linkage;
 
 import ai_engine_adapter.linkage.AIEngineLinkageAdapter;
 import ai_engine_adapter.linkage.types.async_rest_api.AsyncRestAPI;
+import ai_engine_adapter.model_management.client.types.InMemory;
 import com.github.tomakehurst.wiremock.http.Fault;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
 import exceptions.AIEngineException;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.json.JSONObject;
 import org.junit.*;
 import org.wiremock.webhooks.Webhooks;
+import utils.Payload;
+import utils.PooledPayload;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
@@ -88,6 +98,38 @@ public class TestAsyncRestAPI {
         assertEquals(expectedMessage, actualMessage);
     }
 
+    @Test
+    public void pingSuccessStatusNotified() throws Exception {
+        // the AI Engine does not answer the pings but notifies it is ready
+        Map<String, Object> config = new HashMap<>();
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_MAX_ITERATION_TIME", 2L);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_MAX_INITIALIZATION_TIME", 2L);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_MAX_FINALIZATION_TIME", 2L);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_MAX_FINALIZATION_RETRIES", 2);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_CLIENT_HOST", String.format("127.0.0.1:%d", 8002));
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_SERVER_HOST", String.format("127.0.0.1:%d", 8000));
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_PING_URL", pingUrl);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_RUN_URL", runUrl);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_END_URL", endUrl);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_CALLBACK_URL", callbackUrl);
+        aiEngineLinkageAdapter = new AsyncRestAPI(config);
+        aiEngineLinkageAdapter.initialize();
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(500);
+                CloseableHttpClient client = HttpClients.createDefault();
+                HttpPost httpPost = new HttpPost(String.format("http://127.0.0.1:%d%s", 8000, "/api/status"));
+                httpPost.setEntity(new StringEntity("{\"status\": \"ready\"}"));
+                httpPost.setHeader("Content-type", "application/json");
+                client.execute(httpPost);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        thread.start();
+        aiEngineLinkageAdapter.waitAIEngineToBeReady();
+    }
+
     @Test
     public void pingFailureIncorrect() throws Exception {
         stubFor(get(pingUrl).willReturn(serverError()));
@@ -104,7 +146,11 @@ public class TestAsyncRestAPI {
     public void runSuccess() throws Exception {
         String use_case = "training_from_scratch";
         String ack_url = String.format("http://127.0.0.1:%d%s", 8000, callbackUrl);
-        stubFor(post(String.format("%s?use_case=%s&callback_url=%s", runUrl, use_case, ack_url)).willReturn(ok()));
+        stubFor(post(urlPathEqualTo(runUrl))
+                .withQueryParam("use_case", equalTo(use_case))
+                .withQueryParam("callback_url", matching(ack_url + "/[0-9a-f-]+"))
+                .willReturn(ok())
+        );
         aiEngineLinkageAdapter.initialize();
         Thread thread = new Thread(() -> {
             try {
@@ -125,11 +171,185 @@ public class TestAsyncRestAPI {
         aiEngineLinkageAdapter.run(use_case);
     }
 
+    @Test
+    public void runSuccessCallbackWithRunId() throws Exception {
+        String use_case = "training_from_scratch";
+        stubFor(post(urlPathEqualTo(runUrl)).withQueryParam("use_case", equalTo(use_case)).willReturn(ok()));
+        aiEngineLinkageAdapter.initialize();
+        Thread thread = new Thread(() -> {
+            try {
+                // answer to the callback url received by the AI Engine
+                List<LoggedRequest> requests = new ArrayList<>();
+                while (requests.isEmpty()) {
+                    Thread.sleep(100);
+                    requests = findAll(postRequestedFor(urlPathEqualTo(runUrl)));
+                }
+                CloseableHttpClient client = HttpClients.createDefault();
+                HttpPost httpPost = new HttpPost(requests.get(0).queryParameter("callback_url").firstValue());
+                httpPost.setEntity(new StringEntity("{\"SUCCESS\": true}"));
+                httpPost.setHeader("Content-type", "application/json");
+                client.execute(httpPost);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        thread.start();
+        aiEngineLinkageAdapter.run(use_case);
+    }
+
+    @Test
+    public void runSuccessWithReplicas() throws Exception {
+        Map<String, Object> config = new HashMap<>();
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_MAX_ITERATION_TIME", 5L);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_MAX_INITIALIZATION_TIME", 2L);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_MAX_FINALIZATION_TIME", 2L);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_MAX_FINALIZATION_RETRIES", 2);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_CLIENT_HOST", String.format("127.0.0.1:%d, 127.0.0.1:%d", 8001, 8001));
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_SERVER_HOST", String.format("127.0.0.1:%d", 8000));
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_PING_URL", pingUrl);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_RUN_URL", runUrl);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_END_URL", endUrl);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_CALLBACK_URL", callbackUrl);
+        aiEngineLinkageAdapter = new AsyncRestAPI(config);
+
+        String use_case = "training_from_scratch";
+        stubFor(post(urlPathEqualTo(runUrl)).willReturn(ok()));
+        aiEngineLinkageAdapter.initialize();
+        Thread thread = new Thread(() -> {
+            try {
+                // answer every run: the two replicas and the local merge
+                int answered = 0;
+                while (answered < 3) {
+                    Thread.sleep(100);
+                    List<LoggedRequest> requests = findAll(postRequestedFor(urlPathEqualTo(runUrl)));
+                    for (; answered < requests.size(); ++answered) {
+                        CloseableHttpClient client = HttpClients.createDefault();
+                        HttpPost httpPost = new HttpPost(requests.get(answered).queryParameter("callback_url").firstValue());
+                        httpPost.setEntity(new StringEntity("{\"SUCCESS\": true}"));
+                        httpPost.setHeader("Content-type", "application/json");
+                        client.execute(httpPost);
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        thread.start();
+        aiEngineLinkageAdapter.run(use_case);
+
+        verify(postRequestedFor(urlPathEqualTo(runUrl)).withQueryParam("use_case", equalTo(use_case)).withQueryParam("replica", equalTo("0")));
+        verify(postRequestedFor(urlPathEqualTo(runUrl)).withQueryParam("use_case", equalTo(use_case)).withQueryParam("replica", equalTo("1")));
+        verify(postRequestedFor(urlPathEqualTo(runUrl)).withQueryParam("use_case", equalTo("local_merge")).withQueryParam("merged_use_case", equalTo(use_case)));
+    }
+
+    @Test
+    public void runSuccessModelInRequestBody() throws Exception {
+        String use_case = "training_from_pretrained_model";
+        stubFor(post(urlPathEqualTo(runUrl)).withQueryParam("model_transfer", equalTo("request_body")).willReturn(ok()));
+        stubFor(get(urlPathEqualTo("/api/result")).willReturn(ok().withBody("trained model")));
+        InMemory modelManagement = new InMemory();
+        modelManagement.saveMergedModel(PooledPayload.wrap("merged model".getBytes(StandardCharsets.UTF_8)));
+        aiEngineLinkageAdapter.setModelExchange(modelManagement);
+        aiEngineLinkageAdapter.initialize();
+        Thread thread = new Thread(() -> {
+            try {
+                List<LoggedRequest> requests = new ArrayList<>();
+                while (requests.isEmpty()) {
+                    Thread.sleep(100);
+                    requests = findAll(postRequestedFor(urlPathEqualTo(runUrl)));
+                }
+                CloseableHttpClient client = HttpClients.createDefault();
+                HttpPost httpPost = new HttpPost(requests.get(0).queryParameter("callback_url").firstValue());
+                httpPost.setEntity(new StringEntity("{\"SUCCESS\": true}"));
+                httpPost.setHeader("Content-type", "application/json");
+                client.execute(httpPost);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        thread.start();
+        aiEngineLinkageAdapter.run(use_case);
+
+        // the merged model is sent in the run request and the output model is downloaded afterwards
+        verify(postRequestedFor(urlPathEqualTo(runUrl)).withAnyRequestBodyPart(aMultipart().withName("model").withBody(equalTo("merged model"))));
+        String runId = findAll(postRequestedFor(urlPathEqualTo(runUrl))).get(0).queryParameter("callback_url").firstValue().replaceAll(".*/", "");
+        verify(getRequestedFor(urlPathEqualTo("/api/result")).withQueryParam("run_id", equalTo(runId)));
+        try (Payload model = modelManagement.loadUnMergedModel(); InputStream inputStream = model.getInputStream()) {
+            assertEquals("trained model", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        modelManagement.clean();
+    }
+
+    @Test
+    public void runFailureStrayCallback() throws Exception {
+        String use_case = "training_from_scratch";
+        String ack_url = String.format("http://127.0.0.1:%d%s", 8000, callbackUrl);
+        stubFor(post(urlPathEqualTo(runUrl)).withQueryParam("use_case", equalTo(use_case)).willReturn(ok()));
+        aiEngineLinkageAdapter.initialize();
+        Thread thread = new Thread(() -> {
+            try {
+                // callback of another run
+                Thread.sleep(500);
+                CloseableHttpClient client = HttpClients.createDefault();
+                HttpPost httpPost = new HttpPost(ack_url + "/" + UUID.randomUUID());
+                httpPost.setEntity(new StringEntity("{\"SUCCESS\": true}"));
+                httpPost.setHeader("Content-type", "application/json");
+                client.execute(httpPost);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        thread.start();
+
+        Exception exception = assertThrows(AIEngineException.class, () -> {
+            aiEngineLinkageAdapter.run(use_case);
+        });
+
+        String expectedMessage = "Internal exception: AI Engine exception: Internal exception: Error while running use case. The end of the iteration was not notified on time";
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
+    @Test
+    public void runSuccessWithProgress() throws Exception {
+        String use_case = "training_from_scratch";
+        String ack_url = String.format("http://127.0.0.1:%d%s", 8000, callbackUrl);
+        stubFor(post(urlPathEqualTo(runUrl)).withQueryParam("use_case", equalTo(use_case)).willReturn(ok()));
+        List<JSONObject> receivedProgress = new CopyOnWriteArrayList<>();
+        aiEngineLinkageAdapter.setProgressListener(receivedProgress::add);
+        aiEngineLinkageAdapter.initialize();
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(500);
+                CloseableHttpClient client = HttpClients.createDefault();
+                HttpPost httpPost = new HttpPost(String.format("http://127.0.0.1:%d%s", 8000, "/api/progress"));
+                httpPost.setEntity(new StringEntity("{\"epoch\": 1, \"step\": 10, \"total_steps\": 100, \"eta\": 30}"));
+                httpPost.setHeader("Content-type", "application/json");
+                client.execute(httpPost).close();
+                httpPost = new HttpPost(ack_url);
+                httpPost.setEntity(new StringEntity("{\"SUCCESS\": true}"));
+                httpPost.setHeader("Content-type", "application/json");
+                client.execute(httpPost);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        thread.start();
+        aiEngineLinkageAdapter.run(use_case);
+
+        assertEquals(1, receivedProgress.size());
+        assertEquals(10, receivedProgress.get(0).getInt("step"));
+        assertEquals(30, receivedProgress.get(0).getInt("eta"));
+    }
+
     @Test
     public void runFailureIncorrect() throws Exception {
         String use_case = "training_from_scratch";
         String ack_url = String.format("http://127.0.0.1:%d%s", 8000, callbackUrl);
-        stubFor(post(String.format("%s?use_case=%s&callback_url=%s", runUrl, use_case, ack_url)).willReturn(ok()));
+        stubFor(post(urlPathEqualTo(runUrl))
+                .withQueryParam("use_case", equalTo(use_case))
+                .withQueryParam("callback_url", matching(ack_url + "/[0-9a-f-]+"))
+                .willReturn(ok())
+        );
         aiEngineLinkageAdapter.initialize();
         Thread thread = new Thread(() -> {
             try {
@@ -161,7 +381,11 @@ public class TestAsyncRestAPI {
     public void runFailureNoACK() throws Exception {
         String use_case = "training_from_scratch";
         String ack_url = String.format("http://127.0.0.1:%d%s", 8000, callbackUrl);
-        stubFor(post(String.format("%s?use_case=%s&callback_url=%s", runUrl, use_case, ack_url)).willReturn(ok()));
+        stubFor(post(urlPathEqualTo(runUrl))
+                .withQueryParam("use_case", equalTo(use_case))
+                .withQueryParam("callback_url", matching(ack_url + "/[0-9a-f-]+"))
+                .willReturn(ok())
+        );
         aiEngineLinkageAdapter.initialize();
 
         Exception exception = assertThrows(AIEngineException.class, () -> {
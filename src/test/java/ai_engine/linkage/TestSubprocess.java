@@ -0,0 +1,99 @@
+package ai_engine.linkage;
+
+import ai_engine_adapter.linkage.AIEngineLinkageAdapter;
+import ai_engine_adapter.linkage.types.subprocess.Subprocess;
+import exceptions.AIEngineException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class TestSubprocess {
+
+    private AIEngineLinkageAdapter aiEngineLinkageAdapter;
+
+    @After
+    public void afterEach() throws Exception {
+        aiEngineLinkageAdapter.clean();
+    }
+
+    private AIEngineLinkageAdapter createAdapter(String command) {
+        Map<String, Object> config = new HashMap<>();
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_MAX_ITERATION_TIME", 5L);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_MAX_INITIALIZATION_TIME", 10L);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_MAX_FINALIZATION_TIME", 5L);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_COMMAND", command);
+        return new Subprocess(config);
+    }
+
+    // fake AI Engine in a separate JVM, see FakeFramedAIEngine
+    private AIEngineLinkageAdapter createAdapter(boolean runSuccess) {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        return createAdapter(String.join(" ", java, "-cp", System.getProperty("java.class.path"), FakeFramedAIEngine.class.getName(), String.valueOf(runSuccess)));
+    }
+
+    @Test
+    public void pingSuccess() throws Exception {
+        aiEngineLinkageAdapter = createAdapter(true);
+        aiEngineLinkageAdapter.initialize();
+        aiEngineLinkageAdapter.waitAIEngineToBeReady();
+    }
+
+    @Test
+    public void pingFailureProcessExited() throws Exception {
+        aiEngineLinkageAdapter = createAdapter("true");
+        aiEngineLinkageAdapter.initialize();
+
+        Exception exception = assertThrows(AIEngineException.class, () -> {
+            aiEngineLinkageAdapter.waitAIEngineToBeReady();
+        });
+
+        String expectedMessage = "Internal exception: AI Engine exception: Error while waiting for the AI Engine to be ready. The process exited with code 0";
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
+    @Test
+    public void runSuccessSameProcess() throws Exception {
+        aiEngineLinkageAdapter = createAdapter(true);
+        List<JSONObject> receivedProgress = new CopyOnWriteArrayList<>();
+        aiEngineLinkageAdapter.setProgressListener(receivedProgress::add);
+        aiEngineLinkageAdapter.initialize();
+        aiEngineLinkageAdapter.waitAIEngineToBeReady();
+        aiEngineLinkageAdapter.run("training_from_scratch", Map.of("slot", "0"));
+        aiEngineLinkageAdapter.run("training_from_pretrained_model");
+
+        assertEquals(2, receivedProgress.size());
+        assertEquals(receivedProgress.get(0).getLong("pid"), receivedProgress.get(1).getLong("pid"));
+    }
+
+    @Test
+    public void runFailureIncorrect() throws Exception {
+        aiEngineLinkageAdapter = createAdapter(false);
+        aiEngineLinkageAdapter.initialize();
+        aiEngineLinkageAdapter.waitAIEngineToBeReady();
+
+        Exception exception = assertThrows(AIEngineException.class, () -> {
+            aiEngineLinkageAdapter.run("training_from_scratch");
+        });
+
+        String expectedMessage = "Internal exception: AI Engine exception: Error while running use case. AI Engine error -> training failed";
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
+    @Test
+    public void endSuccess() throws Exception {
+        aiEngineLinkageAdapter = createAdapter(true);
+        aiEngineLinkageAdapter.initialize();
+        aiEngineLinkageAdapter.waitAIEngineToBeReady();
+        aiEngineLinkageAdapter.end();
+    }
+
+}
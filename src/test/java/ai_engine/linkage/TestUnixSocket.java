@@ -0,0 +1,141 @@
+package ai_engine.linkage;
+
+import ai_engine_adapter.linkage.AIEngineLinkageAdapter;
+import ai_engine_adapter.linkage.types.framed.Frames;
+import ai_engine_adapter.linkage.types.unix_socket.UnixSocket;
+import exceptions.AIEngineException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class TestUnixSocket {
+
+    private Path socketPath;
+    private AIEngineLinkageAdapter aiEngineLinkageAdapter;
+    private ServerSocketChannel aiEngineServer;
+    private Thread aiEngineThread;
+
+    @Before
+    public void beforeEach() throws Exception {
+        socketPath = Files.createTempDirectory("ai_engine").resolve("ai_engine.sock");
+        Map<String, Object> config = new HashMap<>();
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_MAX_ITERATION_TIME", 2L);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_MAX_INITIALIZATION_TIME", 2L);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_MAX_FINALIZATION_TIME", 2L);
+        config.put("AI_ENGINE_LINKAGE_ADAPTER_SOCKET_PATH", socketPath.toString());
+        aiEngineLinkageAdapter = new UnixSocket(config);
+    }
+
+    @After
+    public void afterEach() throws Exception {
+        aiEngineLinkageAdapter.clean();
+        if (aiEngineThread != null) aiEngineThread.join(2000);
+        if (aiEngineServer != null) aiEngineServer.close();
+        Files.deleteIfExists(socketPath);
+        Files.deleteIfExists(socketPath.getParent());
+    }
+
+    // fake AI Engine: answers every request and ends the runs with the given success value
+    private void startAIEngine(boolean runSuccess) throws Exception {
+        aiEngineServer = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        aiEngineServer.bind(UnixDomainSocketAddress.of(socketPath));
+        aiEngineThread = new Thread(() -> {
+            try (SocketChannel channel = aiEngineServer.accept()) {
+                JSONObject message;
+                while ((message = Frames.read(channel)) != null) {
+                    Frames.write(channel, new JSONObject().put("type", "response").put("id", message.getString("id")).put("status", "ok"));
+                    switch (message.getString("type")) {
+                        case "run":
+                            Frames.write(channel, new JSONObject().put("type", "progress").put("step", 1).put("total_steps", 2));
+                            JSONObject callback = new JSONObject().put("type", "callback").put("run_id", message.getString("run_id")).put("SUCCESS", runSuccess);
+                            if (!runSuccess) callback.put("message", "training failed");
+                            Frames.write(channel, callback);
+                            break;
+                        case "end":
+                            return;
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        aiEngineThread.start();
+    }
+
+    @Test
+    public void pingSuccess() throws Exception {
+        startAIEngine(true);
+        aiEngineLinkageAdapter.waitAIEngineToBeReady();
+    }
+
+    @Test
+    public void pingFailureNoSocket() {
+        Exception exception = assertThrows(AIEngineException.class, () -> {
+            aiEngineLinkageAdapter.waitAIEngineToBeReady();
+        });
+
+        String expectedMessage = "Internal exception: AI Engine exception: Error while waiting for the AI Engine to be ready. It did not start before the timeout";
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
+    @Test
+    public void runSuccess() throws Exception {
+        startAIEngine(true);
+        List<JSONObject> receivedProgress = new CopyOnWriteArrayList<>();
+        aiEngineLinkageAdapter.setProgressListener(receivedProgress::add);
+        aiEngineLinkageAdapter.waitAIEngineToBeReady();
+        aiEngineLinkageAdapter.run("training_from_scratch", Map.of("slot", "0"));
+        aiEngineLinkageAdapter.run("training_from_pretrained_model");
+        assertEquals(2, receivedProgress.size());
+    }
+
+    @Test
+    public void runFailureIncorrect() throws Exception {
+        startAIEngine(false);
+        aiEngineLinkageAdapter.waitAIEngineToBeReady();
+
+        Exception exception = assertThrows(AIEngineException.class, () -> {
+            aiEngineLinkageAdapter.run("training_from_scratch");
+        });
+
+        String expectedMessage = "Internal exception: AI Engine exception: Error while running use case. AI Engine error -> training failed";
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
+    @Test
+    public void runFailureAborted() throws Exception {
+        startAIEngine(true);
+        aiEngineLinkageAdapter.waitAIEngineToBeReady();
+        aiEngineLinkageAdapter.abortRuns();
+
+        Exception exception = assertThrows(AIEngineException.class, () -> {
+            aiEngineLinkageAdapter.run("training_from_scratch");
+        });
+
+        String expectedMessage = "Internal exception: AI Engine exception: Error while running use case. The execution was aborted";
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
+    @Test
+    public void endSuccess() throws Exception {
+        startAIEngine(true);
+        aiEngineLinkageAdapter.waitAIEngineToBeReady();
+        aiEngineLinkageAdapter.end();
+    }
+
+}
@@ -1,12 +1,17 @@
 package ai_engine.model_management;
 
+import ai_engine_adapter.model_management.client.MergedModelSink;
 import ai_engine_adapter.model_management.client.types.Default;
+import exceptions.AIEngineException;
 import org.apache.commons.io.FileUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import utils.ContentAddressedStore;
+import utils.Payload;
+import utils.SpillingPayload;
 
 import java.io.File;
 import java.nio.charset.StandardCharsets;
@@ -15,6 +20,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static ai_engine.model_management.FileUtils.listDirectoryFiles;
 
@@ -51,7 +57,7 @@ public class TestClientDefault {
         Files.write(modelConfigFile, lines, StandardCharsets.UTF_8);
 
         // use adapter to transform it to a byte array
-        byte[] bytes = modelManagement.loadUnMergedModel();
+        Payload bytes = modelManagement.loadUnMergedModel();
 
         // use adapter to save it again
         modelManagement.saveMergedModel(bytes);
@@ -80,6 +86,285 @@ public class TestClientDefault {
         Assertions.assertEquals(new ArrayList<>(), directoryFiles);
         directoryFiles = listDirectoryFiles(OutputUnMergedModelPath);
         Assertions.assertEquals(new ArrayList<>(), directoryFiles);
+
+        // assure the old files are deleted in background
+        modelManagement.clean();
+        directoryFiles = listDirectoryFiles(Paths.get(OutputUnMergedModelPath).resolveSibling(".model_trash").toString());
+        Assertions.assertEquals(new ArrayList<>(), directoryFiles);
+    }
+
+    @Test
+    void storeBlobsBoundedSuccess() throws Exception {
+        String inputMergedModelPath = "src/test/resources/input/model";
+        String OutputUnMergedModelPath = "src/test/resources/output/model";
+        String mergedModelPath = "src/test/resources/server/model";
+
+        // load adapter
+        Files.createDirectories(Paths.get(inputMergedModelPath));
+        Files.createDirectories(Paths.get(OutputUnMergedModelPath));
+        Files.createDirectories(Paths.get(mergedModelPath));
+        Map<String, Object> config = new HashMap<>();
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_MERGED_MODEL_PATH", inputMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_UNMERGED_MODEL_PATH", OutputUnMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_STORE_PATH", "src/test/resources/store");
+        Default modelManagement = new Default(config);
+        modelManagement.initialize();
+        ContentAddressedStore serverStore = new ContentAddressedStore(Paths.get("src/test/resources/server/store"));
+
+        // new weights every iteration, the vocabulary does not change
+        for (int i = 0; i < 5; ++i) {
+            Files.write(Paths.get(mergedModelPath + "/model.pt"), List.of("merged weights " + i), StandardCharsets.UTF_8);
+            Files.write(Paths.get(mergedModelPath + "/vocabulary.txt"), Collections.nCopies(100, "token"), StandardCharsets.UTF_8);
+            try (SpillingPayload mergedModel = new SpillingPayload()) {
+                serverStore.pack(Paths.get(mergedModelPath), Set.of(), mergedModel.getOutputStream());
+                modelManagement.saveMergedModel(mergedModel);
+            }
+
+            // only the blobs of the last merged model are kept
+            try (Stream<Path> blobs = Files.walk(Paths.get("src/test/resources/store/blobs"))) {
+                Assertions.assertEquals(2, blobs.filter(Files::isRegularFile).count());
+            }
+
+            Files.write(Paths.get(OutputUnMergedModelPath + "/model.pt"), List.of("client weights " + i), StandardCharsets.UTF_8);
+            modelManagement.loadUnMergedModel().close();
+            modelManagement.cleanDirectories();
+            Files.createDirectories(Paths.get(inputMergedModelPath));
+            Files.createDirectories(Paths.get(OutputUnMergedModelPath));
+        }
+        modelManagement.clean();
+    }
+
+    @Test
+    void saveAndLoadModelsWithStoreSuccess() throws Exception {
+        String inputMergedModelPath = "src/test/resources/input/model";
+        String OutputUnMergedModelPath = "src/test/resources/output/model";
+        String storePath = "src/test/resources/store";
+
+        // create directories
+        Files.createDirectories(Paths.get(inputMergedModelPath));
+        Files.createDirectories(Paths.get(OutputUnMergedModelPath));
+
+        // load adapter
+        Map<String, Object> config = new HashMap<>();
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_MERGED_MODEL_PATH", inputMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_UNMERGED_MODEL_PATH", OutputUnMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_STORE_PATH", storePath);
+        Default modelManagement = new Default(config);
+        modelManagement.initialize();
+
+        // create model files and write something into them
+        Path modelFile = Paths.get(OutputUnMergedModelPath + "/model.pt");
+        Path vocabularyFile = Paths.get(OutputUnMergedModelPath + "/tokenizer/vocabulary.txt");
+        Files.createDirectories(vocabularyFile.getParent());
+        Files.write(modelFile, Arrays.asList("test model content 1", "test model content 2"), StandardCharsets.UTF_8);
+        Files.write(vocabularyFile, Collections.nCopies(1000, "token"), StandardCharsets.UTF_8);
+
+        // use adapter to transform it to a byte array and save it again
+        Payload firstBytes = modelManagement.loadUnMergedModel();
+        modelManagement.saveMergedModel(firstBytes);
+
+        // assure files are ok
+        List<String> directoryFiles = listDirectoryFiles(inputMergedModelPath);
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("model.pt", "tokenizer", "vocabulary.txt")), new HashSet<>(directoryFiles));
+        List<String> lines = Files.lines(Paths.get(inputMergedModelPath + "/model.pt"), StandardCharsets.UTF_8).collect(Collectors.toList());
+        Assertions.assertEquals(Arrays.asList("test model content 1", "test model content 2"), lines);
+        lines = Files.lines(Paths.get(inputMergedModelPath + "/tokenizer/vocabulary.txt"), StandardCharsets.UTF_8).collect(Collectors.toList());
+        Assertions.assertEquals(Collections.nCopies(1000, "token"), lines);
+
+        // change only the model weights, the vocabulary blob is already known and should not be sent again
+        modelManagement.cleanDirectories();
+        Files.createDirectories(vocabularyFile.getParent());
+        Files.write(modelFile, List.of("test model content 3"), StandardCharsets.UTF_8);
+        Files.write(vocabularyFile, Collections.nCopies(1000, "token"), StandardCharsets.UTF_8);
+        Payload secondBytes = modelManagement.loadUnMergedModel();
+        Assertions.assertTrue(secondBytes.size() < firstBytes.size());
+
+        modelManagement.saveMergedModel(secondBytes);
+        lines = Files.lines(Paths.get(inputMergedModelPath + "/model.pt"), StandardCharsets.UTF_8).collect(Collectors.toList());
+        Assertions.assertEquals(List.of("test model content 3"), lines);
+        lines = Files.lines(Paths.get(inputMergedModelPath + "/tokenizer/vocabulary.txt"), StandardCharsets.UTF_8).collect(Collectors.toList());
+        Assertions.assertEquals(Collections.nCopies(1000, "token"), lines);
+        modelManagement.clean();
+    }
+
+    @Test
+    void saveAndLoadModelsSpilledToFileSuccess() throws Exception {
+        String inputMergedModelPath = "src/test/resources/input/model";
+        String OutputUnMergedModelPath = "src/test/resources/output/model";
+
+        // create directories
+        Files.createDirectories(Paths.get(inputMergedModelPath));
+        Files.createDirectories(Paths.get(OutputUnMergedModelPath));
+
+        // load adapter
+        Map<String, Object> config = new HashMap<>();
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_MERGED_MODEL_PATH", inputMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_UNMERGED_MODEL_PATH", OutputUnMergedModelPath);
+        Default modelManagement = new Default(config);
+
+        // create a model bigger than the spill threshold
+        Path modelFile = Paths.get(OutputUnMergedModelPath + "/model.pt");
+        byte[] modelBytes = new byte[100000];
+        new Random(0).nextBytes(modelBytes);
+        Files.write(modelFile, modelBytes);
+
+        SpillingPayload.configure(10000, Paths.get("src/test/resources/spill"));
+        try {
+            // use adapter to transform it to a payload and save it again
+            Payload bytes = modelManagement.loadUnMergedModel();
+            Assertions.assertTrue(((SpillingPayload) bytes).isSpilled());
+            modelManagement.saveMergedModel(bytes);
+            bytes.close();
+        } finally {
+            SpillingPayload.configure(512L * 1000 * 1000, Paths.get(System.getProperty("java.io.tmpdir")));
+        }
+
+        // assure the file is ok and the temporary file was deleted
+        Assertions.assertArrayEquals(modelBytes, Files.readAllBytes(Paths.get(inputMergedModelPath + "/model.pt")));
+        Assertions.assertEquals(new ArrayList<>(), listDirectoryFiles("src/test/resources/spill"));
+    }
+
+    @Test
+    void saveAndLoadModelsWithLinkedStoreSuccess() throws Exception {
+        String inputMergedModelPath = "src/test/resources/input/model";
+        String OutputUnMergedModelPath = "src/test/resources/output/model";
+        String storePath = "src/test/resources/store";
+
+        // create directories
+        Files.createDirectories(Paths.get(inputMergedModelPath));
+        Files.createDirectories(Paths.get(OutputUnMergedModelPath));
+
+        // load adapter
+        Map<String, Object> config = new HashMap<>();
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_MERGED_MODEL_PATH", inputMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_UNMERGED_MODEL_PATH", OutputUnMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_STORE_PATH", storePath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_FILE_HAND_OFF", "LINK");
+        Default modelManagement = new Default(config);
+        modelManagement.initialize();
+
+        // create model file
+        Path modelFile = Paths.get(OutputUnMergedModelPath + "/model.pt");
+        Files.write(modelFile, Arrays.asList("test model content 1", "test model content 2"), StandardCharsets.UTF_8);
+
+        // the model file is taken by the store without copying it
+        Payload bytes = modelManagement.loadUnMergedModel();
+        Assertions.assertEquals(2, Files.getAttribute(modelFile, "unix:nlink"));
+
+        // and linked again when saved
+        modelManagement.saveMergedModel(bytes);
+        Assertions.assertEquals(3, Files.getAttribute(modelFile, "unix:nlink"));
+        List<String> lines = Files.lines(Paths.get(inputMergedModelPath + "/model.pt"), StandardCharsets.UTF_8).collect(Collectors.toList());
+        Assertions.assertEquals(Arrays.asList("test model content 1", "test model content 2"), lines);
+    }
+
+    @Test
+    void saveAndLoadModelsWithSlotsSuccess() throws Exception {
+        String inputMergedModelPath = "src/test/resources/input/model";
+        String OutputUnMergedModelPath = "src/test/resources/output/model";
+
+        // load adapter
+        Map<String, Object> config = new HashMap<>();
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_MERGED_MODEL_PATH", inputMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_UNMERGED_MODEL_PATH", OutputUnMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_DIRECTORY_SLOTS", 2);
+        Default modelManagement = new Default(config);
+
+        // iteration 0 uses the first slot
+        modelManagement.prepareIteration(0);
+        Assertions.assertEquals(Map.of("slot", "0"), modelManagement.getRunParameters());
+        Path modelFile = Paths.get(OutputUnMergedModelPath + "/slot_0/model.pt");
+        Files.write(modelFile, Arrays.asList("test model content 1", "test model content 2"), StandardCharsets.UTF_8);
+        Payload bytes = modelManagement.loadUnMergedModel();
+        modelManagement.cleanDirectories();
+
+        // the merged model is saved in the slot of iteration 1, while the files of iteration 0 are kept
+        modelManagement.prepareIteration(1);
+        Assertions.assertEquals(Map.of("slot", "1"), modelManagement.getRunParameters());
+        modelManagement.saveMergedModel(bytes);
+        Assertions.assertEquals(List.of("model.pt"), listDirectoryFiles(inputMergedModelPath + "/slot_1"));
+        Assertions.assertEquals(List.of("model.pt"), listDirectoryFiles(OutputUnMergedModelPath + "/slot_0"));
+
+        // the first slot is cleaned when it is reused
+        modelManagement.prepareIteration(2);
+        Assertions.assertEquals(Map.of("slot", "0"), modelManagement.getRunParameters());
+        Assertions.assertEquals(new ArrayList<>(), listDirectoryFiles(OutputUnMergedModelPath + "/slot_0"));
+        Assertions.assertEquals(List.of("model.pt"), listDirectoryFiles(inputMergedModelPath + "/slot_1"));
+        modelManagement.clean();
+    }
+
+    @Test
+    void saveAndLoadModelsPrePackagedSuccess() throws Exception {
+        String inputMergedModelPath = "src/test/resources/input/model";
+        String OutputUnMergedModelPath = "src/test/resources/output/model";
+
+        // load adapter
+        Map<String, Object> config = new HashMap<>();
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_MERGED_MODEL_PATH", inputMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_UNMERGED_MODEL_PATH", OutputUnMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_PRE_PACKAGING", true);
+        Default modelManagement = new Default(config);
+        modelManagement.prepareIteration(0);
+
+        // the AI Engine writes a .part file and renames it when it is complete
+        Path partFile = Paths.get(OutputUnMergedModelPath + "/model.pt.part");
+        Files.write(partFile, Arrays.asList("test model content 1", "test model content 2"), StandardCharsets.UTF_8);
+        Files.move(partFile, Paths.get(OutputUnMergedModelPath + "/model.pt"));
+        Thread.sleep(500);
+
+        // the file written after the last event is packed when the model is loaded
+        Files.write(Paths.get(OutputUnMergedModelPath + "/model_config.json"), List.of("{\"test\": \"dummy_json\"}"), StandardCharsets.UTF_8);
+        Payload bytes = modelManagement.loadUnMergedModel();
+        modelManagement.saveMergedModel(bytes);
+
+        // assure files are ok
+        Assertions.assertEquals(Arrays.asList("model.pt", "model_config.json"), listDirectoryFiles(inputMergedModelPath));
+        List<String> lines = Files.lines(Paths.get(inputMergedModelPath + "/model.pt"), StandardCharsets.UTF_8).collect(Collectors.toList());
+        Assertions.assertEquals(Arrays.asList("test model content 1", "test model content 2"), lines);
+        lines = Files.lines(Paths.get(inputMergedModelPath + "/model_config.json"), StandardCharsets.UTF_8).collect(Collectors.toList());
+        Assertions.assertEquals(List.of("{\"test\": \"dummy_json\"}"), lines);
+        modelManagement.clean();
+    }
+
+    @Test
+    void saveMergedModelWhileReceivedSuccess() throws Exception {
+        String inputMergedModelPath = "src/test/resources/input/model";
+        String OutputUnMergedModelPath = "src/test/resources/output/model";
+
+        // create directories
+        Files.createDirectories(Paths.get(inputMergedModelPath));
+        Files.createDirectories(Paths.get(OutputUnMergedModelPath));
+
+        // load adapter
+        Map<String, Object> config = new HashMap<>();
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_MERGED_MODEL_PATH", inputMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_UNMERGED_MODEL_PATH", OutputUnMergedModelPath);
+        Default modelManagement = new Default(config);
+        modelManagement.prepareIteration(0);
+
+        Path modelFile = Paths.get(OutputUnMergedModelPath + "/model.pt");
+        Files.write(modelFile, Arrays.asList("test model content 1", "test model content 2"), StandardCharsets.UTF_8);
+        byte[] bytes;
+        try (Payload model = modelManagement.loadUnMergedModel()) {
+            bytes = model.getInputStream().readAllBytes();
+        }
+
+        // the model arrives in small chunks, as the records of a message
+        MergedModelSink sink = modelManagement.openMergedModelSink();
+        for (int offset = 0; offset < bytes.length; offset += 16) {
+            sink.write(bytes, offset, Math.min(16, bytes.length - offset));
+        }
+        sink.finish();
+
+        Assertions.assertEquals(List.of("model.pt"), listDirectoryFiles(inputMergedModelPath));
+        List<String> lines = Files.lines(Paths.get(inputMergedModelPath + "/model.pt"), StandardCharsets.UTF_8).collect(Collectors.toList());
+        Assertions.assertEquals(Arrays.asList("test model content 1", "test model content 2"), lines);
+
+        // a truncated model is reported when it is finished
+        MergedModelSink truncatedSink = modelManagement.openMergedModelSink();
+        truncatedSink.write(bytes, 0, bytes.length / 2);
+        Assertions.assertThrows(AIEngineException.class, truncatedSink::finish);
+        modelManagement.clean();
     }
 
     @Test
@@ -103,8 +388,8 @@ public class TestClientDefault {
         Files.writeString(Paths.get(outputEvaluationMetricsPath), groundTruth.toString());
 
         // use adapter to load them
-        byte[] output = modelManagement.loadEvaluationMetrics();
-        JSONObject outputJSON = new JSONObject(new String(output, StandardCharsets.UTF_8));
+        Payload output = modelManagement.loadEvaluationMetrics();
+        JSONObject outputJSON = new JSONObject(new String(output.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
 
         // assure contents are ok
         Assertions.assertEquals(outputJSON.toString(), groundTruth.toString());
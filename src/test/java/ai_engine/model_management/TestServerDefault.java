@@ -7,6 +7,10 @@ import org.json.JSONObject;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import utils.ContentAddressedStore;
+import utils.Payload;
+import utils.PooledPayload;
+import utils.SpillingPayload;
 
 import java.io.File;
 import java.nio.charset.StandardCharsets;
@@ -15,6 +19,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static ai_engine.model_management.FileUtils.listDirectoryFiles;
 
@@ -49,7 +54,7 @@ public class TestServerDefault {
         Files.write(configFile, lines, StandardCharsets.UTF_8);
 
         // use adapter to transform them to a byte array
-        byte[] bytes = modelManagement.loadMergedModel();
+        Payload bytes = modelManagement.loadMergedModel();
 
         // use adapter to save them again
         modelManagement.saveUnMergedModel("pod_id", bytes);
@@ -79,6 +84,119 @@ public class TestServerDefault {
         Assertions.assertEquals(new ArrayList<>(), directoryFiles);
         directoryFiles = listDirectoryFiles(inputUnMergedModelsDirectoryPath);
         Assertions.assertEquals(new ArrayList<>(), directoryFiles);
+
+        // assure the old files are deleted in background
+        modelManagement.clean();
+        directoryFiles = listDirectoryFiles(Paths.get(inputUnMergedModelsDirectoryPath).resolveSibling(".models_trash").toString());
+        Assertions.assertEquals(new ArrayList<>(), directoryFiles);
+    }
+
+    @Test
+    void saveAndLoadModelsWithContainerSuccess() throws Exception {
+        String inputUnMergedModelsDirectoryPath = "src/test/resources/input/models/";
+        String outputMergedModelPath = "src/test/resources/output/model/";
+
+        // load adapter
+        Map<String, Object> config = new HashMap<>();
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_UNMERGED_MODELS_DIRECTORY_PATH", inputUnMergedModelsDirectoryPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_MERGED_MODEL_PATH", outputMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_PACKING_FORMAT", "CONTAINER");
+        Default modelManagement = new Default(config);
+        modelManagement.initialize();
+
+        // create model files, one of them bigger than the container alignment
+        Path modelFile = Paths.get(outputMergedModelPath + "/model.pt");
+        Path vocabularyFile = Paths.get(outputMergedModelPath + "/tokenizer/vocabulary.txt");
+        Files.createDirectories(vocabularyFile.getParent());
+        Files.createDirectories(Paths.get(inputUnMergedModelsDirectoryPath));
+        Files.write(modelFile, Arrays.asList("test model content 1", "test model content 2"), StandardCharsets.UTF_8);
+        Files.write(vocabularyFile, Collections.nCopies(1000, "token"), StandardCharsets.UTF_8);
+
+        // use adapter to pack them and save them again
+        Payload bytes = modelManagement.loadMergedModel();
+        modelManagement.saveUnMergedModel("pod_id", bytes);
+
+        // assure files are ok
+        List<String> directoryFiles = listDirectoryFiles(inputUnMergedModelsDirectoryPath + "/model_pod_id");
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("model.pt", "tokenizer", "vocabulary.txt")), new HashSet<>(directoryFiles));
+        List<String> lines = Files.lines(Paths.get(inputUnMergedModelsDirectoryPath + "/model_pod_id/model.pt"), StandardCharsets.UTF_8).collect(Collectors.toList());
+        Assertions.assertEquals(Arrays.asList("test model content 1", "test model content 2"), lines);
+        lines = Files.lines(Paths.get(inputUnMergedModelsDirectoryPath + "/model_pod_id/tokenizer/vocabulary.txt"), StandardCharsets.UTF_8).collect(Collectors.toList());
+        Assertions.assertEquals(Collections.nCopies(1000, "token"), lines);
+    }
+
+    @Test
+    void forgetClientWithStoreSuccess() throws Exception {
+        String inputUnMergedModelsDirectoryPath = "src/test/resources/input/models/";
+        String outputMergedModelPath = "src/test/resources/output/model/";
+
+        // load adapter
+        Map<String, Object> config = new HashMap<>();
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_UNMERGED_MODELS_DIRECTORY_PATH", inputUnMergedModelsDirectoryPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_MERGED_MODEL_PATH", outputMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_STORE_PATH", "src/test/resources/store");
+        Default modelManagement = new Default(config);
+        modelManagement.initialize();
+
+        // create model files
+        Files.createDirectories(Paths.get(outputMergedModelPath));
+        Files.createDirectories(Paths.get(inputUnMergedModelsDirectoryPath));
+        Files.write(Paths.get(outputMergedModelPath + "/model.pt"), Collections.nCopies(1000, "test model content"), StandardCharsets.UTF_8);
+
+        // the client sends the same files, so they are known by it
+        long completeSize;
+        try (Payload model = modelManagement.loadMergedModel()) {
+            completeSize = model.size();
+            modelManagement.saveUnMergedModel("pod_id", model);
+        }
+        try (Payload model = modelManagement.loadMergedModel()) {
+            Assertions.assertTrue(model.size() < completeSize);
+        }
+
+        // a restarted client receives every file again
+        modelManagement.forgetClient("pod_id");
+        try (Payload model = modelManagement.loadMergedModel()) {
+            Assertions.assertEquals(completeSize, model.size());
+        }
+    }
+
+    @Test
+    void storeBlobsBoundedSuccess() throws Exception {
+        String inputUnMergedModelsDirectoryPath = "src/test/resources/input/models/";
+        String outputMergedModelPath = "src/test/resources/output/model/";
+        String unMergedModelPath = "src/test/resources/client/model/";
+
+        // load adapter
+        Map<String, Object> config = new HashMap<>();
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_INPUT_UNMERGED_MODELS_DIRECTORY_PATH", inputUnMergedModelsDirectoryPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_OUTPUT_MERGED_MODEL_PATH", outputMergedModelPath);
+        config.put("AI_ENGINE_MODEL_MANAGEMENT_ADAPTER_STORE_PATH", "src/test/resources/store");
+        Default modelManagement = new Default(config);
+        modelManagement.initialize();
+        ContentAddressedStore clientStore = new ContentAddressedStore(Paths.get("src/test/resources/client/store"));
+        Files.createDirectories(Paths.get(outputMergedModelPath));
+        Files.createDirectories(Paths.get(unMergedModelPath));
+
+        // new weights every iteration, the vocabulary does not change
+        for (int i = 0; i < 5; ++i) {
+            Files.write(Paths.get(unMergedModelPath + "/model.pt"), List.of("client weights " + i), StandardCharsets.UTF_8);
+            Files.write(Paths.get(unMergedModelPath + "/vocabulary.txt"), Collections.nCopies(100, "token"), StandardCharsets.UTF_8);
+            SpillingPayload unMergedModel = new SpillingPayload();
+            clientStore.pack(Paths.get(unMergedModelPath), Set.of(), unMergedModel.getOutputStream());
+            modelManagement.saveUnMergedModel("pod_id", unMergedModel);
+            unMergedModel.close();
+
+            Files.write(Paths.get(outputMergedModelPath + "/model.pt"), List.of("merged weights " + i), StandardCharsets.UTF_8);
+            Files.write(Paths.get(outputMergedModelPath + "/vocabulary.txt"), Collections.nCopies(100, "token"), StandardCharsets.UTF_8);
+            modelManagement.loadMergedModel().close();
+            modelManagement.cleanUnMergedModels();
+
+            // only the blobs of the last merged model are kept
+            try (Stream<Path> blobs = Files.walk(Paths.get("src/test/resources/store/blobs"))) {
+                Assertions.assertEquals(2, blobs.filter(Files::isRegularFile).count());
+            }
+        }
+        modelManagement.clean();
     }
 
     @Test
@@ -99,7 +217,7 @@ public class TestServerDefault {
         groundTruth.put("evaluation_metrics", evaluationMetricsGroundTruthJSONArray);
 
         // use adapter to store them
-        modelManagement.saveEvaluationMetrics("data-partner-1", groundTruth.toString().getBytes(StandardCharsets.UTF_8));
+        modelManagement.saveEvaluationMetrics("data-partner-1", PooledPayload.wrap(groundTruth.toString().getBytes(StandardCharsets.UTF_8)));
 
 
         // assure files are ok
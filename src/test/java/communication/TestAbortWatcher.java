@@ -0,0 +1,103 @@
+package communication;
+
+import communication_adapter.kafka.AbortWatcher;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class TestAbortWatcher {
+
+    private static final String SEPARATOR = "///MESSAGE_SEP///";
+    private static final TopicPartition PARTITION = new TopicPartition("status", 0);
+
+    @Test
+    void abortFromManagerSuccess() throws Exception {
+        MockConsumer<String, String> consumer = createConsumer();
+        CompletableFuture<String> abort = new CompletableFuture<>();
+        AbortWatcher watcher = new AbortWatcher(consumer, "execution", "execution" + SEPARATOR + "client_1", SEPARATOR, Duration.ofMillis(100),
+                (participant, reason) -> abort.complete(participant + ": " + reason));
+        watcher.start();
+
+        // own abort, other executions, other clients (the manager decides) and initialization messages are ignored
+        addRecord(consumer, 0, "own failure", "execution" + SEPARATOR + "client_1", true);
+        addRecord(consumer, 1, "other failure", "other_execution", true);
+        addRecord(consumer, 2, "true", "execution" + SEPARATOR + "client_2", false);
+        addRecord(consumer, 3, "The client was stopped", "execution" + SEPARATOR + "client_2", true);
+        addRecord(consumer, 4, "Out of memory", "execution", true);
+
+        Assertions.assertEquals("the manager: Out of memory", abort.get(10, TimeUnit.SECONDS));
+        watcher.stop(Duration.ofSeconds(5));
+        Assertions.assertTrue(consumer.closed());
+    }
+
+    @Test
+    void abortFromClientSuccess() throws Exception {
+        MockConsumer<String, String> consumer = createConsumer();
+        CompletableFuture<String> abort = new CompletableFuture<>();
+        AbortWatcher watcher = new AbortWatcher(consumer, "execution", "execution", SEPARATOR, Duration.ofMillis(100),
+                (participant, reason) -> abort.complete(participant + ": " + reason));
+        watcher.start();
+
+        // own abort is ignored
+        addRecord(consumer, 0, "own failure", "execution", true);
+        addRecord(consumer, 1, "Out of memory", "execution" + SEPARATOR + "client_2", true);
+
+        Assertions.assertEquals("the client with id client_2: Out of memory", abort.get(10, TimeUnit.SECONDS));
+        watcher.stop(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void handledAbortSuccess() throws Exception {
+        MockConsumer<String, String> consumer = createConsumer();
+        CompletableFuture<String> abort = new CompletableFuture<>();
+        List<String> handledKeys = new ArrayList<>();
+        AbortWatcher watcher = new AbortWatcher(consumer, "execution", "execution", SEPARATOR, Duration.ofMillis(100),
+                (participant, reason) -> abort.complete(participant + ": " + reason),
+                record -> record.key().endsWith("client_1") && handledKeys.add(record.key()));
+        watcher.start();
+
+        // the abort of client_1 is handled (e.g. it can join again), the one of client_2 stops the execution
+        addRecord(consumer, 0, "Out of memory", "execution" + SEPARATOR + "client_1", true);
+        addRecord(consumer, 1, "Disk full", "execution" + SEPARATOR + "client_2", true);
+
+        Assertions.assertEquals("the client with id client_2: Disk full", abort.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(List.of("execution" + SEPARATOR + "client_1"), handledKeys);
+        watcher.stop(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void stopWithoutAbortSuccess() {
+        MockConsumer<String, String> consumer = createConsumer();
+        AbortWatcher watcher = new AbortWatcher(consumer, "execution", "execution", SEPARATOR, Duration.ofMillis(100),
+                (participant, reason) -> Assertions.fail("No abort message was sent"));
+        watcher.start();
+
+        watcher.stop(Duration.ofSeconds(5));
+        Assertions.assertTrue(consumer.closed());
+    }
+
+    private static MockConsumer<String, String> createConsumer() {
+        MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(List.of(PARTITION));
+        consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+        return consumer;
+    }
+
+    private static void addRecord(MockConsumer<String, String> consumer, long offset, String value, String key, boolean abort) {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("status", 0, offset, key, value);
+        if (abort) record.headers().add("message_name", "abort".getBytes());
+        else record.headers().add("message_name", "client_initialization".getBytes());
+        consumer.schedulePollTask(() -> consumer.addRecord(record));
+    }
+
+}
@@ -0,0 +1,48 @@
+package communication;
+
+import communication_adapter.server.ClientLatencies;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+class TestClientLatencies {
+
+    @Test
+    void deadlineFromHistorySuccess() {
+        ClientLatencies clientLatencies = new ClientLatencies(10, 100, 150);
+
+        // unknown clients wait the maximum iteration time
+        Assertions.assertEquals(60000, clientLatencies.getDeadline("client_1", 60000));
+
+        for (int i = 0; i < 5; ++i) clientLatencies.record("client_1", 1000 + i * 100, 200);
+        Assertions.assertEquals((1400 + 200) * 3 / 2, clientLatencies.getDeadline("client_1", 60000));
+        Assertions.assertEquals(1000, clientLatencies.getDeadline("client_1", 1000));  // never above the maximum
+
+        // only the latest rounds are kept
+        for (int i = 0; i < 10; ++i) clientLatencies.record("client_1", 500, 100);
+        Assertions.assertEquals(900, clientLatencies.getDeadline("client_1", 60000));
+    }
+
+    @Test
+    void deadlineDisabledSuccess() {
+        ClientLatencies clientLatencies = new ClientLatencies(10, 99, 0);
+        for (int i = 0; i < 5; ++i) clientLatencies.record("client_1", 1000, 200);
+        Assertions.assertEquals(60000, clientLatencies.getDeadline("client_1", 60000));
+    }
+
+    @Test
+    void saveAndLoadSuccess(@TempDir Path directory) throws Exception {
+        ClientLatencies clientLatencies = new ClientLatencies(10, 100, 200);
+        for (int i = 0; i < 5; ++i) clientLatencies.record("client_1", 1000, 200);
+        clientLatencies.save(directory.resolve("history/latencies.json"));
+
+        // a later execution starts with the same estimations
+        ClientLatencies loadedLatencies = new ClientLatencies(10, 100, 200);
+        loadedLatencies.load(directory.resolve("history/latencies.json"));
+        Assertions.assertEquals(2400, loadedLatencies.getDeadline("client_1", 60000));
+        Assertions.assertEquals(clientLatencies.toJSON().toString(), loadedLatencies.toJSON().toString());
+    }
+
+}
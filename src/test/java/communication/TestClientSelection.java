@@ -0,0 +1,80 @@
+package communication;
+
+import communication_adapter.server.ClientLatencies;
+import communication_adapter.server.ClientSelection;
+import exceptions.BadConfigurationException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TestClientSelection {
+
+    private static final List<String> CLIENT_IDS = List.of("client_1", "client_2", "client_3", "client_4");
+    private static final long MAX_TIME = 10000;  // ms
+
+    @Test
+    void selectAllSuccess() throws Exception {
+        ClientSelection clientSelection = new ClientSelection("ALL", 50, MAX_TIME, new ClientLatencies(10, 99, 0), new Random(0));
+        Assertions.assertNull(clientSelection.select(CLIENT_IDS));
+    }
+
+    @Test
+    void selectRandomSuccess() throws Exception {
+        ClientSelection clientSelection = new ClientSelection("RANDOM", 50, MAX_TIME, new ClientLatencies(10, 99, 0), new Random(0));
+        Set<String> selectedClients = clientSelection.select(CLIENT_IDS);
+        Assertions.assertEquals(2, selectedClients.size());
+        Assertions.assertTrue(CLIENT_IDS.containsAll(selectedClients));
+
+        // at least one client
+        clientSelection = new ClientSelection("RANDOM", 1, MAX_TIME, new ClientLatencies(10, 99, 0), new Random(0));
+        Assertions.assertEquals(1, clientSelection.select(CLIENT_IDS).size());
+    }
+
+    @Test
+    void selectLatencySuccess() throws Exception {
+        ClientLatencies clientLatencies = new ClientLatencies(10, 99, 0);
+        clientLatencies.record("client_1", 5000, 100);
+        clientLatencies.record("client_2", 1000, 100);
+        clientLatencies.record("client_3", 2000, 100);
+        clientLatencies.record("client_4", 20000, 100);  // does not end before the maximum iteration time
+        ClientSelection clientSelection = new ClientSelection("LATENCY", 50, MAX_TIME, clientLatencies, new Random(0));
+        for (int round = 0; round < 20; ++round) {
+            Set<String> selectedClients = clientSelection.select(CLIENT_IDS);
+            Assertions.assertEquals(2, selectedClients.size());
+            Assertions.assertFalse(selectedClients.contains("client_4"));
+        }
+
+        // the clients without history are eligible
+        Assertions.assertEquals(Set.of("client_5"), new ClientSelection("LATENCY", 1, MAX_TIME, clientLatencies, new Random(0)).select(List.of("client_4", "client_5")));
+
+        // no client ends on time -> any of them
+        Assertions.assertEquals(1, new ClientSelection("LATENCY", 50, MAX_TIME, clientLatencies, new Random(0)).select(List.of("client_4")).size());
+    }
+
+    @Test
+    void selectLatencySlowClientSuccess() throws Exception {
+        ClientLatencies clientLatencies = new ClientLatencies(10, 99, 0);
+        clientLatencies.record("client_1", 9000, 100);  // slow, but ends on time
+        clientLatencies.record("client_2", 1000, 100);
+        clientLatencies.record("client_3", 1000, 100);
+        clientLatencies.record("client_4", 1000, 100);
+        ClientSelection clientSelection = new ClientSelection("LATENCY", 50, MAX_TIME, clientLatencies, new Random(0));
+        int timesSelected = 0;
+        for (int round = 0; round < 100; ++round) {
+            if (clientSelection.select(CLIENT_IDS).contains("client_1")) ++timesSelected;
+        }
+        Assertions.assertTrue(timesSelected > 25 && timesSelected < 75, "selected " + timesSelected + " times");
+    }
+
+    @Test
+    void selectIncorrectConfiguration() {
+        Exception exception = assertThrows(BadConfigurationException.class, () -> new ClientSelection("FASTEST", 50, MAX_TIME, new ClientLatencies(10, 99, 0), new Random(0)));
+        Assertions.assertEquals("Bad configuration exception: Client selection FASTEST not supported. Available: ALL, RANDOM and LATENCY", exception.getMessage());
+    }
+
+}
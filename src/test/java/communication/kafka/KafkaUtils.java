@@ -70,6 +70,7 @@ public class KafkaUtils {
         config.put("COMMUNICATION_ADAPTER_START_ITERATION_MESSAGE_TIME_OUT", 3L);
         config.put("COMMUNICATION_ADAPTER_MAX_ITERATION_TIME", 3L);
         config.put("COMMUNICATION_ADAPTER_MAX_MODEL_SIZE", 1);
+        config.put("COMMUNICATION_ADAPTER_CHUNK_SIZE", 512);
         return new KafkaClientCommunication(config, executionId, podId);
     }
 
@@ -80,6 +81,7 @@ public class KafkaUtils {
         config.put("COMMUNICATION_ADAPTER_MAX_INITIALIZATION_TIME", 3L);
         config.put("COMMUNICATION_ADAPTER_MAX_ITERATION_TIME", 3L);
         config.put("COMMUNICATION_ADAPTER_MAX_MODEL_SIZE", 1);
+        config.put("COMMUNICATION_ADAPTER_CHUNK_SIZE", 512);
         return new KafkaServerCommunication(config, executionId, 2);
     }
 
@@ -8,6 +8,7 @@ import org.junit.jupiter.api.Test;
 import org.testcontainers.containers.KafkaContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import utils.PooledPayload;
 
 import java.nio.charset.StandardCharsets;
 
@@ -30,7 +31,7 @@ class TestSendEndedIterationMessage {
         createTopics(KAFKA_CONTAINER, executionId);
         ClientCommunicationAdapter kafkaCommunicator = createKafkaClientCommunicationClass(executionId, podId, KAFKA_CONTAINER.getBootstrapServers());
         kafkaCommunicator.initialize();
-        kafkaCommunicator.sendEndedIterationMessage(0, "model".getBytes(StandardCharsets.UTF_8));
+        kafkaCommunicator.sendEndedIterationMessage(0, PooledPayload.wrap("model".getBytes(StandardCharsets.UTF_8)));
 
         String topicCommand = "/usr/bin/kafka-console-consumer " +
                 "--bootstrap-server=" + bootstrapLocalhost + " " +
@@ -80,7 +81,7 @@ class TestSendEndedIterationMessage {
         kafkaCommunicator.initialize();
         deleteTopics(KAFKA_CONTAINER, executionId);
 
-        Exception exception = assertThrows(CommunicationException.class, () -> kafkaCommunicator.sendEndedIterationMessage(0, "model".getBytes(StandardCharsets.UTF_8)));
+        Exception exception = assertThrows(CommunicationException.class, () -> kafkaCommunicator.sendEndedIterationMessage(0, PooledPayload.wrap("model".getBytes(StandardCharsets.UTF_8))));
 
         String expectedMessage = "Internal exception: Communication exception: Error while sending iteration ended message";
         String actualMessage = exception.getMessage();
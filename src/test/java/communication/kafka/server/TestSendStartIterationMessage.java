@@ -8,6 +8,7 @@ import org.junit.jupiter.api.Test;
 import org.testcontainers.containers.KafkaContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import utils.PooledPayload;
 
 import static communication.kafka.KafkaUtils.*;
 import static org.hamcrest.CoreMatchers.containsString;
@@ -25,7 +26,7 @@ class TestSendStartIterationMessage {
         createTopics(KAFKA_CONTAINER, executionId);
         ServerCommunicationAdapter kafkaCommunicator = createKafkaServerCommunicationClass(executionId, KAFKA_CONTAINER.getBootstrapServers());
         kafkaCommunicator.initialize();
-        kafkaCommunicator.sendStartIterationMessage(0, "model".getBytes());
+        kafkaCommunicator.sendStartIterationMessage(0, PooledPayload.wrap("model".getBytes()));
 
         String topicCommand = "/usr/bin/kafka-console-consumer " +
                 "--bootstrap-server=" + bootstrapLocalhost + " " +
@@ -72,7 +73,7 @@ class TestSendStartIterationMessage {
         ServerCommunicationAdapter kafkaCommunicator = createKafkaServerCommunicationClass(executionId, KAFKA_CONTAINER.getBootstrapServers());
         kafkaCommunicator.initialize();
         deleteTopics(KAFKA_CONTAINER, executionId);
-        Exception exception = assertThrows(CommunicationException.class, () -> kafkaCommunicator.sendStartIterationMessage(0, "model".getBytes()));
+        Exception exception = assertThrows(CommunicationException.class, () -> kafkaCommunicator.sendStartIterationMessage(0, PooledPayload.wrap("model".getBytes())));
 
         String expectedMessage = "Internal exception: Communication exception: Error while sending iteration start message";
         String actualMessage = exception.getMessage();
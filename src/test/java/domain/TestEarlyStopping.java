@@ -0,0 +1,46 @@
+package domain;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TestEarlyStopping {
+
+    private static boolean merge(EarlyStopping earlyStopping, int iterationIndex, JSONObject progress) {
+        earlyStopping.reset();
+        if (progress != null) earlyStopping.onProgress(progress);
+        return earlyStopping.shouldStop(iterationIndex);
+    }
+
+    @Test
+    void stopWhenNotImprovingSuccess() {
+        EarlyStopping earlyStopping = new EarlyStopping("validation_loss", false, 0.01, 2);
+        Assertions.assertFalse(merge(earlyStopping, 0, new JSONObject().put("validation_loss", 1.0)));
+        Assertions.assertFalse(merge(earlyStopping, 1, new JSONObject().put("validation_loss", 0.5)));
+        Assertions.assertFalse(merge(earlyStopping, 2, new JSONObject().put("validation_loss", 0.495)));  // below min delta
+        Assertions.assertTrue(merge(earlyStopping, 3, new JSONObject().put("validation_loss", 0.6)));
+    }
+
+    @Test
+    void improvementResetsPatienceSuccess() {
+        EarlyStopping earlyStopping = new EarlyStopping("accuracy", true, 0, 2);
+        Assertions.assertFalse(merge(earlyStopping, 0, new JSONObject().put("accuracy", 0.5)));
+        Assertions.assertFalse(merge(earlyStopping, 1, new JSONObject().put("accuracy", 0.4)));
+        Assertions.assertFalse(merge(earlyStopping, 2, new JSONObject().put("accuracy", 0.7)));
+        Assertions.assertFalse(merge(earlyStopping, 3, new JSONObject().put("accuracy", 0.6)));
+        Assertions.assertTrue(merge(earlyStopping, 4, new JSONObject().put("accuracy", 0.6)));
+    }
+
+    @Test
+    void metricNotReportedSuccess() {
+        EarlyStopping earlyStopping = new EarlyStopping("validation_loss", false, 0, 1);
+        Assertions.assertFalse(merge(earlyStopping, 0, new JSONObject().put("validation_loss", 1.0)));
+        // progress events without the metric (e.g. epochs) do not replace the last value
+        earlyStopping.reset();
+        earlyStopping.onProgress(new JSONObject().put("validation_loss", 0.5));
+        earlyStopping.onProgress(new JSONObject().put("epoch", 3));
+        Assertions.assertFalse(earlyStopping.shouldStop(1));
+        Assertions.assertFalse(merge(earlyStopping, 2, null));
+    }
+
+}
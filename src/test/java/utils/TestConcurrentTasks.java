@@ -0,0 +1,46 @@
+package utils;
+
+import exceptions.InternalException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TestConcurrentTasks {
+
+    @Test
+    void runAllSuccess() throws Exception {
+        AtomicBoolean first = new AtomicBoolean(false);
+        AtomicBoolean second = new AtomicBoolean(false);
+        ConcurrentTasks.<InternalException>runAll("test", List.of(() -> first.set(true), () -> second.set(true)));
+        Assertions.assertTrue(first.get());
+        Assertions.assertTrue(second.get());
+    }
+
+    @Test
+    void runAllWaitsForCancelledTasksFail() {
+        AtomicBoolean cancelledTaskEnded = new AtomicBoolean(false);
+        InternalException e = assertThrows(InternalException.class, () -> ConcurrentTasks.<InternalException>runAll("test", List.of(
+                () -> {
+                    throw new InternalException("Fast failure", null);
+                },
+                () -> {
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException ignored) {
+                        // e.g. a connection still being created after the interruption
+                        long end = System.nanoTime() + 200_000_000;
+                        while (System.nanoTime() < end) Thread.onSpinWait();
+                    } finally {
+                        cancelledTaskEnded.set(true);
+                    }
+                }
+        )));
+        Assertions.assertEquals("Internal exception: Fast failure", e.getMessage());
+        Assertions.assertTrue(cancelledTaskEnded.get());
+    }
+
+}
@@ -0,0 +1,90 @@
+package utils;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TestHttpMethods {
+
+    private ServerSocket serverSocket;
+    private Thread serverThread;
+    private final AtomicInteger receivedRequests = new AtomicInteger(0);
+
+    @AfterEach
+    void afterEach() throws Exception {
+        serverSocket.close();
+        serverThread.join(2000);
+    }
+
+    // fake AI Engine: reads every request and closes the connection without answering the first ones, as a stale
+    // keep-alive connection does
+    private String startServer(int unansweredRequests) throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        serverThread = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    readRequest(socket);
+                    if (receivedRequests.incrementAndGet() <= unansweredRequests) continue;
+                    OutputStream output = socket.getOutputStream();
+                    output.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\nConnection: close\r\n\r\n{}".getBytes(StandardCharsets.US_ASCII));
+                    output.flush();
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        });
+        serverThread.start();
+        return String.format("http://127.0.0.1:%d/api/run", serverSocket.getLocalPort());
+    }
+
+    private static void readRequest(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        int contentLength = 0;
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            if (line.toLowerCase().startsWith("content-length:")) contentLength = Integer.parseInt(line.substring(15).trim());
+        }
+        for (int i = 0; i < contentLength; ++i) reader.read();
+    }
+
+    @Test
+    void executeGetRetriedSuccess() throws Exception {
+        String url = startServer(1);
+        RequestConfig config = HttpMethods.getRequestConfig(2, 2);
+        try (CloseableHttpResponse response = HttpMethods.execute(new HttpGet(url), config)) {
+            Assertions.assertEquals(200, response.getStatusLine().getStatusCode());
+            EntityUtils.consume(response.getEntity());
+        }
+        Assertions.assertEquals(2, receivedRequests.get());
+    }
+
+    @Test
+    void executePostNotRetriedFail() throws Exception {
+        String url = startServer(1);
+        RequestConfig config = HttpMethods.getRequestConfig(2, 2);
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setEntity(new StringEntity("{}"));
+        assertThrows(IOException.class, () -> HttpMethods.execute(httpPost, config).close());
+        Thread.sleep(200);  // a retry would arrive right away
+        Assertions.assertEquals(1, receivedRequests.get());
+    }
+
+}